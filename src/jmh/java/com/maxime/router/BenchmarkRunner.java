@@ -0,0 +1,40 @@
+package com.maxime.router;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the JMH benchmarks once per thread count of {@code benchmark.threads}, e.g. {@code 1,2,4,8}.
+ * <p>
+ * Forks, warmup and measurement are fixed, and each fork gets the same heap and GC, so that results are comparable
+ * across runs. The allocation rate is measured by the GC profiler: {@code gc.alloc.rate.norm} is in bytes per operation.
+ * Results are written to {@code target/jmh-result-<threads>t.json}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("benchmark.include", "com.maxime.router");
+        for (String threadsCount : System.getProperty("benchmark.threads", "1").split(",")) {
+            int threads = Integer.parseInt(threadsCount.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .forks(2)
+                    .warmupIterations(5)
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(1))
+                    .jvmArgs("-Xms1g", "-Xmx1g", "-XX:+UseG1GC")
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
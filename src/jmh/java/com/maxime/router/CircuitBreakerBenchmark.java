@@ -0,0 +1,55 @@
+package com.maxime.router;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit Breaker of a single instance, shared by all the benchmark threads, while its circuit is closed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CircuitBreakerBenchmark {
+
+    private CircuitBreaker circuitBreaker;
+
+    private ApplicationApiInstance applicationApiInstance;
+
+    @Setup
+    public void setUp() {
+        circuitBreaker = new CircuitBreaker();
+        applicationApiInstance = new ApplicationApiInstance("http://api.example.com/api/endpoint");
+    }
+
+    @Benchmark
+    public boolean acquirePermission() {
+        return circuitBreaker.acquirePermission();
+    }
+
+    /**
+     * A successful call: the outcome is recorded in the sliding window.
+     */
+    @Benchmark
+    public boolean acquirePermissionAndReportSuccess() {
+        CircuitBreaker.Permission permission = circuitBreaker.tryAcquirePermission();
+        circuitBreaker.reportSuccess(permission, 10);
+        return permission != null;
+    }
+
+    /**
+     * A successful call through the instance: Circuit Breaker, weight and metrics.
+     */
+    @Benchmark
+    public boolean instanceCall() {
+        CircuitBreaker.Permission permission = applicationApiInstance.tryAcquirePermission();
+        applicationApiInstance.reportSuccess(permission, 10);
+        return permission != null;
+    }
+}
@@ -0,0 +1,197 @@
+package com.maxime.router;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full dispatch path of a request, against in-process stubs of the Application APIs: deadline, instance selection,
+ * Circuit Breaker, header filtering, timers and metrics, without any network I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatchBenchmark {
+
+    private static final List<String> APPLICATION_API_URLS = List.of(
+            "http://api1.example.com/api/endpoint",
+            "http://api2.example.com/api/endpoint",
+            "http://api3.example.com/api/endpoint");
+
+    private static final byte[] REQUEST_BODY = "{\"game\":\"Mobile Legends\",\"gamerID\":\"GYUTDTE\",\"points\":20}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpHeaders requestHeaders = new HttpHeaders();
+
+    private TimerWheel timerWheel;
+
+    private RouterController restTemplateController;
+
+    private RequestDispatcher requestDispatcher;
+
+    @Setup
+    public void setUp() {
+        requestHeaders.setContentType(MediaType.APPLICATION_JSON);
+        requestHeaders.set(HttpHeaders.CONNECTION, "keep-alive");
+        requestHeaders.set("X-Request-Id", "42");
+        timerWheel = new TimerWheel();
+
+        // Blocking engine, with a RestTemplate answering in-process
+        restTemplateController = new RouterController(RoundRobinRouting.ofInstances(ApplicationApiInstance.fromUrls(
+                APPLICATION_API_URLS, applicationApiUrl -> new CircuitBreakerConfig())),
+                new RestTemplateForwardingEngine(new RestTemplate(new StubRequestFactory())), timerWheel,
+                new RouterProperties.Deadline());
+
+        // Engine answering immediately: the router overhead only
+        ResponseEntity<byte[]> response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(REQUEST_BODY);
+        ForwardingEngine stubEngine = new ForwardingEngine() {
+            @Override
+            public CompletableFuture<ResponseEntity<byte[]>> forward(ApplicationApiInstance applicationApiInstance,
+                                                                     HttpHeaders headers, byte[] body) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            @Override
+            public CompletableFuture<HttpStatusCode> probe(String probeUrl, Duration timeout) {
+                return CompletableFuture.completedFuture(HttpStatus.OK);
+            }
+
+            @Override
+            public UpstreamPoolStats getPoolStats(ApplicationApiInstance applicationApiInstance) {
+                return null;
+            }
+        };
+        requestDispatcher = new RequestDispatcher(RoundRobinRouting.ofInstances(ApplicationApiInstance.fromUrls(
+                APPLICATION_API_URLS, applicationApiUrl -> new CircuitBreakerConfig())),
+                stubEngine, timerWheel, new RouterProperties.Deadline(), new RouterProperties.Retry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        timerWheel.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> routeRequestWithRestTemplate() {
+        return restTemplateController.routeRequest(requestHeaders, REQUEST_BODY).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> dispatch() {
+        return requestDispatcher.dispatch(requestHeaders, REQUEST_BODY).join();
+    }
+
+    /**
+     * Answers every request with a 200 and a JSON body, without I/O.
+     */
+    private static final class StubRequestFactory implements ClientHttpRequestFactory {
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+            return new StubRequest(uri, httpMethod);
+        }
+    }
+
+    private static final class StubRequest implements ClientHttpRequest {
+        private final URI uri;
+        private final HttpMethod method;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private StubRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public ClientHttpResponse execute() {
+            return new StubResponse(body.toByteArray());
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final class StubResponse implements ClientHttpResponse {
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private StubResponse(byte[] body) {
+            this.body = body;
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(body.length);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        @Deprecated
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return "OK";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.maxime.router;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instance selection: the first instance of each request, shared by all the benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoadBalancerBenchmark {
+
+    @Param({"ROUND_ROBIN", "WEIGHTED_ROUND_ROBIN", "PEAK_EWMA"})
+    private RouterProperties.LoadBalancerType type;
+
+    @Param({"3", "32"})
+    private int instancesCount;
+
+    private LoadBalancer loadBalancer;
+
+    private HealthyInstances healthyInstances;
+
+    @Setup
+    public void setUp() {
+        List<ApplicationApiInstance> applicationApiInstances = new ArrayList<>();
+        for (int i = 0; i < instancesCount; i++) {
+            applicationApiInstances.add(new ApplicationApiInstance("http://api" + i + ".example.com/api/endpoint",
+                    new CircuitBreakerConfig(), 1 + i % 3));
+        }
+        switch (type) {
+            case ROUND_ROBIN:
+                loadBalancer = RoundRobinRouting.ofInstances(applicationApiInstances);
+                break;
+            case WEIGHTED_ROUND_ROBIN:
+                loadBalancer = RoundRobinRouting.weighted(applicationApiInstances);
+                break;
+            default:
+                loadBalancer = new PeakEwmaLoadBalancer(applicationApiInstances);
+        }
+        healthyInstances = new HealthyInstances(applicationApiInstances);
+    }
+
+    @Benchmark
+    public int nextInstanceIndex() {
+        return loadBalancer.getNextInstanceIndex();
+    }
+
+    /**
+     * Selection as done by the dispatcher: the chosen instance, checked in the healthy instances bitmap.
+     */
+    @Benchmark
+    public ApplicationApiInstance nextHealthyInstance() {
+        int index = loadBalancer.getNextInstanceIndex();
+        return healthyInstances.isCandidate(index) ? loadBalancer.getInstance(index) : null;
+    }
+}
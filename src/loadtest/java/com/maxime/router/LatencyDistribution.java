@@ -0,0 +1,49 @@
+package com.maxime.router;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log-normal latency distribution, defined by its median and its 99th percentile: most responses are close to the
+ * median, with a long tail of slow ones, as observed on real servers.
+ */
+public class LatencyDistribution {
+
+    /**
+     * 99th percentile of the standard normal distribution.
+     */
+    private static final double Z_99 = 2.326;
+
+    private final long medianNanos;
+
+    private final double sigma;
+
+    private final String description;
+
+    private LatencyDistribution(Duration median, Duration p99) {
+        this.medianNanos = median.toNanos();
+        this.sigma = median.isZero() || p99.compareTo(median) <= 0 ? 0
+                : Math.log((double) p99.toNanos() / medianNanos) / Z_99;
+        this.description = "median " + median.toMillis() + " ms, p99 " + p99.toMillis() + " ms";
+    }
+
+    public static LatencyDistribution logNormal(Duration median, Duration p99) {
+        return new LatencyDistribution(median, p99);
+    }
+
+    public static LatencyDistribution constant(Duration latency) {
+        return new LatencyDistribution(latency, latency);
+    }
+
+    public long sampleNanos() {
+        if (sigma == 0) {
+            return medianNanos;
+        }
+        return (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
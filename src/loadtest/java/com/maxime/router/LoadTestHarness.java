@@ -0,0 +1,293 @@
+package com.maxime.router;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * End-to-end load test of the router, against embedded stub Application APIs.
+ * <p>
+ * For each scenario, the stubs are given their behaviors, a router is started in-process (unless {@code loadtest.target}
+ * points to a running router), and an {@link OpenLoopLoadGenerator} replays the payloads at a fixed rate. The report
+ * gives the throughput, the response times (from the intended start of the requests, so that stalls are not hidden),
+ * the requests received by each backend, and the Circuit Breaker activity from the router metrics.
+ * <p>
+ * Settings are system properties (see the README), and the report is also written to {@code target/loadtest-report.txt}.
+ */
+public class LoadTestHarness {
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "1000"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(System.getProperty("loadtest.warmup-seconds", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(System.getProperty("loadtest.duration-seconds", "20")));
+        int backendsCount = Integer.parseInt(System.getProperty("loadtest.backends", "3"));
+        String target = System.getProperty("loadtest.target", "");
+        String routerArgs = System.getProperty("loadtest.router-args", "--router.deadline.timeout=2s");
+        String mode = System.getProperty("loadtest.mode", "spring").trim().toLowerCase(Locale.ROOT);
+        List<byte[]> payloads = loadPayloads(System.getProperty("loadtest.payloads", "sample-post.data"));
+        List<LoadTestScenario> scenarios = new ArrayList<>();
+        for (String scenario : System.getProperty("loadtest.scenarios", allScenarios()).split(",")) {
+            scenarios.add(LoadTestScenario.valueOf(scenario.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+        }
+
+        if (!mode.equals("spring") && !mode.equals("standalone") && !mode.equals("compare")) {
+            throw new IllegalArgumentException("Unknown mode " + mode + ": spring, standalone or compare");
+        }
+        boolean standalone = mode.equals("standalone");
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .executor(clientExecutor)
+                .build();
+        // An external router routes to the default Application API ports
+        List<StubApplicationApi> backends = new ArrayList<>();
+        for (int i = 0; i < backendsCount; i++) {
+            backends.add(new StubApplicationApi(target.isEmpty() ? 0 : 5001 + i, LoadTestScenario.HEALTHY));
+        }
+
+        StringBuilder report = new StringBuilder();
+        Path reportFile = Path.of("target", "loadtest-report.txt");
+        try {
+            if (mode.equals("compare")) {
+                reportFile = Path.of("target", "mode-comparison-report.txt");
+                report.append(new ModeComparison(backends, httpClient, routerArgs, payloads, rate, warmup, duration).run());
+            } else {
+                report.append(String.format(Locale.ROOT, "Load test (%s mode): %.0f req/s for %d s (after %d s of warmup), %d backends, %d payloads%n",
+                        mode, rate, duration.toSeconds(), warmup.toSeconds(), backendsCount, payloads.size()));
+                if (target.isEmpty()) {
+                    warmUpJvm(backends, httpClient, standalone, routerArgs, payloads, rate, warmup);
+                }
+                for (LoadTestScenario scenario : scenarios) {
+                    String section = runScenario(scenario, backends, httpClient, target, standalone, routerArgs, payloads,
+                            rate, warmup, duration);
+                    System.out.print(section);
+                    report.append(section);
+                }
+            }
+        } finally {
+            backends.forEach(StubApplicationApi::close);
+            clientExecutor.shutdownNow();
+        }
+        Files.createDirectories(reportFile.getParent());
+        Files.writeString(reportFile, report);
+        System.out.println("Report written to " + reportFile);
+    }
+
+    private static String runScenario(LoadTestScenario scenario, List<StubApplicationApi> backends, HttpClient httpClient,
+                                      String target, boolean standalone, String routerArgs, List<byte[]> payloads,
+                                      double rate, Duration warmup, Duration duration) throws Exception {
+        long[] requestsBefore = new long[backends.size()];
+        long[] errorsBefore = new long[backends.size()];
+        long[] hangsBefore = new long[backends.size()];
+        for (int i = 0; i < backends.size(); i++) {
+            backends.get(i).setBehavior(LoadTestScenario.HEALTHY);
+            requestsBefore[i] = backends.get(i).getRequests();
+            errorsBefore[i] = backends.get(i).getErrors();
+            hangsBefore[i] = backends.get(i).getHangs();
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        EmbeddedRouter router = null;
+        OpenLoopLoadGenerator.Result result;
+        String routerBase;
+        try {
+            if (target.isEmpty()) {
+                router = startRouter(backends, standalone, routerArgs);
+                routerBase = "http://localhost:" + router.getPort();
+            } else {
+                routerBase = URI.create(target).resolve("/").toString().replaceAll("/$", "");
+            }
+            scenario.apply(backends, scheduler);
+            OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(httpClient, URI.create(routerBase + "/api/router"),
+                    payloads, Duration.ofSeconds(10));
+            result = generator.run(rate, warmup, duration);
+            return report(scenario, result, backends, requestsBefore, errorsBefore, hangsBefore,
+                    scrapeCircuitBreakers(httpClient, routerBase));
+        } finally {
+            scheduler.shutdownNow();
+            if (router != null) {
+                router.close();
+            }
+        }
+    }
+
+    /**
+     * A cold JVM answers so slowly that the Circuit Breakers of the first router would open during its warmup: the
+     * classes are loaded and compiled on a throwaway router first, with a ramp up to the target rate.
+     */
+    private static void warmUpJvm(List<StubApplicationApi> backends, HttpClient httpClient, boolean standalone,
+                                  String routerArgs, List<byte[]> payloads, double rate, Duration warmup) throws Exception {
+        try (EmbeddedRouter router = startRouter(backends, standalone, routerArgs)) {
+            OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(httpClient, URI.create("http://localhost:"
+                    + router.getPort() + "/api/router"), payloads, Duration.ofSeconds(10));
+            for (double rampRate : new double[]{rate / 100, rate / 10, rate}) {
+                generator.run(Math.max(rampRate, 1), Duration.ZERO, warmup);
+            }
+        }
+    }
+
+    private static EmbeddedRouter startRouter(List<StubApplicationApi> backends, boolean standalone,
+                                              String routerArgs) throws IOException {
+        String[] args = routerArgs(backends, 0, routerArgs).toArray(new String[0]);
+        if (standalone) {
+            StandaloneRouter router = StandaloneRouter.start(args);
+            return new EmbeddedRouter(router.getPort(), router);
+        }
+        ConfigurableApplicationContext router = new SpringApplication(RouterApplication.class).run(args);
+        return new EmbeddedRouter(Integer.parseInt(router.getEnvironment().getProperty("local.server.port")), router);
+    }
+
+    /**
+     * @return the arguments of a router in front of the stubs, quiet, with the extra {@code routerArgs}
+     */
+    static List<String> routerArgs(List<StubApplicationApi> backends, int port, String routerArgs) {
+        List<String> urls = new ArrayList<>();
+        for (StubApplicationApi backend : backends) {
+            urls.add(backend.getUrl());
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=" + port,
+                "--router.instances.urls=" + String.join(",", urls),
+                "--logging.level.com.maxime.router=ERROR",
+                "--spring.main.banner-mode=off"));
+        if (!routerArgs.isBlank()) {
+            args.addAll(Arrays.asList(routerArgs.trim().split("\\s+")));
+        }
+        return args;
+    }
+
+    /**
+     * A router started in-process, in either mode.
+     */
+    private static final class EmbeddedRouter implements AutoCloseable {
+        private final int port;
+        private final AutoCloseable router;
+
+        private EmbeddedRouter(int port, AutoCloseable router) {
+            this.port = port;
+            this.router = router;
+        }
+
+        private int getPort() {
+            return port;
+        }
+
+        @Override
+        public void close() throws Exception {
+            router.close();
+        }
+    }
+
+    private static String report(LoadTestScenario scenario, OpenLoopLoadGenerator.Result result,
+                                 List<StubApplicationApi> backends, long[] requestsBefore, long[] errorsBefore,
+                                 long[] hangsBefore, List<String> circuitBreakerMetrics) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%n== %s: %s%n", scenario, scenario.getDescription()));
+        report.append(String.format(Locale.ROOT, "Throughput: %.1f responses/s%n", result.getThroughput()));
+        report.append("Statuses:");
+        for (Map.Entry<Integer, Long> status : result.getStatuses().entrySet()) {
+            report.append(' ').append(status.getKey()).append('=').append(status.getValue());
+        }
+        report.append(String.format(Locale.ROOT, " client-timeouts=%d errors=%d unanswered=%d%n",
+                result.getTimeouts(), result.getErrors(), result.getUnanswered()));
+        report.append("Response time (from intended start): ").append(percentiles(result.getResponseTimes())).append('\n');
+        report.append("Service time (from actual send):     ").append(percentiles(result.getServiceTimes())).append('\n');
+        report.append("Backends:\n");
+        for (int i = 0; i < backends.size(); i++) {
+            StubApplicationApi backend = backends.get(i);
+            report.append(String.format(Locale.ROOT, "  %s requests=%d errors=%d hangs=%d%n", backend.getUrl(),
+                    backend.getRequests() - requestsBefore[i], backend.getErrors() - errorsBefore[i],
+                    backend.getHangs() - hangsBefore[i]));
+        }
+        report.append("Router:\n");
+        for (String metric : circuitBreakerMetrics) {
+            report.append("  ").append(metric).append('\n');
+        }
+        return report.toString();
+    }
+
+    static String percentiles(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "p50 %s, p90 %s, p99 %s, p99.9 %s, max %s",
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getValueAtPercentile(100)));
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f ms", micros / 1000.0);
+    }
+
+    /**
+     * @return the router-level and Circuit Breaker metrics which are not zero
+     */
+    private static List<String> scrapeCircuitBreakers(HttpClient httpClient, String routerBase) {
+        List<String> metrics = new ArrayList<>();
+        try {
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(routerBase + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            for (String line : response.body().split("\n")) {
+                boolean relevant = line.startsWith("router_unavailable_total") || line.startsWith("router_failovers_total")
+                        || line.startsWith("router_instance_circuit_breaker_transitions_total")
+                        || line.startsWith("router_instance_rejections_total")
+                        || line.startsWith("router_instance_circuit_breaker_state");
+                if (relevant && !line.endsWith(" 0")) {
+                    metrics.add(line);
+                }
+            }
+        } catch (IOException e) {
+            metrics.add("Metrics not available: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return metrics;
+    }
+
+    /**
+     * @param files comma separated: a {@code .jsonl} file has one payload per line, any other file is a single payload
+     */
+    private static List<byte[]> loadPayloads(String files) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        for (String file : files.split(",")) {
+            Path path = Path.of(file.trim());
+            if (path.toString().endsWith(".jsonl")) {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank()) {
+                        payloads.add(line.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            } else {
+                payloads.add(Files.readAllBytes(path));
+            }
+        }
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("No payload in " + files);
+        }
+        return payloads;
+    }
+
+    private static String allScenarios() {
+        List<String> names = new ArrayList<>();
+        for (LoadTestScenario scenario : LoadTestScenario.values()) {
+            names.add(scenario.name());
+        }
+        return String.join(",", names);
+    }
+}
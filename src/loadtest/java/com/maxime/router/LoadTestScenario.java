@@ -0,0 +1,67 @@
+package com.maxime.router;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Behaviors of the stub Application APIs during a load test. Unless stated otherwise, backends are healthy.
+ */
+public enum LoadTestScenario {
+
+    BASELINE("All backends healthy") {
+        @Override
+        void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler) {
+        }
+    },
+    ONE_SLOW("One backend slow: median 200 ms, p99 1 s") {
+        @Override
+        void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler) {
+            backends.get(0).setBehavior(new StubApplicationApi.Behavior(
+                    LatencyDistribution.logNormal(Duration.ofMillis(200), Duration.ofSeconds(1)), 0, 0));
+        }
+    },
+    ONE_ERRORING("One backend answering half of the requests with a 500") {
+        @Override
+        void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler) {
+            backends.get(0).setBehavior(HEALTHY.withErrorRate(0.5));
+        }
+    },
+    ONE_HANGING("One backend never answering") {
+        @Override
+        void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler) {
+            backends.get(0).setBehavior(new StubApplicationApi.Behavior(HEALTHY_LATENCY, 0, 1));
+        }
+    },
+    ONE_FLAPPING("One backend alternating between healthy and failing every 2 s") {
+        @Override
+        void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler) {
+            StubApplicationApi backend = backends.get(0);
+            scheduler.scheduleAtFixedRate(() -> backend.setBehavior(
+                    backend.getBehavior() == HEALTHY ? FAILING : HEALTHY), 2, 2, TimeUnit.SECONDS);
+        }
+    };
+
+    static final LatencyDistribution HEALTHY_LATENCY = LatencyDistribution.logNormal(Duration.ofMillis(2), Duration.ofMillis(10));
+
+    static final StubApplicationApi.Behavior HEALTHY = new StubApplicationApi.Behavior(HEALTHY_LATENCY, 0, 0);
+
+    static final StubApplicationApi.Behavior FAILING = HEALTHY.withErrorRate(1);
+
+    private final String description;
+
+    LoadTestScenario(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Change the behaviors of the healthy backends. Changes over time are scheduled on the scheduler, which is shut down
+     * at the end of the scenario.
+     */
+    abstract void apply(List<StubApplicationApi> backends, ScheduledExecutorService scheduler);
+}
@@ -0,0 +1,172 @@
+package com.maxime.router;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Spring mode and the {@link StandaloneRouter} mode of the router, each started in its own JVM in front of
+ * the same stubs:
+ * <ul>
+ *     <li>startup time: from the launch of the JVM to the first forwarded response.</li>
+ *     <li>resident memory (RSS) of the JVM, idle after startup, and after the load (current and peak). Read from
+ *     {@code /proc}, so only on Linux.</li>
+ *     <li>throughput and response times at the load test rate, then at twice and four times that rate.</li>
+ * </ul>
+ * The JVM options of the routers (e.g. {@code -Xmx256m}) are set with {@code loadtest.jvm-args}. The router logs are in
+ * {@code target/router-<mode>.log}.
+ */
+final class ModeComparison {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final double[] RATE_MULTIPLIERS = {1, 2, 4};
+
+    private final List<StubApplicationApi> backends;
+    private final HttpClient httpClient;
+    private final String routerArgs;
+    private final List<byte[]> payloads;
+    private final double rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final List<String> jvmArgs;
+
+    ModeComparison(List<StubApplicationApi> backends, HttpClient httpClient, String routerArgs, List<byte[]> payloads,
+                   double rate, Duration warmup, Duration duration) {
+        this.backends = backends;
+        this.httpClient = httpClient;
+        this.routerArgs = routerArgs;
+        this.payloads = payloads;
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        String jvmArgsProperty = System.getProperty("loadtest.jvm-args", "").trim();
+        this.jvmArgs = jvmArgsProperty.isEmpty() ? List.of() : Arrays.asList(jvmArgsProperty.split("\\s+"));
+    }
+
+    String run() throws Exception {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Mode comparison: %s, %d backends, %d s per rate (after %d s of warmup), JVM options: %s%n",
+                Runtime.version(), backends.size(), duration.toSeconds(), warmup.toSeconds(),
+                jvmArgs.isEmpty() ? "none" : String.join(" ", jvmArgs)));
+        System.out.print(report);
+        for (String mode : new String[]{"spring", "standalone"}) {
+            String section = measure(mode);
+            System.out.print(section);
+            report.append(section);
+        }
+        return report.toString();
+    }
+
+    private String measure(String mode) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RouterApplication.class.getName());
+        if (mode.equals("standalone")) {
+            command.add(RouterApplication.STANDALONE_ARGUMENT);
+        }
+        command.addAll(LoadTestHarness.routerArgs(backends, port, routerArgs));
+        Path log = Path.of("target", "router-" + mode + ".log");
+        Files.createDirectories(log.getParent());
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%n== %s mode%n", mode));
+        long launchTime = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            URI target = URI.create("http://localhost:" + port + "/api/router");
+            long startupNanos = awaitFirstResponse(process, target) - launchTime;
+            report.append(String.format(Locale.ROOT, "Startup: %d ms to the first response%n",
+                    TimeUnit.NANOSECONDS.toMillis(startupNanos)));
+            report.append("RSS idle: ").append(memory(process.pid(), "VmRSS")).append('\n');
+
+            OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(httpClient, target, payloads, Duration.ofSeconds(10));
+            for (double rampRate : new double[]{rate / 100, rate / 10, rate}) {
+                generator.run(Math.max(rampRate, 1), Duration.ZERO, warmup);
+            }
+            for (double multiplier : RATE_MULTIPLIERS) {
+                OpenLoopLoadGenerator.Result result = generator.run(rate * multiplier, Duration.ZERO, duration);
+                long failed = result.getTimeouts() + result.getErrors() + result.getUnanswered()
+                        + result.getStatuses().entrySet().stream()
+                        .filter(status -> status.getKey() != 200)
+                        .mapToLong(status -> status.getValue())
+                        .sum();
+                report.append(String.format(Locale.ROOT, "%6.0f req/s: throughput %.1f responses/s, %d failed, %s%n",
+                        rate * multiplier, result.getThroughput(), failed,
+                        LoadTestHarness.percentiles(result.getResponseTimes())));
+            }
+            report.append("RSS after load: ").append(memory(process.pid(), "VmRSS"))
+                    .append(", peak: ").append(memory(process.pid(), "VmHWM")).append('\n');
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the first 200 response of the router
+     */
+    private long awaitFirstResponse(Process process, URI target) throws Exception {
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(target)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(2))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payloads.get(0)))
+                .build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The router exited with " + process.exitValue() + ", see its log in target/");
+            }
+            try {
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return System.nanoTime();
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("The router did not answer within " + STARTUP_TIMEOUT.toSeconds() + " s");
+    }
+
+    /**
+     * @param field {@code VmRSS} (current resident memory) or {@code VmHWM} (peak resident memory)
+     */
+    private static String memory(long pid, String field) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith(field + ":")) {
+                    long kilobytes = Long.parseLong(line.substring(field.length() + 1).replace("kB", "").trim());
+                    return String.format(Locale.ROOT, "%.1f MB", kilobytes / 1024.0);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not on Linux
+        }
+        return "n/a";
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
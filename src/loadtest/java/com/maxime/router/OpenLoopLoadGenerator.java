@@ -0,0 +1,161 @@
+package com.maxime.router;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: requests are sent on a fixed schedule, whatever the router response times.
+ * <p>
+ * A closed-loop generator (like {@code ab -c 100}) waits for a response before sending the next request: when the
+ * router stalls, it stops sending, and the stall only shows up in a few samples ("coordinated omission").
+ * Here, each request has an intended start time, and its response time is measured from it: a request sent late
+ * because the generator was held back is counted with its full delay.
+ */
+public class OpenLoopLoadGenerator {
+
+    private final HttpClient httpClient;
+
+    private final URI target;
+
+    private final List<byte[]> payloads;
+
+    private final Duration requestTimeout;
+
+    public OpenLoopLoadGenerator(HttpClient httpClient, URI target, List<byte[]> payloads, Duration requestTimeout) {
+        this.httpClient = httpClient;
+        this.target = target;
+        this.payloads = payloads;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Send {@code ratePerSecond} requests per second for {@code warmup + duration}, then wait for the responses.
+     * Only the requests intended after the warmup are recorded.
+     */
+    public Result run(double ratePerSecond, Duration warmup, Duration duration) throws InterruptedException {
+        Result result = new Result(duration);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+        AtomicInteger outstanding = new AtomicInteger();
+        for (long i = 0; ; i++) {
+            long intendedNanos = startNanos + i * intervalNanos;
+            if (intendedNanos >= endNanos) {
+                break;
+            }
+            long waitNanos;
+            while ((waitNanos = intendedNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            boolean recorded = intendedNanos >= measureFromNanos;
+            HttpRequest request = HttpRequest.newBuilder(target)
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(payloads.get((int) (i % payloads.size()))))
+                    .build();
+            long sentNanos = System.nanoTime();
+            outstanding.incrementAndGet();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, throwable) -> {
+                        long nowNanos = System.nanoTime();
+                        if (recorded) {
+                            result.record(response == null ? -1 : response.statusCode(), throwable,
+                                    nowNanos - intendedNanos, nowNanos - sentNanos);
+                        }
+                        outstanding.decrementAndGet();
+                    });
+        }
+        // Wait for the last responses, up to the request timeout
+        long drainDeadline = System.nanoTime() + requestTimeout.toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        result.unanswered = outstanding.get();
+        return result;
+    }
+
+    public static final class Result {
+        private final Duration duration;
+        private final LatencyHistogram responseTimes = new LatencyHistogram();
+        private final LatencyHistogram serviceTimes = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private volatile int unanswered;
+
+        private Result(Duration duration) {
+            this.duration = duration;
+        }
+
+        private void record(int status, Throwable throwable, long responseTimeNanos, long serviceTimeNanos) {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                if (cause instanceof HttpTimeoutException) {
+                    timeouts.increment();
+                } else {
+                    errors.increment();
+                }
+                return;
+            }
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+            responseTimes.recordNanos(responseTimeNanos);
+            serviceTimes.recordNanos(serviceTimeNanos);
+        }
+
+        /**
+         * @return the latencies measured from the intended start of the requests
+         */
+        public LatencyHistogram getResponseTimes() {
+            return responseTimes;
+        }
+
+        /**
+         * @return the latencies measured from the actual sending of the requests
+         */
+        public LatencyHistogram getServiceTimes() {
+            return serviceTimes;
+        }
+
+        public Map<Integer, Long> getStatuses() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return requests still waiting for their response at the end of the run
+         */
+        public int getUnanswered() {
+            return unanswered;
+        }
+
+        /**
+         * @return responses per second over the measured period
+         */
+        public double getThroughput() {
+            return responseTimes.getTotalCount() / (duration.toNanos() / 1e9);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.maxime.router;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded Application API, answering {@code POST /api/endpoint} with the request body after a simulated latency.
+ * <p>
+ * Its {@link Behavior} can be changed at any time: latency distribution, rate of 500 errors, and rate of requests which
+ * are never answered ("hangs"). Delayed responses are sent from a scheduler: no thread is held while a request waits,
+ * so a slow or hanging stub does not run out of threads.
+ */
+public class StubApplicationApi implements AutoCloseable {
+
+    public static final String PATH = "/api/endpoint";
+
+    private static final byte[] ERROR_BODY = "Simulated error".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // Otherwise the response headers and body, written separately, are delayed by Nagle's algorithm
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService handlerExecutor = Executors.newFixedThreadPool(4);
+
+    private final ScheduledExecutorService responseScheduler = Executors.newScheduledThreadPool(2);
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder hangs = new LongAdder();
+
+    private volatile Behavior behavior;
+
+    public StubApplicationApi(int port, Behavior behavior) throws IOException {
+        this.behavior = behavior;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(handlerExecutor);
+        this.server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH;
+    }
+
+    public Behavior getBehavior() {
+        return behavior;
+    }
+
+    public void setBehavior(Behavior behavior) {
+        this.behavior = behavior;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getHangs() {
+        return hangs.sum();
+    }
+
+    @Override
+    public void close() {
+        // Also closes the connections of the hanging requests
+        server.stop(0);
+        responseScheduler.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        Behavior current = behavior;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < current.hangRate) {
+            // Never answered: the connection stays open until the client gives up
+            hangs.increment();
+            return;
+        }
+        boolean error = random.nextDouble() < current.errorRate;
+        long latencyNanos = current.latency.sampleNanos();
+        responseScheduler.schedule(() -> respond(exchange, error ? 500 : 200, error ? ERROR_BODY : body),
+                latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) {
+        if (status >= 500) {
+            errors.increment();
+        }
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            outputStream.write(body);
+        } catch (IOException e) {
+            // The client gave up
+        }
+    }
+
+    /**
+     * How the stub answers.
+     */
+    public static final class Behavior {
+        private final LatencyDistribution latency;
+        private final double errorRate;
+        private final double hangRate;
+
+        /**
+         * @param errorRate share of the requests answered with a 500, between 0 and 1
+         * @param hangRate  share of the requests never answered, between 0 and 1
+         */
+        public Behavior(LatencyDistribution latency, double errorRate, double hangRate) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+            this.hangRate = hangRate;
+        }
+
+        public Behavior withErrorRate(double errorRate) {
+            return new Behavior(latency, errorRate, hangRate);
+        }
+
+        @Override
+        public String toString() {
+            return "latency " + latency + ", " + Math.round(errorRate * 100) + "% errors, " + Math.round(hangRate * 100) + "% hangs";
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.maxime.router;
+
+/**
+ * Finds the affinity key of a request in its JSON body, and hashes it.
+ * <p>
+ * The body is not deserialized: it is scanned in place, skipping the values of the other fields (nested objects and
+ * arrays included) without building them. Only the fields at the top level of the document are matched, and their raw
+ * bytes are hashed: a string is hashed without its quotes, escapes included.
+ */
+final class AffinityKey {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private AffinityKey() {
+    }
+
+    /**
+     * 64-bit FNV-1a, followed by the MurmurHash3 finalizer: FNV-1a alone spreads short keys poorly over the ring.
+     */
+    static long hash(byte[] bytes, int from, int to) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = from; i < to; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return the range of the value of the top-level field, as {@code start << 32 | end} (without the quotes of a
+     * string), or -1 if the field is not found or the document is not a JSON object
+     */
+    static long findField(byte[] json, byte[] fieldName) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length || json[i] != '{') {
+            return -1;
+        }
+        i++;
+        while (true) {
+            i = skipWhitespace(json, i);
+            if (i >= json.length || json[i] != '"') {
+                // End of the object, or invalid document
+                return -1;
+            }
+            int nameStart = i + 1;
+            int nameEnd = endOfString(json, i);
+            if (nameEnd < 0) {
+                return -1;
+            }
+            i = skipWhitespace(json, nameEnd + 1);
+            if (i >= json.length || json[i] != ':') {
+                return -1;
+            }
+            int valueStart = skipWhitespace(json, i + 1);
+            int valueEnd = endOfValue(json, valueStart);
+            if (valueEnd < 0) {
+                return -1;
+            }
+            if (matches(json, nameStart, nameEnd, fieldName)) {
+                if (json[valueStart] == '"') {
+                    return (long) (valueStart + 1) << 32 | (valueEnd - 1);
+                }
+                return (long) valueStart << 32 | valueEnd;
+            }
+            i = skipWhitespace(json, valueEnd);
+            if (i >= json.length || json[i] != ',') {
+                return -1;
+            }
+            i++;
+        }
+    }
+
+    private static boolean matches(byte[] json, int from, int to, byte[] fieldName) {
+        if (to - from != fieldName.length) {
+            return false;
+        }
+        for (int i = 0; i < fieldName.length; i++) {
+            if (json[from + i] != fieldName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param quote index of the opening quote
+     * @return index of the closing quote, or -1 if the string is not terminated
+     */
+    private static int endOfString(byte[] json, int quote) {
+        for (int i = quote + 1; i < json.length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index right after the value, or -1 if it is not terminated
+     */
+    private static int endOfValue(byte[] json, int start) {
+        if (start >= json.length) {
+            return -1;
+        }
+        byte first = json[start];
+        if (first == '"') {
+            int end = endOfString(json, start);
+            return end < 0 ? -1 : end + 1;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            for (int i = start; i < json.length; i++) {
+                byte b = json[i];
+                if (b == '"') {
+                    i = endOfString(json, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        // Number, true, false or null
+        int i = start;
+        while (i < json.length && json[i] != ',' && json[i] != '}' && json[i] != ']' && !isWhitespace(json[i])) {
+            i++;
+        }
+        return i == start ? -1 : i;
+    }
+
+    private static int skipWhitespace(byte[] json, int from) {
+        int i = from;
+        while (i < json.length && isWhitespace(json[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -1,28 +1,180 @@
 package com.maxime.router;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
 public class ApplicationApiInstance {
 
     private final String applicationApiUrl;
     private final CircuitBreaker circuitBreaker;
+    private final InstanceLoad load = new InstanceLoad();
+    private final InstanceWeight weight;
+    private final InstanceMetrics metrics = new InstanceMetrics();
+    private final ConcurrencyLimiter concurrencyLimiter;
 
     public ApplicationApiInstance(String applicationApiUrl) {
+        this(applicationApiUrl, new CircuitBreakerConfig());
+    }
+
+    public ApplicationApiInstance(String applicationApiUrl, CircuitBreakerConfig circuitBreakerConfig) {
+        this(applicationApiUrl, circuitBreakerConfig, 1);
+    }
+
+    /**
+     * @param weight relative share of the traffic, used by the weighted round robin
+     */
+    public ApplicationApiInstance(String applicationApiUrl, CircuitBreakerConfig circuitBreakerConfig, int weight) {
+        this(applicationApiUrl, circuitBreakerConfig, weight, new RouterProperties.ConcurrencyLimit());
+    }
+
+    /**
+     * @param weight                 relative share of the traffic, used by the weighted round robin
+     * @param concurrencyLimitConfig adaptive concurrency limit of the instance
+     */
+    public ApplicationApiInstance(String applicationApiUrl, CircuitBreakerConfig circuitBreakerConfig, int weight,
+                                  RouterProperties.ConcurrencyLimit concurrencyLimitConfig) {
         this.applicationApiUrl = applicationApiUrl;
-        this.circuitBreaker = new CircuitBreaker();
+        this.circuitBreaker = new CircuitBreaker(circuitBreakerConfig);
+        this.weight = new InstanceWeight(weight);
+        this.concurrencyLimiter = new ConcurrencyLimiter(concurrencyLimitConfig);
+        this.circuitBreaker.addStateListener(metrics);
+    }
+
+    /**
+     * @param circuitBreakerConfigs Circuit Breaker configuration of each Application API url
+     */
+    public static List<ApplicationApiInstance> fromUrls(List<String> applicationApiUrls,
+                                                        Function<String, CircuitBreakerConfig> circuitBreakerConfigs) {
+        return fromUrls(applicationApiUrls, circuitBreakerConfigs, applicationApiUrl -> 1);
+    }
+
+    /**
+     * @param circuitBreakerConfigs Circuit Breaker configuration of each Application API url
+     * @param weights               weight of each Application API url
+     */
+    public static List<ApplicationApiInstance> fromUrls(List<String> applicationApiUrls,
+                                                        Function<String, CircuitBreakerConfig> circuitBreakerConfigs,
+                                                        ToIntFunction<String> weights) {
+        return fromUrls(applicationApiUrls, circuitBreakerConfigs, weights, new RouterProperties.ConcurrencyLimit());
+    }
+
+    /**
+     * @param circuitBreakerConfigs  Circuit Breaker configuration of each Application API url
+     * @param weights                weight of each Application API url
+     * @param concurrencyLimitConfig adaptive concurrency limit of all the instances
+     */
+    public static List<ApplicationApiInstance> fromUrls(List<String> applicationApiUrls,
+                                                        Function<String, CircuitBreakerConfig> circuitBreakerConfigs,
+                                                        ToIntFunction<String> weights,
+                                                        RouterProperties.ConcurrencyLimit concurrencyLimitConfig) {
+        if (applicationApiUrls == null || applicationApiUrls.size() == 0) {
+            throw new IllegalArgumentException("Cannot start a router with a null or empty Application API Urls list.");
+        }
+        List<ApplicationApiInstance> applicationApiInstances = new ArrayList<>(applicationApiUrls.size());
+        for (String applicationApiUrl : applicationApiUrls) {
+            applicationApiInstances.add(new ApplicationApiInstance(applicationApiUrl, circuitBreakerConfigs.apply(applicationApiUrl),
+                    weights.applyAsInt(applicationApiUrl), concurrencyLimitConfig));
+        }
+        return applicationApiInstances;
+    }
+
+    public static List<String> urls(List<ApplicationApiInstance> applicationApiInstances) {
+        List<String> applicationApiUrls = new ArrayList<>(applicationApiInstances.size());
+        for (ApplicationApiInstance applicationApiInstance : applicationApiInstances) {
+            applicationApiUrls.add(applicationApiInstance.getApplicationApiUrl());
+        }
+        return applicationApiUrls;
     }
 
     public String getApplicationApiUrl() {
         return applicationApiUrl;
     }
 
+    public InstanceLoad getLoad() {
+        return load;
+    }
+
+    public InstanceWeight getWeight() {
+        return weight;
+    }
+
+    public InstanceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public boolean isCallPermitted() {
+        return circuitBreaker.isCallPermitted();
+    }
+
     public boolean acquirePermission() {
         return circuitBreaker.acquirePermission();
     }
 
+    public CircuitBreaker.Permission tryAcquirePermission() {
+        return circuitBreaker.tryAcquirePermission();
+    }
+
+    public void releasePermission(CircuitBreaker.Permission permission) {
+        circuitBreaker.releasePermission(permission);
+    }
+
     public void reportFailure() {
-        circuitBreaker.reportFailure();
+        reportFailure(0);
+    }
+
+    public void reportFailure(long durationMs) {
+        circuitBreaker.reportFailure(durationMs);
+        weight.onFailure();
+        metrics.onFailure();
+    }
+
+    /**
+     * Report a failed call of the permission: the Circuit Breaker ignores it if its state changed since.
+     */
+    public void reportFailure(CircuitBreaker.Permission permission, long durationMs) {
+        circuitBreaker.reportFailure(permission, durationMs);
+        weight.onFailure();
+        metrics.onFailure();
     }
 
     public void reportSuccess() {
-        circuitBreaker.reportSuccess();
+        reportSuccess(0);
+    }
+
+    public void reportSuccess(long durationMs) {
+        circuitBreaker.reportSuccess(durationMs);
+        weight.onSuccess(circuitBreaker.isSlowCall(durationMs));
+        metrics.onSuccess();
+    }
+
+    /**
+     * Report a successful call of the permission: the Circuit Breaker ignores it if its state changed since.
+     */
+    public void reportSuccess(CircuitBreaker.Permission permission, long durationMs) {
+        circuitBreaker.reportSuccess(permission, durationMs);
+        weight.onSuccess(circuitBreaker.isSlowCall(durationMs));
+        metrics.onSuccess();
+    }
+
+    public boolean isSlowCall(long durationMs) {
+        return circuitBreaker.isSlowCall(durationMs);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getSlowCallDurationThresholdMs() {
+        return circuitBreaker.getSlowCallDurationThresholdMs();
+    }
+
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
     }
 }
@@ -0,0 +1,196 @@
+package com.maxime.router;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.io.CloseMode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Non-blocking forwarding engine, based on Apache HttpAsyncClient.
+ * <p>
+ * Requests are multiplexed on a few I/O reactor threads: no thread is held while waiting for the downstream server,
+ * so the number of concurrent requests is limited by sockets rather than by threads.
+ * <p>
+ * Connections are kept alive and pooled per instance (see {@link UpstreamConnectionPools}), or, with HTTP/2,
+ * a single connection per instance is shared by all the requests.
+ * <p>
+ * The request body array is wrapped (not copied) by the client, and the response body is buffered once by the
+ * client's response consumer.
+ * <p>
+ * The returned future is completed on an I/O reactor thread, so its callbacks must not block.
+ * Cancelling it aborts the exchange, and closes its connection.
+ */
+public class AsyncHttpForwardingEngine implements ForwardingEngine, AutoCloseable {
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Null when using HTTP/2: all requests to an instance are multiplexed on a single connection.
+     */
+    private final PoolingAsyncClientConnectionManager connectionManager;
+
+    public AsyncHttpForwardingEngine() {
+        this(new RouterProperties.ConnectionPool());
+    }
+
+    public AsyncHttpForwardingEngine(RouterProperties.ConnectionPool config) {
+        if (config.isHttp2()) {
+            this.connectionManager = null;
+            this.httpClient = H2AsyncClientBuilder.create()
+                    .setDefaultConnectionConfig(UpstreamConnectionPools.connectionConfig(config))
+                    .setDefaultRequestConfig(UpstreamConnectionPools.requestConfig(config))
+                    .evictIdleConnections(UpstreamConnectionPools.idleTimeout(config))
+                    .disableRedirectHandling()
+                    .disableCookieManagement()
+                    .build();
+        } else {
+            this.connectionManager = UpstreamConnectionPools.asyncConnectionManager(config);
+            this.httpClient = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(UpstreamConnectionPools.requestConfig(config))
+                    .evictIdleConnections(UpstreamConnectionPools.idleTimeout(config))
+                    .disableRedirectHandling()
+                    .disableCookieManagement()
+                    .build();
+        }
+        this.httpClient.start();
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<byte[]>> forward(ApplicationApiInstance applicationApiInstance,
+                                                             HttpHeaders headers, byte[] body) {
+        SimpleHttpRequest request;
+        try {
+            request = buildRequest(applicationApiInstance, headers, body);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<ResponseEntity<byte[]>> result = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = httpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                result.complete(toResponseEntity(response));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new CancellationException("Request to "
+                        + applicationApiInstance.getApplicationApiUrl() + " was cancelled."));
+            }
+        });
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<HttpStatusCode> probe(String probeUrl, Duration timeout) {
+        SimpleHttpRequest request;
+        try {
+            request = SimpleRequestBuilder.get(probeUrl)
+                    .setRequestConfig(UpstreamConnectionPools.probeRequestConfig(timeout))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<HttpStatusCode> result = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = httpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                result.complete(HttpStatusCode.valueOf(response.getCode()));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new CancellationException("Health check " + probeUrl + " was cancelled."));
+            }
+        });
+        result.whenComplete((status, throwable) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static SimpleHttpRequest buildRequest(ApplicationApiInstance applicationApiInstance,
+                                                  HttpHeaders headers, byte[] body) {
+        SimpleRequestBuilder requestBuilder = SimpleRequestBuilder.post(applicationApiInstance.getApplicationApiUrl());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (ForwardedHeaders.isForwarded(header.getKey())
+                    && !HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+                for (String value : header.getValue()) {
+                    requestBuilder.addHeader(header.getKey(), value);
+                }
+            }
+        }
+        if (body != null && body.length > 0) {
+            String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+            requestBuilder.setBody(body, contentType == null ? ContentType.APPLICATION_OCTET_STREAM
+                    : ContentType.parseLenient(contentType));
+        }
+        return requestBuilder.build();
+    }
+
+    private static ResponseEntity<byte[]> toResponseEntity(SimpleHttpResponse response) {
+        Header[] connectionHeaders = response.getHeaders(HttpHeaders.CONNECTION);
+        Set<String> connectionOptions = connectionHeaders.length == 0 ? Set.of()
+                : ForwardedHeaders.connectionOptions(Arrays.stream(connectionHeaders).map(Header::getValue).toList());
+        HttpHeaders responseHeaders = new HttpHeaders();
+        for (Header header : response.getHeaders()) {
+            if (ForwardedHeaders.isForwarded(header.getName(), connectionOptions)) {
+                responseHeaders.add(header.getName(), header.getValue());
+            }
+        }
+        return ResponseEntity.status(response.getCode())
+                .headers(responseHeaders)
+                .body(response.getBodyBytes());
+    }
+
+    @Override
+    public UpstreamPoolStats getPoolStats(ApplicationApiInstance applicationApiInstance) {
+        if (connectionManager == null) {
+            return null;
+        }
+        return UpstreamPoolStats.of(connectionManager.getStats(UpstreamConnectionPools.route(applicationApiInstance)));
+    }
+
+    @Override
+    public void close() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+}
@@ -0,0 +1,33 @@
+package com.maxime.router;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Batch endpoint: the request body is streamed as JSON Lines records, and the results are streamed back as JSON Lines,
+ * in the same order. See {@link BatchDispatcher}.
+ */
+@RestController
+public class BatchController {
+
+    private final BatchDispatcher batchDispatcher;
+
+    public BatchController(BatchDispatcher batchDispatcher) {
+        this.batchDispatcher = batchDispatcher;
+    }
+
+    @PostMapping("/api/router/batch")
+    public void routeBatch(@RequestHeader HttpHeaders requestHeaders, InputStream requestBody,
+                           HttpServletResponse response) throws IOException {
+        // The status is sent with the first results: failures of single records are reported in their result
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(BatchDispatcher.CONTENT_TYPE.toString());
+        batchDispatcher.dispatch(requestHeaders, requestBody, response.getOutputStream());
+    }
+}
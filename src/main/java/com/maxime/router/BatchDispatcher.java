@@ -0,0 +1,205 @@
+package com.maxime.router;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Dispatches the records of a JSON Lines batch, each one as a router request of the {@link RequestDispatcher}: they go
+ * through the same load balancing, Circuit Breakers, deadlines, retries and limits.
+ * <p>
+ * The batch is streamed both ways: records are read one at a time, at most {@code maxParallelism} of them are in
+ * flight, and their results are written back as soon as all the previous ones are written, in the order of the
+ * records. The memory used by a batch does not depend on its size.
+ * <p>
+ * Each result is a JSON object on its own line: {@code {"index":0,"status":200,"body":...}}. A JSON response body is
+ * embedded as is, if it is a single complete JSON value: any other body (or an empty, truncated or mislabelled JSON one)
+ * is embedded as a string, so that it cannot break the results after it.
+ */
+public class BatchDispatcher {
+
+    public static final MediaType CONTENT_TYPE = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchDispatcher.class);
+
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final RequestDispatcher requestDispatcher;
+
+    private final int maxParallelism;
+
+    private final int maxRecordSize;
+
+    public BatchDispatcher(RequestDispatcher requestDispatcher, RouterProperties.Batch batchConfig) {
+        this.requestDispatcher = requestDispatcher;
+        this.maxParallelism = Math.max(1, batchConfig.getMaxParallelism());
+        this.maxRecordSize = (int) Math.min(Integer.MAX_VALUE - 8, batchConfig.getMaxRecordSize().toBytes());
+    }
+
+    /**
+     * @param requestHeaders headers of the client request, applied to each record
+     * @param requestBody    JSON Lines records
+     * @param responseBody   where the JSON Lines results are written
+     * @return the number of records
+     */
+    public long dispatch(HttpHeaders requestHeaders, InputStream requestBody, OutputStream responseBody) throws IOException {
+        HttpHeaders recordHeaders = new HttpHeaders();
+        recordHeaders.putAll(requestHeaders);
+        recordHeaders.setContentType(MediaType.APPLICATION_JSON);
+        // The key of the batch would be shared by all its records
+        recordHeaders.remove(requestDispatcher.getIdempotencyCache().getHeader());
+        JsonLinesReader reader = new JsonLinesReader(requestBody, maxRecordSize);
+        OutputStream output = new BufferedOutputStream(responseBody, OUTPUT_BUFFER_SIZE);
+        ArrayDeque<PendingRecord> pendingRecords = new ArrayDeque<>(maxParallelism);
+        long index = 0;
+        while (true) {
+            CompletableFuture<ResponseEntity<byte[]>> response;
+            try {
+                byte[] record = reader.next();
+                if (record == null) {
+                    break;
+                }
+                response = requestDispatcher.dispatch(recordHeaders, record);
+            } catch (JsonLinesReader.RecordTooLargeException e) {
+                response = CompletableFuture.completedFuture(
+                        Responses.errorResponse(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage()));
+            }
+            pendingRecords.addLast(new PendingRecord(index++, response));
+            writeResults(pendingRecords, output, pendingRecords.size() >= maxParallelism);
+        }
+        while (!pendingRecords.isEmpty()) {
+            writeResults(pendingRecords, output, true);
+        }
+        output.flush();
+        logger.debug("Batch of {} records dispatched.", index);
+        return index;
+    }
+
+    /**
+     * Write the results of the first records which are answered, in order.
+     *
+     * @param waitForFirst wait for the first record if it is not answered yet
+     */
+    private static void writeResults(ArrayDeque<PendingRecord> pendingRecords, OutputStream output, boolean waitForFirst)
+            throws IOException {
+        boolean wait = waitForFirst;
+        while (!pendingRecords.isEmpty()) {
+            PendingRecord first = pendingRecords.peekFirst();
+            if (!first.response.isDone()) {
+                if (!wait) {
+                    return;
+                }
+                // The results already written are sent to the client while waiting
+                output.flush();
+            }
+            wait = false;
+            writeResult(output, first.index, await(first.response));
+            pendingRecords.removeFirst();
+        }
+    }
+
+    private static ResponseEntity<byte[]> await(CompletableFuture<ResponseEntity<byte[]>> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            logger.error("Error processing a batch record", e.getCause());
+            return Responses.errorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "The record could not be processed.");
+        }
+    }
+
+    private static void writeResult(OutputStream output, long index, ResponseEntity<byte[]> response) throws IOException {
+        output.write(("{\"index\":" + index + ",\"status\":" + response.getStatusCode().value()).getBytes(StandardCharsets.US_ASCII));
+        byte[] body = response.getBody();
+        if (body != null && body.length > 0) {
+            output.write(",\"body\":".getBytes(StandardCharsets.US_ASCII));
+            MediaType contentType = response.getHeaders().getContentType();
+            if (contentType != null && contentType.getSubtype().endsWith("json") && isJsonValue(body)) {
+                writeJson(output, body);
+            } else {
+                writeString(output, new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        output.write('}');
+        output.write('\n');
+    }
+
+    /**
+     * Tokenizes the body, without building any object.
+     *
+     * @return if the body is exactly one JSON value
+     */
+    static boolean isJsonValue(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() == null) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * New lines can only be whitespace in a JSON document (they are escaped in strings): they are replaced with spaces,
+     * so that the result stays on one line.
+     */
+    private static void writeJson(OutputStream output, byte[] json) throws IOException {
+        int start = 0;
+        for (int i = 0; i < json.length; i++) {
+            if (json[i] == '\n' || json[i] == '\r') {
+                output.write(json, start, i - start);
+                output.write(' ');
+                start = i + 1;
+            }
+        }
+        output.write(json, start, json.length - start);
+    }
+
+    private static void writeString(OutputStream output, String value) throws IOException {
+        StringBuilder escaped = new StringBuilder(value.length() + 2);
+        escaped.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        escaped.append('"');
+        output.write(escaped.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class PendingRecord {
+        private final long index;
+        private final CompletableFuture<ResponseEntity<byte[]>> response;
+
+        private PendingRecord(long index, CompletableFuture<ResponseEntity<byte[]>> response) {
+            this.index = index;
+            this.response = response;
+        }
+    }
+}
@@ -1,73 +1,371 @@
 package com.maxime.router;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Basic Circuit Breaker.
+ * Lock-free Circuit Breaker, with a count-based sliding window.
  * <p>
- * The circuit opens when the number of consecutive reported errors reach CONSECUTIVE_FAILURE_THRESHOLD.
+ * The circuit opens when, over the last {@code slidingWindowSize} calls (and once at least {@code minimumNumberOfCalls}
+ * calls are recorded), the failure rate or the slow call rate reaches its threshold.
  * <p>
- * The circuit closes again after waiting RESET_TIMEOUT_MS from the last failure.
+ * After {@code waitDurationInOpenState}, the circuit moves to HALF_OPEN and only permits
+ * {@code permittedNumberOfCallsInHalfOpenState} trial calls: the circuit closes if they all succeed,
+ * and opens again as soon as one of them fails or is slow.
  * <p>
- * There is no half-open mechanism implemented in this implementation.
+ * The whole state is held in a single {@link AtomicReference}, and transitions are done with compare-and-set:
+ * {@link #acquirePermission()} is a single volatile read while the circuit is closed.
+ * <p>
+ * A {@link Permission} is the state in which it was acquired: releasing it only gives a trial call back to that state,
+ * and the outcome of the call is ignored if the circuit changed state since (e.g. a slow call permitted while CLOSED
+ * must not count as a trial call of a later HALF_OPEN state).
  */
 public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
     /**
-     * Number of consecutive failures before triggering the circuit
+     * A permission granted by {@link #tryAcquirePermission()}, to give back with {@link #releasePermission(Permission)}.
      */
-    static final int CONSECUTIVE_FAILURE_THRESHOLD = 3;
+    public abstract static class Permission {
+        private Permission() {
+        }
+    }
+
     /**
-     * Time to wait before attempting to reset the circuit (in milliseconds)
+     * Notified after each state transition, on the thread which made it: it must be short and must not block.
      */
-    static final int RESET_TIMEOUT_MS = 5000;
-    private final AtomicInteger consecutiveFailuresCount = new AtomicInteger(0);
+    public interface StateListener {
+        void onStateTransition(CircuitBreaker circuitBreaker, State state);
+    }
+
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationThresholdMs;
+    private final long waitDurationInOpenStateNanos;
+    private final int permittedNumberOfCallsInHalfOpenState;
+
+    private final AtomicReference<CircuitState> circuitState;
+
+    private final List<StateListener> stateListeners = new CopyOnWriteArrayList<>();
 
-    private long lastFailureTimestamp = 0;
+    public CircuitBreaker() {
+        this(new CircuitBreakerConfig());
+    }
+
+    public CircuitBreaker(CircuitBreakerConfig config) {
+        if (config.getSlidingWindowSize() < 1 || config.getPermittedNumberOfCallsInHalfOpenState() < 1) {
+            throw new IllegalArgumentException("The sliding window size and the number of calls permitted in HALF_OPEN state must be positive.");
+        }
+        this.slidingWindowSize = config.getSlidingWindowSize();
+        this.minimumNumberOfCalls = Math.max(1, Math.min(config.getMinimumNumberOfCalls(), slidingWindowSize));
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+        this.slowCallDurationThresholdMs = config.getSlowCallDurationThreshold().toMillis();
+        this.waitDurationInOpenStateNanos = config.getWaitDurationInOpenState().toNanos();
+        this.permittedNumberOfCallsInHalfOpenState = config.getPermittedNumberOfCallsInHalfOpenState();
+        this.circuitState = new AtomicReference<>(closed());
+    }
 
     /**
      * Acquire permission.
      * <p>
-     * Checks that the circuit is closed (i.e: circuit is already closed, or RESET_TIMEOUT_MS is reached)
+     * In HALF_OPEN state, a granted permission uses one of the trial calls: the call outcome must then be reported.
      *
-     * @return if the circuit is closed (and thus calls are allowed)
+     * @return if calls are allowed (circuit closed, or trial call in HALF_OPEN state)
      */
-    public synchronized boolean acquirePermission() {
-        // Circuit is closed, allow requests
-        if (isClosed()) {
-            return true;
+    public boolean acquirePermission() {
+        return tryAcquirePermission() != null;
+    }
+
+    /**
+     * Acquire permission, to be released with {@link #releasePermission(Permission)} if the call is not sent.
+     *
+     * @return the permission, or null if calls are not allowed
+     */
+    public Permission tryAcquirePermission() {
+        CircuitState current = circuitState.get();
+        if (current.state == State.CLOSED) {
+            return current;
         }
+        if (current.state == State.HALF_OPEN) {
+            return current.tryAcquireTrialCall() ? current : null;
+        }
+        if (System.nanoTime() - current.openedAtNanos < waitDurationInOpenStateNanos) {
+            // Circuit is open, don't allow requests
+            return null;
+        }
+        // Only one thread moves the circuit to HALF_OPEN, the other ones compete for the trial calls of the new state
+        transition(current, halfOpen());
+        return tryAcquirePermission();
+    }
 
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastFailureTimestamp >= RESET_TIMEOUT_MS) {
-            // Reset the circuit when the timeout is reached
-            consecutiveFailuresCount.set(0);
+    /**
+     * Check if a call would be permitted, without acquiring the permission (and without changing the circuit state).
+     */
+    public boolean isCallPermitted() {
+        CircuitState current = circuitState.get();
+        if (current.state == State.CLOSED) {
             return true;
-        } else {
-            // Circuit is open, don't allow requests
-            return false;
         }
+        if (current.state == State.HALF_OPEN) {
+            return current.remainingTrialCalls.get() > 0;
+        }
+        return System.nanoTime() - current.openedAtNanos >= waitDurationInOpenStateNanos;
+    }
+
+    /**
+     * Release a permission without reporting any outcome, when the call was not sent for a reason unrelated to the
+     * Application API (e.g. the router is saturated).
+     * A permission acquired in HALF_OPEN state gives its trial call back to that state: if the circuit has changed state
+     * since, the new state has its own trial calls, and nothing is given back.
+     */
+    public void releasePermission(Permission permission) {
+        CircuitState acquiredIn = (CircuitState) permission;
+        if (acquiredIn.state == State.HALF_OPEN) {
+            acquiredIn.remainingTrialCalls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Report a failed call, permitted in the current state.
+     */
+    public void reportFailure() {
+        reportFailure(0);
+    }
+
+    /**
+     * Report a failed call permitted in the current state, which took the given duration.
+     */
+    public void reportFailure(long durationMs) {
+        onResult(circuitState.get(), true, durationMs);
+    }
+
+    /**
+     * Report a failed call, which took the given duration. Ignored if the circuit changed state since the permission
+     * was acquired.
+     */
+    public void reportFailure(Permission permission, long durationMs) {
+        onResult((CircuitState) permission, true, durationMs);
+    }
+
+    /**
+     * Report a successful call, permitted in the current state.
+     */
+    public void reportSuccess() {
+        reportSuccess(0);
+    }
+
+    /**
+     * Report a successful call permitted in the current state, which took the given duration.
+     * The call is a slow call if it took more than {@code slowCallDurationThreshold}.
+     */
+    public void reportSuccess(long durationMs) {
+        onResult(circuitState.get(), false, durationMs);
+    }
+
+    /**
+     * Report a successful call, which took the given duration. Ignored if the circuit changed state since the
+     * permission was acquired.
+     */
+    public void reportSuccess(Permission permission, long durationMs) {
+        onResult((CircuitState) permission, false, durationMs);
+    }
+
+    /**
+     * Open the circuit whatever its state, e.g. when a health check fails: calls are rejected for
+     * {@code waitDurationInOpenState} from now. An open circuit only has its open state extended: the listeners are not
+     * notified again.
+     */
+    public void transitionToOpenState() {
+        CircuitState current;
+        do {
+            current = circuitState.get();
+        } while (!transition(current, open()));
+    }
+
+    /**
+     * Close the circuit with an empty sliding window, e.g. when a health check succeeds again.
+     */
+    public void transitionToClosedState() {
+        CircuitState current;
+        do {
+            current = circuitState.get();
+            if (current.state == State.CLOSED) {
+                return;
+            }
+        } while (!transition(current, closed()));
+    }
+
+    public boolean isSlowCall(long durationMs) {
+        return durationMs > slowCallDurationThresholdMs;
+    }
+
+    public void addStateListener(StateListener stateListener) {
+        stateListeners.add(stateListener);
+    }
+
+    public void removeStateListener(StateListener stateListener) {
+        stateListeners.remove(stateListener);
+    }
+
+    public long getWaitDurationInOpenStateNanos() {
+        return waitDurationInOpenStateNanos;
+    }
+
+    public long getSlowCallDurationThresholdMs() {
+        return slowCallDurationThresholdMs;
     }
 
-    private boolean isClosed() {
-        return consecutiveFailuresCount.get() < CONSECUTIVE_FAILURE_THRESHOLD;
+    public State getState() {
+        return circuitState.get().state;
+    }
+
+    private void onResult(CircuitState permittedIn, boolean failure, long durationMs) {
+        boolean slow = isSlowCall(durationMs);
+        CircuitState current = circuitState.get();
+        if (permittedIn != current) {
+            // Permitted in an earlier state: the outcome says nothing about the current one
+            return;
+        }
+        if (current.state == State.CLOSED) {
+            SlidingWindow window = current.slidingWindow;
+            window.record(failure, slow);
+            if (window.getNumberOfCalls() >= minimumNumberOfCalls
+                    && (window.getFailureRate() >= failureRateThreshold || window.getSlowCallRate() >= slowCallRateThreshold)) {
+                transition(current, open());
+            }
+        } else if (current.state == State.HALF_OPEN) {
+            if (failure || slow) {
+                transition(current, open());
+            } else if (current.trialCallSuccesses.incrementAndGet() >= permittedNumberOfCallsInHalfOpenState) {
+                transition(current, closed());
+            }
+        }
+        // OPEN: the call was permitted before the circuit opened, its outcome is ignored
     }
 
     /**
-     * Report a failed call
-     * It increments the consecutiveFailuresCount.
-     * Opens the Circuit breaker if consecutiveFailuresCount reached the FAILURE_THRESHOLD.
+     * @return false if another thread changed the state in the meantime
      */
-    public synchronized void reportFailure() {
-        lastFailureTimestamp = System.currentTimeMillis();
-        consecutiveFailuresCount.incrementAndGet();
+    private boolean transition(CircuitState current, CircuitState next) {
+        if (!circuitState.compareAndSet(current, next)) {
+            return false;
+        }
+        if (current.state == next.state) {
+            // OPEN extended by transitionToOpenState(): not a transition
+            return true;
+        }
+        for (StateListener stateListener : stateListeners) {
+            stateListener.onStateTransition(this, next.state);
+        }
+        return true;
+    }
+
+    private CircuitState closed() {
+        return new CircuitState(State.CLOSED, 0, new SlidingWindow(slidingWindowSize), 0);
+    }
+
+    private CircuitState open() {
+        return new CircuitState(State.OPEN, System.nanoTime(), null, 0);
+    }
+
+    private CircuitState halfOpen() {
+        return new CircuitState(State.HALF_OPEN, 0, null, permittedNumberOfCallsInHalfOpenState);
     }
 
+    /**
+     * State of the circuit, with the counters which only make sense in this state.
+     * A new instance is created on each transition, so the counters are reset with the state.
+     */
+    private static final class CircuitState extends Permission {
+        private final State state;
+        /**
+         * OPEN only.
+         */
+        private final long openedAtNanos;
+        /**
+         * CLOSED only.
+         */
+        private final SlidingWindow slidingWindow;
+        /**
+         * HALF_OPEN only.
+         */
+        private final AtomicInteger remainingTrialCalls;
+        private final AtomicInteger trialCallSuccesses = new AtomicInteger();
+
+        private CircuitState(State state, long openedAtNanos, SlidingWindow slidingWindow, int trialCalls) {
+            this.state = state;
+            this.openedAtNanos = openedAtNanos;
+            this.slidingWindow = slidingWindow;
+            this.remainingTrialCalls = new AtomicInteger(trialCalls);
+        }
+
+        private boolean tryAcquireTrialCall() {
+            int remaining;
+            do {
+                remaining = remainingTrialCalls.get();
+                if (remaining <= 0) {
+                    return false;
+                }
+            } while (!remainingTrialCalls.compareAndSet(remaining, remaining - 1));
+            return true;
+        }
+    }
 
     /**
-     * Report successful call.
-     * It resets consecutiveFailuresCount to 0.
+     * Count-based sliding window: a ring buffer of the last {@code size} call outcomes.
+     * <p>
+     * Each recorded outcome replaces the oldest one, and the failure and slow call counters are adjusted with the
+     * difference, so the rates are computed without iterating over the buffer.
      */
-    public synchronized void reportSuccess() {
-        consecutiveFailuresCount.set(0);
+    private static final class SlidingWindow {
+        private static final int FAILURE = 1;
+        private static final int SLOW = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong recordedCalls = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        private SlidingWindow(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        private void record(boolean failure, boolean slow) {
+            int outcome = (failure ? FAILURE : 0) | (slow ? SLOW : 0);
+            int index = (int) (recordedCalls.getAndIncrement() % outcomes.length());
+            int evicted = outcomes.getAndSet(index, outcome);
+            int failuresDelta = (outcome & FAILURE) - (evicted & FAILURE);
+            if (failuresDelta != 0) {
+                failures.addAndGet(failuresDelta);
+            }
+            int slowCallsDelta = ((outcome & SLOW) - (evicted & SLOW)) / SLOW;
+            if (slowCallsDelta != 0) {
+                slowCalls.addAndGet(slowCallsDelta);
+            }
+        }
+
+        private int getNumberOfCalls() {
+            return (int) Math.min(recordedCalls.get(), outcomes.length());
+        }
+
+        private float getFailureRate() {
+            return failures.get() * 100f / getNumberOfCalls();
+        }
+
+        private float getSlowCallRate() {
+            return slowCalls.get() * 100f / getNumberOfCalls();
+        }
     }
 }
@@ -0,0 +1,97 @@
+package com.maxime.router;
+
+import java.time.Duration;
+
+/**
+ * Circuit Breaker thresholds of an Application API instance.
+ * <p>
+ * Bound from the {@code router.circuit-breaker.*} properties. The values are copied by the {@link CircuitBreaker}
+ * when it is created: changing them afterwards has no effect on existing breakers.
+ */
+public class CircuitBreakerConfig {
+
+    /**
+     * Number of most recent calls used to compute the failure and slow call rates.
+     */
+    private int slidingWindowSize = 10;
+    /**
+     * Minimum number of calls in the sliding window before the rates are evaluated.
+     */
+    private int minimumNumberOfCalls = 5;
+    /**
+     * The circuit opens when the failure rate (in percent) is greater than or equal to this threshold.
+     */
+    private float failureRateThreshold = 50;
+    /**
+     * The circuit opens when the slow call rate (in percent) is greater than or equal to this threshold.
+     */
+    private float slowCallRateThreshold = 100;
+    /**
+     * Calls taking longer than this are slow calls.
+     */
+    private Duration slowCallDurationThreshold = Duration.ofSeconds(5);
+    /**
+     * Time to wait in OPEN state before moving to HALF_OPEN.
+     */
+    private Duration waitDurationInOpenState = Duration.ofSeconds(5);
+    /**
+     * Number of trial calls permitted in HALF_OPEN state.
+     */
+    private int permittedNumberOfCallsInHalfOpenState = 3;
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public void setSlidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public Duration getSlowCallDurationThreshold() {
+        return slowCallDurationThreshold;
+    }
+
+    public void setSlowCallDurationThreshold(Duration slowCallDurationThreshold) {
+        this.slowCallDurationThreshold = slowCallDurationThreshold;
+    }
+
+    public Duration getWaitDurationInOpenState() {
+        return waitDurationInOpenState;
+    }
+
+    public void setWaitDurationInOpenState(Duration waitDurationInOpenState) {
+        this.waitDurationInOpenState = waitDurationInOpenState;
+    }
+
+    public int getPermittedNumberOfCallsInHalfOpenState() {
+        return permittedNumberOfCallsInHalfOpenState;
+    }
+
+    public void setPermittedNumberOfCallsInHalfOpenState(int permittedNumberOfCallsInHalfOpenState) {
+        this.permittedNumberOfCallsInHalfOpenState = permittedNumberOfCallsInHalfOpenState;
+    }
+}
@@ -0,0 +1,164 @@
+package com.maxime.router;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive limit of the concurrent requests sent to an Application API instance, computed from its latency.
+ * <p>
+ * The limit follows the gradient between the long-term latency of the instance and the latency of each response:
+ * <ul>
+ *     <li>while responses are not slower than {@code tolerance} times the long-term latency, the limit grows by its
+ *     square root (the queue allowed to build up on the instance).</li>
+ *     <li>when they get slower, the instance is queuing requests: the limit shrinks in proportion, down to half of it.</li>
+ *     <li>when a request exceeds its deadline, the limit is multiplied by the {@code backoffRatio}.</li>
+ * </ul>
+ * Responses received while less than half of the limit is in use say nothing about the capacity of the instance: they
+ * only update the long-term latency.
+ * <p>
+ * Like {@link InstanceLoad}, updates are lock-free and allocation-free: the doubles are stored as bits in {@link AtomicLong}s.
+ * A sample racing with another one may be lost, which does not matter for a smoothed limit.
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * Weight of a latency sample in the long-term latency: about the last 600 responses.
+     */
+    private static final double LONG_RTT_WEIGHT = 1.0 / 600;
+
+    private final boolean enabled;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final double smoothing;
+
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final AtomicLong limitBits;
+
+    private final AtomicLong longRttNanosBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    public ConcurrencyLimiter(RouterProperties.ConcurrencyLimit config) {
+        this.enabled = config.isAdaptive();
+        this.minLimit = Math.max(1, config.getMinLimit());
+        this.maxLimit = Math.max(minLimit, config.getMaxLimit());
+        this.tolerance = config.getTolerance();
+        this.smoothing = config.getSmoothing();
+        this.backoffRatio = config.getBackoffRatio();
+        double initialLimit = Math.min(maxLimit, Math.max(minLimit, config.getInitialLimit()));
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    /**
+     * @return false if the instance is at its limit: the request must not be sent to it
+     */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            return true;
+        }
+        int limit = getLimit();
+        int current;
+        do {
+            current = inFlightRequests.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlightRequests.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * The request ended without a meaningful latency (not sent, cancelled, failed): the limit is unchanged.
+     */
+    public void release() {
+        if (enabled) {
+            inFlightRequests.decrementAndGet();
+        }
+    }
+
+    /**
+     * The instance answered: the limit is updated from the latency.
+     */
+    public void onResponse(long rttNanos) {
+        if (!enabled) {
+            return;
+        }
+        int inFlight = inFlightRequests.getAndDecrement();
+        if (rttNanos <= 0) {
+            return;
+        }
+        double longRttNanos = updateLongRtt(rttNanos);
+        long currentBits = limitBits.get();
+        double limit = Double.longBitsToDouble(currentBits);
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        updateLimit(currentBits, limit * (1 - smoothing) + newLimit * smoothing);
+    }
+
+    /**
+     * A request of the instance exceeded its deadline. Its slot is only released by {@link #release()} or
+     * {@link #onResponse(long)}, when the call really ends.
+     */
+    public void onDropped() {
+        if (!enabled) {
+            return;
+        }
+        long currentBits = limitBits.get();
+        updateLimit(currentBits, Double.longBitsToDouble(currentBits) * backoffRatio);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the current limit, or 0 if the limiter is disabled
+     */
+    public int getLimit() {
+        return enabled ? (int) Double.longBitsToDouble(limitBits.get()) : 0;
+    }
+
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return the long-term latency, in nanoseconds
+     */
+    public double getLongRttNanos() {
+        return Double.longBitsToDouble(longRttNanosBits.get());
+    }
+
+    private double updateLongRtt(long rttNanos) {
+        long currentBits;
+        double updated;
+        do {
+            currentBits = longRttNanosBits.get();
+            double current = Double.longBitsToDouble(currentBits);
+            if (current == 0) {
+                updated = rttNanos;
+            } else {
+                updated = current * (1 - LONG_RTT_WEIGHT) + rttNanos * LONG_RTT_WEIGHT;
+                if (updated > 2 * rttNanos) {
+                    // The latency came back down after a slowdown: the long-term latency catches up faster
+                    updated *= 0.95;
+                }
+            }
+        } while (!longRttNanosBits.compareAndSet(currentBits, Double.doubleToRawLongBits(updated)));
+        return updated;
+    }
+
+    private void updateLimit(long currentBits, double newLimit) {
+        double clamped = Math.min(maxLimit, Math.max(minLimit, newLimit));
+        limitBits.compareAndSet(currentBits, Double.doubleToRawLongBits(clamped));
+    }
+}
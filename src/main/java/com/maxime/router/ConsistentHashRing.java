@@ -0,0 +1,187 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Affinity load balancer: consistent hashing of a key of the requests, so that the requests with the same key (e.g. the
+ * same player) go to the same instance, and hit its caches.
+ * <p>
+ * Each instance is placed on a hash ring at {@code virtualNodes} points, hashed from its url. A request goes to the
+ * owner of the first point at or after the hash of its key. Points only depend on the urls: adding or removing an
+ * instance only moves the keys of its own points, about {@code 1 / instances} of them.
+ * <p>
+ * When the first instance cannot be used (open circuit, concurrency limit, failover), the request goes to the next
+ * distinct instances on the ring, which is where its keys would move if the instance were removed.
+ * Requests without a key are sent in round robin.
+ */
+public class ConsistentHashRing implements LoadBalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashRing.class);
+
+    private final PaddedCounter requestsCounter = new PaddedCounter();
+
+    private final List<ApplicationApiInstance> applicationApiInstances;
+
+    /**
+     * Sorted hashes of the points of the ring.
+     */
+    private final long[] pointHashes;
+
+    /**
+     * Index of the instance owning each point.
+     */
+    private final int[] pointOwners;
+
+    private final String header;
+
+    /**
+     * Null if the key is not in the body.
+     */
+    private final byte[] field;
+
+    public ConsistentHashRing(List<ApplicationApiInstance> applicationApiInstances, RouterProperties.Affinity affinityConfig) {
+        if (applicationApiInstances == null || applicationApiInstances.isEmpty()) {
+            throw new IllegalArgumentException("Cannot start a router with a null or empty Application API instances list.");
+        }
+        if (affinityConfig.getHeader() == null && affinityConfig.getField() == null) {
+            throw new IllegalArgumentException("The consistent hash load balancer needs an affinity header or field.");
+        }
+        this.applicationApiInstances = List.copyOf(applicationApiInstances);
+        this.header = affinityConfig.getHeader();
+        this.field = affinityConfig.getField() == null ? null : affinityConfig.getField().getBytes(StandardCharsets.UTF_8);
+
+        int virtualNodes = Math.max(1, affinityConfig.getVirtualNodes());
+        long[][] points = new long[applicationApiInstances.size() * virtualNodes][];
+        for (int instance = 0; instance < applicationApiInstances.size(); instance++) {
+            String url = applicationApiInstances.get(instance).getApplicationApiUrl();
+            for (int node = 0; node < virtualNodes; node++) {
+                byte[] point = (url + '#' + node).getBytes(StandardCharsets.UTF_8);
+                points[instance * virtualNodes + node] = new long[]{AffinityKey.hash(point, 0, point.length), instance};
+            }
+        }
+        // Ties between points are broken by instance index, so that the ring does not depend on the sort
+        Arrays.sort(points, Comparator.<long[]>comparingLong(point -> point[0]).thenComparingLong(point -> point[1]));
+        this.pointHashes = new long[points.length];
+        this.pointOwners = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            pointHashes[i] = points[i][0];
+            pointOwners[i] = (int) points[i][1];
+        }
+        logger.info("Starting Consistent Hash Router on {} with following Urls: {}",
+                header != null ? "header " + header : "field " + affinityConfig.getField(),
+                ApplicationApiInstance.urls(applicationApiInstances));
+    }
+
+    /**
+     * @return the position on the ring of the key of the request, or -1 if it has no key
+     */
+    public int getPosition(HttpHeaders headers, byte[] body) {
+        if (header != null) {
+            String value = headers.getFirst(header);
+            if (value != null) {
+                byte[] key = value.getBytes(StandardCharsets.UTF_8);
+                return getPosition(AffinityKey.hash(key, 0, key.length));
+            }
+        }
+        if (field != null && body != null) {
+            long range = AffinityKey.findField(body, field);
+            if (range >= 0) {
+                return getPosition(AffinityKey.hash(body, (int) (range >>> 32), (int) range));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position of the first point at or after the hash
+     */
+    int getPosition(long keyHash) {
+        int position = Arrays.binarySearch(pointHashes, keyHash);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        return position == pointHashes.length ? 0 : position;
+    }
+
+    /**
+     * @param position position of the key on the ring
+     * @param offset   0 for the owner of the key, 1 for the next distinct instance on the ring, and so on
+     * @return the index of the instance, or -1 if there are fewer instances than {@code offset + 1}
+     */
+    public int getInstanceIndex(int position, int offset) {
+        return offset == 0 ? pointOwners[position] : walk(position).getInstanceIndex(offset);
+    }
+
+    /**
+     * @return a walk of the ring from the position, to look up several offsets without walking the ring again for each one
+     */
+    public Walk walk(int position) {
+        return new Walk(position);
+    }
+
+    @Override
+    public int getNextInstanceIndex() {
+        return (int) (requestsCounter.getAndIncrement() % applicationApiInstances.size());
+    }
+
+    @Override
+    public ApplicationApiInstance getInstance(int index) {
+        return applicationApiInstances.get(index);
+    }
+
+    @Override
+    public List<ApplicationApiInstance> getInstances() {
+        return applicationApiInstances;
+    }
+
+    @Override
+    public int getInstancesCount() {
+        return applicationApiInstances.size();
+    }
+
+    /**
+     * The distinct instances on the ring from a position, found as they are looked up: the points are walked at most
+     * once, whatever the number of offsets looked up. Thread-safe: the attempts of a request run on different threads.
+     */
+    public final class Walk {
+
+        private final int position;
+
+        private final long[] seen = new long[(applicationApiInstances.size() + 63) / 64];
+
+        /**
+         * Distinct instances found so far, in ring order.
+         */
+        private final int[] instances = new int[applicationApiInstances.size()];
+
+        private int found;
+
+        private int walkedPoints;
+
+        private Walk(int position) {
+            this.position = position;
+        }
+
+        /**
+         * @see ConsistentHashRing#getInstanceIndex(int, int)
+         */
+        public synchronized int getInstanceIndex(int offset) {
+            while (found <= offset && walkedPoints < pointOwners.length) {
+                int owner = pointOwners[(position + walkedPoints++) % pointOwners.length];
+                long bit = 1L << owner;
+                if ((seen[owner >>> 6] & bit) == 0) {
+                    seen[owner >>> 6] |= bit;
+                    instances[found++] = owner;
+                }
+            }
+            return offset < found ? instances[offset] : -1;
+        }
+    }
+}
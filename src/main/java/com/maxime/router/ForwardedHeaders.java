@@ -0,0 +1,83 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects the headers that are forwarded between the client and the Application API.
+ * <p>
+ * Hop-by-hop headers (RFC 9110, section 7.6.1) only apply to a single connection, and must not be forwarded: the
+ * standard ones, and the ones named in the {@code Connection} header of the message.
+ * Host and Content-Length are recomputed by the HTTP client for the downstream request.
+ */
+final class ForwardedHeaders {
+
+    private static final Set<String> NOT_FORWARDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        NOT_FORWARDED_HEADERS.addAll(List.of(
+                HttpHeaders.CONNECTION,
+                "Keep-Alive",
+                HttpHeaders.PROXY_AUTHENTICATE,
+                HttpHeaders.PROXY_AUTHORIZATION,
+                "Proxy-Connection",
+                HttpHeaders.TE,
+                HttpHeaders.TRAILER,
+                HttpHeaders.TRANSFER_ENCODING,
+                HttpHeaders.UPGRADE,
+                HttpHeaders.HOST,
+                HttpHeaders.CONTENT_LENGTH
+        ));
+    }
+
+    private ForwardedHeaders() {
+    }
+
+    static boolean isForwarded(String headerName) {
+        return !NOT_FORWARDED_HEADERS.contains(headerName);
+    }
+
+    /**
+     * @param connectionOptions the {@link #connectionOptions(List) headers named in the Connection header} of the message
+     */
+    static boolean isForwarded(String headerName, Set<String> connectionOptions) {
+        return isForwarded(headerName) && !connectionOptions.contains(headerName);
+    }
+
+    /**
+     * @param connectionHeaders values of the {@code Connection} header of a message, or null if it has none
+     * @return the names of the headers listed in them, case-insensitive
+     */
+    static Set<String> connectionOptions(List<String> connectionHeaders) {
+        if (connectionHeaders == null || connectionHeaders.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> connectionOptions = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String connectionHeader : connectionHeaders) {
+            for (String option : connectionHeader.split(",")) {
+                if (!option.isBlank()) {
+                    connectionOptions.add(option.trim());
+                }
+            }
+        }
+        return connectionOptions;
+    }
+
+    /**
+     * @return a copy of the given headers, without the headers that must not be forwarded
+     */
+    static HttpHeaders endToEndHeaders(HttpHeaders headers) {
+        Set<String> connectionOptions = connectionOptions(headers.get(HttpHeaders.CONNECTION));
+        HttpHeaders endToEndHeaders = new HttpHeaders();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (isForwarded(header.getKey(), connectionOptions)) {
+                endToEndHeaders.addAll(header.getKey(), header.getValue());
+            }
+        }
+        return endToEndHeaders;
+    }
+}
@@ -0,0 +1,43 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends a request to an Application API instance.
+ * <p>
+ * The request and response bodies are passed through as raw bytes: they are never parsed by the router.
+ * <p>
+ * Implementations never throw: any error (connection refused, I/O error, ...) is reported through the returned future,
+ * so that the caller can report the outcome to the instance Circuit Breaker on the completion path.
+ * HTTP error statuses are not errors: they are returned as a response, like any other status.
+ * <p>
+ * Cancelling the returned future aborts the downstream call, if the engine supports it.
+ */
+public interface ForwardingEngine {
+
+    /**
+     * @param headers end-to-end headers to forward (see {@link ForwardedHeaders})
+     * @param body    raw request body, can be empty
+     */
+    CompletableFuture<ResponseEntity<byte[]>> forward(ApplicationApiInstance applicationApiInstance,
+                                                      HttpHeaders headers, byte[] body);
+
+    /**
+     * Send a health check GET request, on the connections of the instance with the same host and port.
+     * The response body is discarded.
+     *
+     * @param timeout maximum time waiting for a connection from the pool, and then for the response
+     * @return the response status
+     */
+    CompletableFuture<HttpStatusCode> probe(String probeUrl, Duration timeout);
+
+    /**
+     * @return the upstream connection pool stats of the given instance, or null if the engine does not pool connections
+     */
+    UpstreamPoolStats getPoolStats(ApplicationApiInstance applicationApiInstance);
+}
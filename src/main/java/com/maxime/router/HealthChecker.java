@@ -0,0 +1,155 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatusCode;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background health checks of the registered Application API instances.
+ * <p>
+ * Every {@code interval}, each instance is probed with a GET request, after a random delay of up to {@code jitter} so
+ * that the probes are spread over time. Probes are sent by the {@link ForwardingEngine}, on the pooled connections of
+ * the instances, from a small scheduler shared by all the instances. Any response below 500 is a success.
+ * <p>
+ * Probes drive the Circuit Breakers, without waiting for client requests to fail or to be gambled on a trial call:
+ * <ul>
+ *     <li>after {@code unhealthyThreshold} consecutive failed probes, the circuit is opened, and kept open as long as
+ *     the probes fail.</li>
+ *     <li>after {@code healthyThreshold} consecutive successful probes, an open or half-open circuit is closed.</li>
+ * </ul>
+ */
+public class HealthChecker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthChecker.class);
+
+    private final InstanceRegistry instanceRegistry;
+
+    private final ForwardingEngine forwardingEngine;
+
+    private final RouterProperties.HealthCheck config;
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final Map<ApplicationApiInstance, ProbeState> probeStates = new ConcurrentHashMap<>();
+
+    public HealthChecker(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine,
+                         RouterProperties.HealthCheck config) {
+        this.instanceRegistry = instanceRegistry;
+        this.forwardingEngine = forwardingEngine;
+        this.config = config;
+        AtomicInteger threadsCount = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, config.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "router-health-check-" + threadsCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    public void start() {
+        long intervalMs = config.getInterval().toMillis();
+        scheduler.scheduleAtFixedRate(this::probeAll, 0, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Health checking the Application API instances every {} MS.", intervalMs);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void probeAll() {
+        try {
+            scheduleProbes();
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic task
+            logger.error("Health checks could not be scheduled.", e);
+        }
+    }
+
+    private void scheduleProbes() {
+        List<ApplicationApiInstance> applicationApiInstances = instanceRegistry.getApplicationApiInstances();
+        // Forget the instances which are not registered anymore
+        probeStates.keySet().retainAll(applicationApiInstances);
+        long jitterMs = config.getJitter().toMillis();
+        for (ApplicationApiInstance applicationApiInstance : applicationApiInstances) {
+            ProbeState probeState = probeStates.computeIfAbsent(applicationApiInstance, this::probeState);
+            long delayMs = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0;
+            scheduler.schedule(() -> probe(applicationApiInstance, probeState), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void probe(ApplicationApiInstance applicationApiInstance, ProbeState probeState) {
+        // A probe still waiting for its response is not overlapped
+        if (!probeState.inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        // The timeout applies to the request itself: a blocking engine only returns once the probe is complete
+        CompletableFuture<HttpStatusCode> probe = forwardingEngine.probe(probeState.probeUrl, config.getTimeout());
+        probe.whenComplete((status, throwable) -> {
+            boolean healthy = throwable == null && !status.is5xxServerError();
+            if (!healthy) {
+                logger.debug("Health check of {} failed: {}", applicationApiInstance.getApplicationApiUrl(),
+                        throwable == null ? status : throwable.toString());
+            }
+            onProbeResult(applicationApiInstance, probeState, healthy);
+            probeState.inFlight.set(false);
+        });
+    }
+
+    private void onProbeResult(ApplicationApiInstance applicationApiInstance, ProbeState probeState, boolean healthy) {
+        CircuitBreaker circuitBreaker = applicationApiInstance.getCircuitBreaker();
+        if (healthy) {
+            probeState.consecutiveFailures = 0;
+            probeState.consecutiveSuccesses++;
+            if (probeState.consecutiveSuccesses >= config.getHealthyThreshold()
+                    && circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                logger.info("Downstream server {} passed its health check: closing its circuit.",
+                        applicationApiInstance.getApplicationApiUrl());
+                circuitBreaker.transitionToClosedState();
+            }
+        } else {
+            probeState.consecutiveSuccesses = 0;
+            probeState.consecutiveFailures++;
+            if (probeState.consecutiveFailures >= config.getUnhealthyThreshold()) {
+                if (circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+                    logger.warn("Downstream server {} failed {} health checks: opening its circuit.",
+                            applicationApiInstance.getApplicationApiUrl(), probeState.consecutiveFailures);
+                }
+                // Also pushes back the end of the open state, so that no client request is tried on it meanwhile (an
+                // open circuit is extended without a new transition)
+                circuitBreaker.transitionToOpenState();
+            }
+        }
+    }
+
+    private ProbeState probeState(ApplicationApiInstance applicationApiInstance) {
+        String applicationApiUrl = applicationApiInstance.getApplicationApiUrl();
+        String path = config.getPath();
+        return new ProbeState(path == null || path.isEmpty() ? applicationApiUrl : URI.create(applicationApiUrl).resolve(path).toString());
+    }
+
+    private static final class ProbeState {
+        private final String probeUrl;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        /**
+         * Only updated by the completion of a probe, and probes of an instance do not overlap.
+         */
+        private int consecutiveSuccesses;
+        private int consecutiveFailures;
+
+        private ProbeState(String probeUrl) {
+            this.probeUrl = probeUrl;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.maxime.router;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bitmap of the instances whose circuit is not open, maintained from the Circuit Breaker state transitions.
+ * <p>
+ * Checking an instance is a single volatile read, instead of a call to {@code acquirePermission}: instances with an open
+ * circuit are skipped until their {@code waitDurationInOpenState} elapses, and can then be tried again to move their
+ * circuit to HALF_OPEN.
+ */
+public class HealthyInstances implements AutoCloseable {
+
+    private final List<ApplicationApiInstance> applicationApiInstances;
+
+    private final AtomicLongArray healthyBits;
+
+    /**
+     * {@link System#nanoTime()} at which an instance with an open circuit can be tried again.
+     */
+    private final AtomicLongArray retryAtNanos;
+
+    private final CircuitBreaker.StateListener[] stateListeners;
+
+    public HealthyInstances(List<ApplicationApiInstance> applicationApiInstances) {
+        int instancesCount = applicationApiInstances.size();
+        this.applicationApiInstances = applicationApiInstances;
+        this.healthyBits = new AtomicLongArray((instancesCount + 63) / 64);
+        this.retryAtNanos = new AtomicLongArray(instancesCount);
+        this.stateListeners = new CircuitBreaker.StateListener[instancesCount];
+        for (int i = 0; i < instancesCount; i++) {
+            int index = i;
+            CircuitBreaker circuitBreaker = applicationApiInstances.get(i).getCircuitBreaker();
+            stateListeners[i] = (breaker, state) -> update(index, breaker, state);
+            circuitBreaker.addStateListener(stateListeners[i]);
+            update(i, circuitBreaker, circuitBreaker.getState());
+        }
+    }
+
+    /**
+     * @return false if the circuit of the instance is open, and cannot be tried yet
+     */
+    public boolean isCandidate(int index) {
+        return (healthyBits.get(index >>> 6) & (1L << index)) != 0
+                || System.nanoTime() - retryAtNanos.get(index) >= 0;
+    }
+
+    /**
+     * Stop following the Circuit Breakers, when the instances are not routed to anymore.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < stateListeners.length; i++) {
+            applicationApiInstances.get(i).getCircuitBreaker().removeStateListener(stateListeners[i]);
+        }
+    }
+
+    private void update(int index, CircuitBreaker circuitBreaker, CircuitBreaker.State state) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if (state == CircuitBreaker.State.OPEN) {
+            retryAtNanos.set(index, System.nanoTime() + circuitBreaker.getWaitDurationInOpenStateNanos());
+            long current;
+            do {
+                current = healthyBits.get(word);
+            } while (!healthyBits.compareAndSet(word, current, current & ~bit));
+        } else {
+            long current;
+            do {
+                current = healthyBits.get(word);
+            } while (!healthyBits.compareAndSet(word, current, current | bit));
+        }
+    }
+}
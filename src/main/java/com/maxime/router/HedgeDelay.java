@@ -0,0 +1,72 @@
+package com.maxime.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delay after which a hedged request is sent: a percentile (e.g. p95) of the recent response latencies.
+ * <p>
+ * Latencies are recorded in a {@link LatencyHistogram} per time window. When a window ends, the percentile is computed
+ * once from its histogram, and a new window starts: the delay follows the latency changes, with one window of lag.
+ */
+public class HedgeDelay {
+
+    private final double percentile;
+
+    private final long windowNanos;
+
+    private final long minimumSamples;
+
+    private final AtomicReference<Window> currentWindow;
+
+    /**
+     * Null until a window with enough samples has ended: no hedging until then.
+     */
+    private volatile Long delayNanos;
+
+    public HedgeDelay(double percentile, long windowNanos, long minimumSamples) {
+        this.percentile = percentile;
+        this.windowNanos = windowNanos;
+        this.minimumSamples = minimumSamples;
+        this.currentWindow = new AtomicReference<>(new Window(System.nanoTime()));
+    }
+
+    public void record(long latencyNanos) {
+        currentWindow().histogram.recordNanos(latencyNanos);
+    }
+
+    /**
+     * @return the delay in nanoseconds, or -1 if not enough latencies are known yet
+     */
+    public long getDelayNanos() {
+        currentWindow();
+        Long delay = delayNanos;
+        return delay == null ? -1 : delay;
+    }
+
+    private Window currentWindow() {
+        Window window = currentWindow.get();
+        long now = System.nanoTime();
+        if (now - window.startNanos < windowNanos) {
+            return window;
+        }
+        Window next = new Window(now);
+        if (currentWindow.compareAndSet(window, next)) {
+            // Only the thread ending the window computes the percentile
+            if (window.histogram.getTotalCount() >= minimumSamples) {
+                delayNanos = TimeUnit.MICROSECONDS.toNanos(window.histogram.getValueAtPercentile(percentile));
+            }
+            return next;
+        }
+        return currentWindow.get();
+    }
+
+    private static final class Window {
+        private final long startNanos;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+}
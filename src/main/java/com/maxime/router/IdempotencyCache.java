@@ -0,0 +1,350 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Responses of the router requests, by idempotency key: the {@code Idempotency-Key} header, or a hash of the body.
+ * A single cache is shared by all the pools, so its limits are the ones of the whole router: the keys include the pool,
+ * and a key reused in another pool is another request.
+ * <p>
+ * <ul>
+ *     <li>the first request with a key is dispatched (miss). Its response is cached for the {@code ttl}, unless it is a
+ *     server error: the request can then be retried.</li>
+ *     <li>requests with the same key arriving while it is in flight wait for its response, instead of being dispatched
+ *     too (coalesced).</li>
+ *     <li>later requests get the cached response (hit). Replayed responses have an {@code Idempotent-Replayed} header.</li>
+ *     <li>a request reusing a key with another body is rejected with a 422: the bodies are compared by their SHA-256.
+ *     A key computed from the body is its SHA-256 already.</li>
+ * </ul>
+ * All the entries have the same time to live: the oldest entry is always the first to expire. Entries are evicted in
+ * insertion order, when they expire or when the cache is over {@code maxEntries} or {@code maxSize}.
+ * <p>
+ * Response bodies can be stored off-heap, in a single {@link OffHeapSlab} of {@code maxSize} allocated at startup: a large
+ * cache then adds little to the garbage collected heap, and the memory it uses outside the heap is bounded. When the slab
+ * is full, the oldest responses are evicted to make room. Replayed bodies are copied back to the heap.
+ */
+public class IdempotencyCache {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String HEADER_KEY_PREFIX = "header:";
+
+    private static final String BODY_KEY_PREFIX = "body:";
+
+    private final boolean enabled;
+
+    private final String header;
+
+    private final boolean keyFromBody;
+
+    private final long ttlNanos;
+
+    private final int maxEntries;
+
+    private final long maxSize;
+
+    private final long maxResponseSize;
+
+    /**
+     * Null if the bodies are stored on the heap.
+     */
+    private final OffHeapSlab offHeapSlab;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Cached entries, in insertion order, thus in expiration order.
+     */
+    private final ConcurrentLinkedQueue<Entry> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger cachedEntries = new AtomicInteger();
+
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(RouterProperties.Idempotency config) {
+        this.enabled = config.isEnabled();
+        this.header = config.getHeader();
+        this.keyFromBody = config.isKeyFromBody();
+        this.ttlNanos = config.getTtl().toNanos();
+        this.maxEntries = Math.max(1, config.getMaxEntries());
+        this.maxSize = config.getMaxSize().toBytes();
+        this.maxResponseSize = config.getMaxResponseSize().toBytes();
+        this.offHeapSlab = config.isOffHeap() ? new OffHeapSlab(maxSize) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @param pool the pool the request is routed to
+     * @return the idempotency key of the request, or null if it has none
+     */
+    public String key(String pool, HttpHeaders requestHeaders, byte[] requestBody) {
+        // Header values cannot contain a line feed: the pool is whatever precedes the last one
+        String idempotencyKey = requestHeaders.getFirst(header);
+        if (idempotencyKey != null) {
+            return HEADER_KEY_PREFIX + pool + '\n' + idempotencyKey;
+        }
+        if (keyFromBody) {
+            return BODY_KEY_PREFIX + pool + '\n' + Base64.getEncoder().encodeToString(sha256(requestBody));
+        }
+        return null;
+    }
+
+    /**
+     * @param dispatch sends the request to the Application API, on a miss
+     */
+    public CompletableFuture<ResponseEntity<byte[]>> dispatch(String key, byte[] requestBody,
+                                                              Supplier<CompletableFuture<ResponseEntity<byte[]>>> dispatch) {
+        // Null for a key computed from the body: requests with this key have the same body
+        byte[] bodyDigest = key.startsWith(BODY_KEY_PREFIX) ? null : sha256(requestBody);
+        long now = System.nanoTime();
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                Entry pending = new Entry(key, bodyDigest);
+                if (entries.putIfAbsent(key, pending) != null) {
+                    continue;
+                }
+                misses.increment();
+                CompletableFuture<ResponseEntity<byte[]>> response;
+                try {
+                    response = dispatch.get();
+                } catch (RuntimeException e) {
+                    // Otherwise the requests with this key would wait forever for the pending response
+                    entries.remove(key, pending);
+                    pending.sharedResponse.completeExceptionally(e);
+                    throw e;
+                }
+                response.whenComplete((result, throwable) -> onResponse(pending, result, throwable));
+                return response;
+            }
+            if (!Arrays.equals(entry.bodyDigest, bodyDigest)) {
+                conflicts.increment();
+                return CompletableFuture.completedFuture(Responses.errorResponse(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "The idempotency key was already used by another request."));
+            }
+            if (entry.isPending()) {
+                coalesced.increment();
+                return entry.sharedResponse.thenApply(IdempotencyCache::replayed);
+            }
+            if (now - entry.expirationNanos >= 0) {
+                evict(entry);
+                continue;
+            }
+            byte[] cachedBody = entry.offHeapBody == null ? entry.body : offHeapSlab.load(entry.offHeapBody);
+            if (cachedBody == null) {
+                // Evicted meanwhile
+                continue;
+            }
+            hits.increment();
+            return CompletableFuture.completedFuture(entry.toResponse(cachedBody));
+        }
+    }
+
+    private void onResponse(Entry pending, ResponseEntity<byte[]> response, Throwable throwable) {
+        if (throwable != null) {
+            entries.remove(pending.key, pending);
+            pending.sharedResponse.completeExceptionally(throwable);
+            return;
+        }
+        byte[] body = response.getBody() == null ? new byte[0] : response.getBody();
+        Entry cached = isCacheable(response, body) ? cachedEntry(pending, response, body) : null;
+        if (cached != null && entries.replace(pending.key, pending, cached)) {
+            cachedEntries.incrementAndGet();
+            cachedBytes.addAndGet(body.length);
+            evictionQueue.add(cached);
+            evictOverflow();
+        } else {
+            entries.remove(pending.key, pending);
+            if (cached != null && cached.offHeapBody != null) {
+                offHeapSlab.free(cached.offHeapBody);
+            }
+        }
+        pending.sharedResponse.complete(response);
+    }
+
+    /**
+     * @return the entry caching the response, or null if it does not fit off-heap
+     */
+    private Entry cachedEntry(Entry pending, ResponseEntity<byte[]> response, byte[] body) {
+        long expirationNanos = System.nanoTime() + ttlNanos;
+        if (offHeapSlab == null) {
+            return new Entry(pending, response, body, null, body.length, expirationNanos);
+        }
+        if (body.length > offHeapSlab.getCapacity()) {
+            return null;
+        }
+        OffHeapSlab.Region offHeapBody;
+        while ((offHeapBody = offHeapSlab.store(body)) == null) {
+            // The slab is full: make room by evicting the oldest responses
+            Entry oldest = evictionQueue.poll();
+            if (oldest == null) {
+                return null;
+            }
+            evict(oldest);
+        }
+        return new Entry(pending, response, null, offHeapBody, body.length, expirationNanos);
+    }
+
+    /**
+     * Server errors, timeouts and rejections are not cached: the request can be retried.
+     */
+    private boolean isCacheable(ResponseEntity<byte[]> response, byte[] body) {
+        return !Responses.isServerError(response) && body.length <= maxResponseSize;
+    }
+
+    private void evictOverflow() {
+        long now = System.nanoTime();
+        Entry oldest;
+        while ((oldest = evictionQueue.peek()) != null
+                && (cachedEntries.get() > maxEntries || cachedBytes.get() > maxSize || now - oldest.expirationNanos >= 0)) {
+            if (evictionQueue.remove(oldest)) {
+                evict(oldest);
+            }
+        }
+    }
+
+    private void evict(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            cachedEntries.decrementAndGet();
+            cachedBytes.addAndGet(-entry.size);
+            evictions.increment();
+            if (entry.offHeapBody != null) {
+                offHeapSlab.free(entry.offHeapBody);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public int getEntries() {
+        return cachedEntries.get();
+    }
+
+    /**
+     * @return the size of the cached response bodies, in bytes
+     */
+    public long getSize() {
+        return cachedBytes.get();
+    }
+
+    private static ResponseEntity<byte[]> replayed(ResponseEntity<byte[]> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A request in flight, or its cached response.
+     */
+    private static final class Entry {
+        private final String key;
+        private final byte[] bodyDigest;
+        /**
+         * Null once cached.
+         */
+        private final CompletableFuture<ResponseEntity<byte[]>> sharedResponse;
+        private final HttpStatusCode status;
+        private final HttpHeaders headers;
+        /**
+         * Null if the body is stored off-heap.
+         */
+        private final byte[] body;
+        private final OffHeapSlab.Region offHeapBody;
+        private final int size;
+        private final long expirationNanos;
+
+        private Entry(String key, byte[] bodyDigest) {
+            this.key = key;
+            this.bodyDigest = bodyDigest;
+            this.sharedResponse = new CompletableFuture<>();
+            this.status = null;
+            this.headers = null;
+            this.body = null;
+            this.offHeapBody = null;
+            this.size = 0;
+            this.expirationNanos = 0;
+        }
+
+        private Entry(Entry pending, ResponseEntity<byte[]> response, byte[] body, OffHeapSlab.Region offHeapBody,
+                      int size, long expirationNanos) {
+            this.key = pending.key;
+            this.bodyDigest = pending.bodyDigest;
+            this.sharedResponse = null;
+            this.status = response.getStatusCode();
+            this.headers = HttpHeaders.readOnlyHttpHeaders(response.getHeaders());
+            this.body = body;
+            this.offHeapBody = offHeapBody;
+            this.size = size;
+            this.expirationNanos = expirationNanos;
+        }
+
+        private boolean isPending() {
+            return sharedResponse != null;
+        }
+
+        private ResponseEntity<byte[]> toResponse(byte[] cachedBody) {
+            return ResponseEntity.status(status)
+                    .headers(headers)
+                    .header(REPLAYED_HEADER, "true")
+                    .body(cachedBody);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local file with the Application API urls, one per line ({@code #} starts a comment), watched for changes.
+ * <p>
+ * When the file changes, the {@link InstanceRegistry} is {@link InstanceRegistry#update(List) updated} with the listed
+ * urls: new ones are added, missing ones are drained and removed. An empty or invalid file is ignored, and the current
+ * instances are kept.
+ */
+public class InstanceListFile implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceListFile.class);
+
+    /**
+     * Editors may write the file in several steps: the file is read once it has not changed for this delay.
+     */
+    private static final long SETTLE_DELAY_MS = 100;
+
+    private final Path file;
+
+    private final InstanceRegistry instanceRegistry;
+
+    private final WatchService watchService;
+
+    private final Thread watcherThread;
+
+    public InstanceListFile(Path file, InstanceRegistry instanceRegistry) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.instanceRegistry = instanceRegistry;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        // The directory is watched: the file may be replaced instead of modified
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcherThread = new Thread(this::run, "router-instances-watcher");
+        this.watcherThread.setDaemon(true);
+        this.watcherThread.start();
+        logger.info("Watching Application API instances file {}.", this.file);
+    }
+
+    /**
+     * @return the urls listed in the file
+     */
+    public static List<String> read(Path file) throws IOException {
+        List<String> applicationApiUrls = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            String applicationApiUrl = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!applicationApiUrl.isEmpty()) {
+                applicationApiUrls.add(applicationApiUrl);
+            }
+        }
+        return applicationApiUrls;
+    }
+
+    /**
+     * Read the file, and update the instances with it.
+     */
+    public void reload() {
+        try {
+            List<String> applicationApiUrls = read(file);
+            if (applicationApiUrls.isEmpty()) {
+                logger.warn("Application API instances file {} is empty: it is ignored.", file);
+                return;
+            }
+            instanceRegistry.update(applicationApiUrls);
+            logger.info("Application API instances reloaded from {}: {}", file, applicationApiUrls);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Application API instances file {} could not be loaded: it is ignored.", file, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!concernsFile(watchService.take())) {
+                    continue;
+                }
+                // Let the writes settle: absorb the events following the first one
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_DELAY_MS, TimeUnit.MILLISECONDS)) != null) {
+                    concernsFile(key);
+                }
+                reload();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            logger.debug("Stopped watching Application API instances file {}.", file);
+        }
+    }
+
+    /**
+     * @return true if the events of the key concern the file
+     */
+    private boolean concernsFile(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
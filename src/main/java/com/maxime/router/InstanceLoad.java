@@ -0,0 +1,81 @@
+package com.maxime.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load of an Application API instance: number of in-flight requests, and peak-EWMA of the response latency.
+ * <p>
+ * The peak-EWMA jumps to a latency higher than the current average, and decays towards lower latencies with
+ * an exponential moving average, weighted by the time elapsed since the previous update.
+ * A slow instance is thus penalised immediately, and recovers progressively.
+ * <p>
+ * Updates are lock-free and allocation-free: the average is stored as the bits of a double in an {@link AtomicLong}.
+ */
+public class InstanceLoad {
+
+    /**
+     * Time after which the weight of a latency observation is divided by e.
+     */
+    static final long DECAY_TIME_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Cost of an instance with requests in flight, but no latency observed yet.
+     */
+    private static final double PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final AtomicLong latencyEwmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    private volatile long lastUpdateNanos = System.nanoTime();
+
+    public void onRequestStart() {
+        inFlightRequests.incrementAndGet();
+    }
+
+    public void onRequestEnd(long latencyNanos) {
+        inFlightRequests.decrementAndGet();
+        observeLatency(latencyNanos);
+    }
+
+    void observeLatency(long latencyNanos) {
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(0, now - lastUpdateNanos);
+        lastUpdateNanos = now;
+        double weight = Math.exp(-(double) elapsedNanos / DECAY_TIME_NANOS);
+
+        long currentBits;
+        long updatedBits;
+        do {
+            currentBits = latencyEwmaBits.get();
+            double current = Double.longBitsToDouble(currentBits);
+            double updated = latencyNanos > current ? latencyNanos : current * weight + latencyNanos * (1 - weight);
+            updatedBits = Double.doubleToRawLongBits(updated);
+        } while (!latencyEwmaBits.compareAndSet(currentBits, updatedBits));
+    }
+
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return the peak-EWMA latency, in nanoseconds
+     */
+    public double getLatencyEwmaNanos() {
+        return Double.longBitsToDouble(latencyEwmaBits.get());
+    }
+
+    /**
+     * @return the expected latency of a new request: the latency average, weighted by the number of requests in flight
+     */
+    public double getCost() {
+        double latencyEwma = getLatencyEwmaNanos();
+        int inFlight = getInFlightRequests();
+        if (latencyEwma == 0 && inFlight > 0) {
+            return PENALTY_NANOS + inFlight;
+        }
+        return latencyEwma * (inFlight + 1);
+    }
+}
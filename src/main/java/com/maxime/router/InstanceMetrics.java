@@ -0,0 +1,113 @@
+package com.maxime.router;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of an Application API instance, since the router started.
+ * <p>
+ * Counters are {@link LongAdder}s: concurrent increments go to different cells instead of contending on a single
+ * value. Recording is lock-free and allocation-free, and the values are only summed up when they are read.
+ */
+public class InstanceMetrics implements CircuitBreaker.StateListener {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    /**
+     * Transitions to each {@link CircuitBreaker.State}, by ordinal.
+     */
+    private final LongAdder[] circuitBreakerTransitions = new LongAdder[CircuitBreaker.State.values().length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public InstanceMetrics() {
+        for (int i = 0; i < circuitBreakerTransitions.length; i++) {
+            circuitBreakerTransitions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * A request is sent to the instance.
+     */
+    public void onRequest() {
+        requests.increment();
+    }
+
+    public void onSuccess() {
+        successes.increment();
+    }
+
+    public void onFailure() {
+        failures.increment();
+    }
+
+    /**
+     * The instance did not answer within its slow call duration threshold.
+     */
+    public void onSlowCall() {
+        slowCalls.increment();
+    }
+
+    /**
+     * The instance was skipped because its circuit is open.
+     */
+    public void onRejection() {
+        rejections.increment();
+    }
+
+    /**
+     * The instance was skipped because it was at its concurrency limit.
+     */
+    public void onLimited() {
+        limited.increment();
+    }
+
+    /**
+     * A response was received from the instance, whatever its status.
+     */
+    public void onResponse(long latencyNanos) {
+        latency.recordNanos(latencyNanos);
+    }
+
+    @Override
+    public void onStateTransition(CircuitBreaker circuitBreaker, CircuitBreaker.State state) {
+        circuitBreakerTransitions[state.ordinal()].increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getSlowCalls() {
+        return slowCalls.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    /**
+     * @return the number of transitions of the circuit to the given state
+     */
+    public long getCircuitBreakerTransitions(CircuitBreaker.State state) {
+        return circuitBreakerTransitions[state.ordinal()].sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
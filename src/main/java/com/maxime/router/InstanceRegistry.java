@@ -0,0 +1,337 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The Application API instances of the router, which can be added, drained and removed at runtime.
+ * <p>
+ * Requests are routed with an immutable {@link Snapshot} of the active instances: their {@link LoadBalancer} and their
+ * {@link HealthyInstances} bitmap. Each change builds a new snapshot, published with a single volatile write: routing
+ * takes no lock, and all the attempts of a request see the same instances. Changes are rare, and serialized.
+ * <p>
+ * The instances kept by a change are the same objects in the new snapshot, so their Circuit Breaker, load and weight
+ * carry over. Only the position of the load balancer restarts.
+ * <p>
+ * A drained instance gets no new requests, but stays registered and can be activated again. A removed instance is
+ * drained, and forgotten once its in-flight requests are done, or after the {@code drainTimeout}.
+ */
+public class InstanceRegistry implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceRegistry.class);
+
+    private static final long DRAIN_CHECK_INTERVAL_MS = 100;
+
+    public enum InstanceState {
+        /**
+         * Routed to.
+         */
+        ACTIVE,
+        /**
+         * Not routed to anymore, until it is added again.
+         */
+        DRAINING,
+        /**
+         * Not routed to anymore, and forgotten once its in-flight requests are done.
+         */
+        REMOVING
+    }
+
+    private final Function<List<ApplicationApiInstance>, LoadBalancer> loadBalancerFactory;
+
+    private final Function<String, ApplicationApiInstance> instanceFactory;
+
+    private final TimerWheel timerWheel;
+
+    private final long drainTimeoutNanos;
+
+    /**
+     * Guarded by this, in registration order.
+     */
+    private final Map<String, RegisteredInstance> registeredInstances = new LinkedHashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param loadBalancer        routing of the initial instances
+     * @param loadBalancerFactory builds the routing of the active instances, after each change
+     * @param instanceFactory     builds the instance of an added Application API url
+     * @param drainTimeout        maximum time waiting for the in-flight requests of a removed instance
+     */
+    public InstanceRegistry(LoadBalancer loadBalancer, Function<List<ApplicationApiInstance>, LoadBalancer> loadBalancerFactory,
+                            Function<String, ApplicationApiInstance> instanceFactory, TimerWheel timerWheel,
+                            Duration drainTimeout) {
+        this.loadBalancerFactory = loadBalancerFactory;
+        this.instanceFactory = instanceFactory;
+        this.timerWheel = timerWheel;
+        this.drainTimeoutNanos = drainTimeout.toNanos();
+        for (ApplicationApiInstance applicationApiInstance : loadBalancer.getInstances()) {
+            registeredInstances.put(applicationApiInstance.getApplicationApiUrl(), new RegisteredInstance(applicationApiInstance));
+        }
+        this.snapshot = new Snapshot(loadBalancer);
+    }
+
+    /**
+     * Registry of the instances of the given load balancer. The instances added later use the default configuration,
+     * and are routed with round robin.
+     */
+    public static InstanceRegistry of(LoadBalancer loadBalancer, TimerWheel timerWheel) {
+        return new InstanceRegistry(loadBalancer, RoundRobinRouting::ofInstances, ApplicationApiInstance::new, timerWheel,
+                Duration.ofSeconds(30));
+    }
+
+    /**
+     * @return the instances to route the next request to
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return all the registered instances, draining ones included
+     */
+    public synchronized List<ApplicationApiInstance> getApplicationApiInstances() {
+        List<ApplicationApiInstance> applicationApiInstances = new ArrayList<>(registeredInstances.size());
+        for (RegisteredInstance registeredInstance : registeredInstances.values()) {
+            applicationApiInstances.add(registeredInstance.applicationApiInstance);
+        }
+        return applicationApiInstances;
+    }
+
+    public synchronized List<InstanceStatus> getStatuses() {
+        List<InstanceStatus> statuses = new ArrayList<>(registeredInstances.size());
+        for (RegisteredInstance registeredInstance : registeredInstances.values()) {
+            statuses.add(registeredInstance.status());
+        }
+        return statuses;
+    }
+
+    /**
+     * Route requests to the instance, which is registered if needed. A draining or removed instance is activated again.
+     *
+     * @throws IllegalArgumentException if the url is not an absolute http(s) url
+     */
+    public synchronized InstanceStatus add(String applicationApiUrl) {
+        RegisteredInstance registeredInstance = activate(applicationApiUrl);
+        publish();
+        return registeredInstance.status();
+    }
+
+    /**
+     * Stop routing new requests to the instance, which stays registered.
+     *
+     * @return null if the instance is not registered
+     */
+    public synchronized InstanceStatus drain(String applicationApiUrl) {
+        RegisteredInstance registeredInstance = registeredInstances.get(applicationApiUrl);
+        if (registeredInstance == null) {
+            return null;
+        }
+        if (registeredInstance.state == InstanceState.ACTIVE) {
+            registeredInstance.state = InstanceState.DRAINING;
+            logger.info("Draining Application API instance {}.", applicationApiUrl);
+            publish();
+        }
+        return registeredInstance.status();
+    }
+
+    /**
+     * Stop routing new requests to the instance, and forget it once its in-flight requests are done.
+     *
+     * @return null if the instance is not registered
+     */
+    public synchronized InstanceStatus remove(String applicationApiUrl) {
+        RegisteredInstance registeredInstance = registeredInstances.get(applicationApiUrl);
+        if (registeredInstance == null) {
+            return null;
+        }
+        startRemoval(registeredInstance);
+        publish();
+        return registeredInstance.status();
+    }
+
+    /**
+     * Replace the registered instances by the given urls: new ones are added, missing ones are removed, and the other
+     * ones keep their state.
+     *
+     * @throws IllegalArgumentException if an url is not an absolute http(s) url
+     */
+    public synchronized void update(List<String> applicationApiUrls) {
+        for (String applicationApiUrl : applicationApiUrls) {
+            validateUrl(applicationApiUrl);
+        }
+        Set<String> listedUrls = new HashSet<>(applicationApiUrls);
+        for (RegisteredInstance registeredInstance : registeredInstances.values()) {
+            if (!listedUrls.contains(registeredInstance.applicationApiInstance.getApplicationApiUrl())) {
+                startRemoval(registeredInstance);
+            }
+        }
+        for (String applicationApiUrl : applicationApiUrls) {
+            RegisteredInstance registeredInstance = registeredInstances.get(applicationApiUrl);
+            if (registeredInstance == null || registeredInstance.state == InstanceState.REMOVING) {
+                activate(applicationApiUrl);
+            }
+        }
+        publish();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (RegisteredInstance registeredInstance : registeredInstances.values()) {
+            registeredInstance.cancelDrainCheck();
+        }
+        snapshot.healthyInstances.close();
+    }
+
+    private RegisteredInstance activate(String applicationApiUrl) {
+        RegisteredInstance registeredInstance = registeredInstances.get(applicationApiUrl);
+        if (registeredInstance == null) {
+            validateUrl(applicationApiUrl);
+            registeredInstance = new RegisteredInstance(instanceFactory.apply(applicationApiUrl));
+            registeredInstances.put(applicationApiUrl, registeredInstance);
+            logger.info("Adding Application API instance {}.", applicationApiUrl);
+        } else if (registeredInstance.state != InstanceState.ACTIVE) {
+            registeredInstance.cancelDrainCheck();
+            registeredInstance.state = InstanceState.ACTIVE;
+            logger.info("Activating Application API instance {} again.", applicationApiUrl);
+        }
+        return registeredInstance;
+    }
+
+    private void startRemoval(RegisteredInstance registeredInstance) {
+        if (registeredInstance.state == InstanceState.REMOVING) {
+            return;
+        }
+        registeredInstance.state = InstanceState.REMOVING;
+        registeredInstance.drainDeadlineNanos = System.nanoTime() + drainTimeoutNanos;
+        logger.info("Removing Application API instance {}, once its in-flight requests are done.",
+                registeredInstance.applicationApiInstance.getApplicationApiUrl());
+        scheduleDrainCheck(registeredInstance);
+    }
+
+    private void scheduleDrainCheck(RegisteredInstance registeredInstance) {
+        // The check takes the registry lock, which a change holds while it builds the new load balancer
+        registeredInstance.drainCheck = timerWheel.scheduleOffWheel(() -> checkDrained(registeredInstance),
+                DRAIN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void checkDrained(RegisteredInstance registeredInstance) {
+        String applicationApiUrl = registeredInstance.applicationApiInstance.getApplicationApiUrl();
+        if (registeredInstance.state != InstanceState.REMOVING || registeredInstances.get(applicationApiUrl) != registeredInstance) {
+            return;
+        }
+        int inFlightRequests = registeredInstance.applicationApiInstance.getLoad().getInFlightRequests();
+        boolean timedOut = System.nanoTime() - registeredInstance.drainDeadlineNanos >= 0;
+        if (inFlightRequests > 0 && !timedOut) {
+            scheduleDrainCheck(registeredInstance);
+            return;
+        }
+        registeredInstances.remove(applicationApiUrl);
+        if (inFlightRequests > 0) {
+            logger.warn("Application API instance {} removed with {} requests still in flight.", applicationApiUrl, inFlightRequests);
+        } else {
+            logger.info("Application API instance {} drained and removed.", applicationApiUrl);
+        }
+    }
+
+    /**
+     * Publish a new snapshot with the active instances. Caller must hold the lock.
+     */
+    private void publish() {
+        List<ApplicationApiInstance> activeInstances = new ArrayList<>(registeredInstances.size());
+        for (RegisteredInstance registeredInstance : registeredInstances.values()) {
+            if (registeredInstance.state == InstanceState.ACTIVE) {
+                activeInstances.add(registeredInstance.applicationApiInstance);
+            }
+        }
+        if (activeInstances.isEmpty()) {
+            logger.warn("No active Application API instance left: all requests will be rejected.");
+        }
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(activeInstances.isEmpty() ? null : loadBalancerFactory.apply(activeInstances));
+        // Requests already routed with the previous snapshot still check its bitmap: the Circuit Breaker has the last word
+        previous.healthyInstances.close();
+    }
+
+    private static void validateUrl(String applicationApiUrl) {
+        try {
+            URI uri = URI.create(applicationApiUrl);
+            if (("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) && uri.getHost() != null) {
+                return;
+            }
+        } catch (IllegalArgumentException | NullPointerException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid Application API url: " + applicationApiUrl);
+    }
+
+    /**
+     * Immutable routing state: the active instances, with their load balancer and healthy instances bitmap.
+     */
+    public static final class Snapshot {
+        /**
+         * Null if there is no active instance.
+         */
+        private final LoadBalancer loadBalancer;
+
+        private final HealthyInstances healthyInstances;
+
+        private Snapshot(LoadBalancer loadBalancer) {
+            this.loadBalancer = loadBalancer;
+            this.healthyInstances = new HealthyInstances(loadBalancer == null ? List.of() : loadBalancer.getInstances());
+        }
+
+        /**
+         * @return null if there is no active instance
+         */
+        public LoadBalancer getLoadBalancer() {
+            return loadBalancer;
+        }
+
+        public HealthyInstances getHealthyInstances() {
+            return healthyInstances;
+        }
+
+        public int getInstancesCount() {
+            return loadBalancer == null ? 0 : loadBalancer.getInstancesCount();
+        }
+    }
+
+    /**
+     * Guarded by the registry lock.
+     */
+    private static final class RegisteredInstance {
+        private final ApplicationApiInstance applicationApiInstance;
+        private InstanceState state = InstanceState.ACTIVE;
+        private long drainDeadlineNanos;
+        private TimerWheel.Timeout drainCheck;
+
+        private RegisteredInstance(ApplicationApiInstance applicationApiInstance) {
+            this.applicationApiInstance = applicationApiInstance;
+        }
+
+        private void cancelDrainCheck() {
+            if (drainCheck != null) {
+                drainCheck.cancel();
+                drainCheck = null;
+            }
+        }
+
+        private InstanceStatus status() {
+            return new InstanceStatus(applicationApiInstance.getApplicationApiUrl(), state,
+                    applicationApiInstance.getCircuitBreakerState(), applicationApiInstance.getLoad().getInFlightRequests(),
+                    applicationApiInstance.getConcurrencyLimiter().getLimit());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.maxime.router;
+
+/**
+ * Snapshot of the state of a registered Application API instance.
+ */
+public class InstanceStatus {
+
+    private final String url;
+    private final InstanceRegistry.InstanceState state;
+    private final CircuitBreaker.State circuitBreakerState;
+    private final int inFlightRequests;
+    private final int concurrencyLimit;
+
+    public InstanceStatus(String url, InstanceRegistry.InstanceState state, CircuitBreaker.State circuitBreakerState,
+                          int inFlightRequests, int concurrencyLimit) {
+        this.url = url;
+        this.state = state;
+        this.circuitBreakerState = circuitBreakerState;
+        this.inFlightRequests = inFlightRequests;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return if the instance is routed to, draining, or being removed
+     */
+    public InstanceRegistry.InstanceState getState() {
+        return state;
+    }
+
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreakerState;
+    }
+
+    /**
+     * @return number of requests sent to the instance and not answered yet
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    /**
+     * @return the current adaptive concurrency limit of the instance, 0 if it is not limited
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+}
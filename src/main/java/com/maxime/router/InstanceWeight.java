@@ -0,0 +1,60 @@
+package com.maxime.router;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Weight of an Application API instance, for the weighted round robin.
+ * <p>
+ * The configured weight is the maximum: the effective weight is halved on each failure, lowered by a tenth of the
+ * maximum on each slow call, and raised back by a tenth of the maximum on each fast success.
+ * The effective weight never goes below 1, so that a degraded instance still gets some traffic to recover with.
+ * <p>
+ * Weights are multiplied by {@link #SCALE}, so that instances with a configured weight of 1 can be degraded too.
+ */
+public class InstanceWeight {
+
+    static final int SCALE = 10;
+
+    static final int MAX_WEIGHT = 100;
+
+    private final int maxEffectiveWeight;
+
+    private final int step;
+
+    private final AtomicInteger effectiveWeight;
+
+    public InstanceWeight(int weight) {
+        if (weight < 1 || weight > MAX_WEIGHT) {
+            throw new IllegalArgumentException("The weight of an Application API instance must be between 1 and " + MAX_WEIGHT + ": " + weight);
+        }
+        this.maxEffectiveWeight = weight * SCALE;
+        this.step = weight;
+        this.effectiveWeight = new AtomicInteger(maxEffectiveWeight);
+    }
+
+    public void onFailure() {
+        effectiveWeight.updateAndGet(current -> Math.max(1, current / 2));
+    }
+
+    public void onSuccess(boolean slow) {
+        if (slow) {
+            effectiveWeight.updateAndGet(current -> Math.max(1, current - step));
+        } else if (effectiveWeight.get() < maxEffectiveWeight) {
+            effectiveWeight.updateAndGet(current -> Math.min(maxEffectiveWeight, current + step));
+        }
+    }
+
+    /**
+     * @return the configured weight
+     */
+    public int getWeight() {
+        return maxEffectiveWeight / SCALE;
+    }
+
+    /**
+     * @return the current weight, between 1 and {@code weight * SCALE}
+     */
+    public int getEffectiveWeight() {
+        return effectiveWeight.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Admin endpoints to add, drain and remove Application API instances at runtime.
+ * The changes are not persisted: they are lost on restart, or replaced on the next reload of the instances file.
+ */
+@RestController
+@RequestMapping("/api/router/instances")
+public class InstancesController {
+
+    private final InstanceRegistry instanceRegistry;
+
+    public InstancesController(InstanceRegistry instanceRegistry) {
+        this.instanceRegistry = instanceRegistry;
+    }
+
+    @GetMapping
+    public List<InstanceStatus> getInstances() {
+        return instanceRegistry.getStatuses();
+    }
+
+    /**
+     * Route requests to the instance: a new one is registered, a draining one is activated again.
+     */
+    @PostMapping
+    public InstanceStatus addInstance(@RequestParam String url) {
+        try {
+            return instanceRegistry.add(url);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stop routing new requests to the instance, which stays registered.
+     */
+    @PostMapping("/drain")
+    public InstanceStatus drainInstance(@RequestParam String url) {
+        return found(instanceRegistry.drain(url), url);
+    }
+
+    /**
+     * Stop routing new requests to the instance, and forget it once its in-flight requests are done.
+     */
+    @DeleteMapping
+    public ResponseEntity<InstanceStatus> removeInstance(@RequestParam String url) {
+        return ResponseEntity.accepted().body(found(instanceRegistry.remove(url), url));
+    }
+
+    private static InstanceStatus found(InstanceStatus instanceStatus, String url) {
+        if (instanceStatus == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown Application API instance: " + url);
+        }
+        return instanceStatus;
+    }
+}
@@ -0,0 +1,127 @@
+package com.maxime.router;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a JSON Lines stream one at a time, through a fixed buffer: the stream is never buffered whole.
+ * <p>
+ * Records are split on new lines and returned as raw bytes, like the bodies of the router requests: they are not parsed.
+ * Blank lines are skipped, and a trailing {@code \r} is removed.
+ */
+final class JsonLinesReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream inputStream;
+
+    private final int maxRecordSize;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * Bytes of the current record, grown up to {@code maxRecordSize}.
+     */
+    private byte[] record = new byte[256];
+
+    private int recordLength;
+
+    /**
+     * @param maxRecordSize maximum size of a record, in bytes
+     */
+    JsonLinesReader(InputStream inputStream, int maxRecordSize) {
+        this.inputStream = inputStream;
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * @return the next record, or null at the end of the stream
+     * @throws RecordTooLargeException if the record is larger than {@code maxRecordSize}. It is skipped: the next call
+     *                                 returns the following record.
+     */
+    byte[] next() throws IOException {
+        recordLength = 0;
+        boolean tooLarge = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (tooLarge) {
+                    throw new RecordTooLargeException(maxRecordSize);
+                }
+                return recordLength == 0 || isBlank() ? null : takeRecord();
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            if (!tooLarge) {
+                tooLarge = !append(start, position - start);
+            }
+            if (position < limit) {
+                // End of line
+                position++;
+                if (tooLarge) {
+                    throw new RecordTooLargeException(maxRecordSize);
+                }
+                if (!isBlank()) {
+                    return takeRecord();
+                }
+                recordLength = 0;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = inputStream.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * @return false if the record would be larger than {@code maxRecordSize}
+     */
+    private boolean append(int offset, int length) {
+        if (recordLength + length > maxRecordSize + 1) {
+            // One more byte is allowed for the trailing \r
+            return false;
+        }
+        if (recordLength + length > record.length) {
+            record = Arrays.copyOf(record, Math.min(maxRecordSize + 1, Math.max(record.length * 2, recordLength + length)));
+        }
+        System.arraycopy(buffer, offset, record, recordLength, length);
+        recordLength += length;
+        return true;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < recordLength; i++) {
+            byte b = record[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] takeRecord() throws RecordTooLargeException {
+        int length = recordLength > 0 && record[recordLength - 1] == '\r' ? recordLength - 1 : recordLength;
+        if (length > maxRecordSize) {
+            throw new RecordTooLargeException(maxRecordSize);
+        }
+        return Arrays.copyOf(record, length);
+    }
+
+    static final class RecordTooLargeException extends IOException {
+        RecordTooLargeException(int maxRecordSize) {
+            super("Record larger than " + maxRecordSize + " bytes");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.maxime.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram, with log-linear buckets (in the style of HdrHistogram).
+ * <p>
+ * Latencies are recorded in microseconds. Below 32µs, each value has its own bucket; above, each power of 2 is split in
+ * 16 buckets, so that any recorded value is known within 1/16 (6.25%). 608 buckets cover latencies up to 12 days.
+ * <p>
+ * Recording is a single atomic increment, without allocation. Computing a percentile scans the buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 5;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder totalMicros = new LongAdder();
+
+    public void recordNanos(long latencyNanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    public void recordMicros(long latencyMicros) {
+        long value = Math.max(0, latencyMicros);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalMicros.add(value);
+    }
+
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return the sum of the recorded latencies, in microseconds
+     */
+    public long getTotalMicros() {
+        return totalMicros.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest latency of the lowest {@code percentile}% of the recorded latencies, in microseconds,
+     * or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= rank) {
+                return bucketHighestValue(i);
+            }
+        }
+        // Counted in totalCount, but not yet in its bucket
+        return bucketHighestValue(BUCKETS - 1);
+    }
+
+    static int bucketIndex(long valueMicros) {
+        if (valueMicros < LINEAR_BUCKETS) {
+            return (int) valueMicros;
+        }
+        int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(valueMicros));
+        if (exponent == MAX_EXPONENT && valueMicros >= (1L << (MAX_EXPONENT + 1))) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (valueMicros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketHighestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = MIN_EXPONENT + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+    }
+}
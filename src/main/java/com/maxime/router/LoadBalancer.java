@@ -0,0 +1,30 @@
+package com.maxime.router;
+
+import java.util.List;
+
+/**
+ * Strategy choosing the Application API instance a request is sent to.
+ * <p>
+ * Implementations are called concurrently by every request: selection must be thread-safe, and should be lock-free.
+ */
+public interface LoadBalancer {
+
+    /**
+     * @return the index of the instance the next request should be sent to.
+     * The caller still has to acquire its circuit permission.
+     */
+    int getNextInstanceIndex();
+
+    /**
+     * @return the instance the next request should be sent to. The caller still has to acquire its circuit permission.
+     */
+    default ApplicationApiInstance getNextInstance() {
+        return getInstance(getNextInstanceIndex());
+    }
+
+    ApplicationApiInstance getInstance(int index);
+
+    List<ApplicationApiInstance> getInstances();
+
+    int getInstancesCount();
+}
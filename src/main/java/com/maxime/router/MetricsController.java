@@ -0,0 +1,26 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Prometheus scrape endpoint.
+ */
+@RestController
+public class MetricsController {
+
+    private final PrometheusMetrics prometheusMetrics;
+
+    public MetricsController(RoutingTable routingTable) {
+        this.prometheusMetrics = new PrometheusMetrics(routingTable);
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<String> scrape() {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, PrometheusMetrics.CONTENT_TYPE)
+                .body(prometheusMetrics.scrape());
+    }
+}
@@ -0,0 +1,139 @@
+package com.maxime.router;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Store of byte arrays outside the Java heap: a single direct buffer, allocated once, split into fixed-size blocks.
+ * <p>
+ * A value takes as many blocks as it needs, not necessarily contiguous. Freed blocks go back to a stack of free blocks
+ * and are reused right away: nothing waits for the garbage collector, and the memory used outside the heap never grows
+ * past the capacity.
+ * <p>
+ * Allocating and freeing blocks take a lock, for a few array copies. Reads are optimistic: the value is copied without
+ * the lock, and only copied again under it if blocks were allocated or freed meanwhile.
+ */
+final class OffHeapSlab {
+
+    static final int BLOCK_SIZE = 256;
+
+    private final ByteBuffer slab;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Indexes of the free blocks, from 0 to {@code freeBlocksCount}. Guarded by the write lock.
+     */
+    private final int[] freeBlocks;
+
+    private int freeBlocksCount;
+
+    /**
+     * @param capacity rounded down to a number of blocks
+     */
+    OffHeapSlab(long capacity) {
+        long blocks = capacity / BLOCK_SIZE;
+        if (blocks * BLOCK_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The off-heap store is limited to " + Integer.MAX_VALUE + " bytes.");
+        }
+        this.slab = ByteBuffer.allocateDirect((int) blocks * BLOCK_SIZE);
+        this.freeBlocks = new int[(int) blocks];
+        // The first blocks are allocated first
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = freeBlocks.length - 1 - i;
+        }
+        this.freeBlocksCount = freeBlocks.length;
+    }
+
+    long getCapacity() {
+        return slab.capacity();
+    }
+
+    /**
+     * @return the blocks holding a copy of the value, or null if there are not enough free blocks
+     */
+    Region store(byte[] value) {
+        int blocksCount = (value.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blocks = new int[blocksCount];
+        long stamp = lock.writeLock();
+        try {
+            if (freeBlocksCount < blocksCount) {
+                return null;
+            }
+            freeBlocksCount -= blocksCount;
+            System.arraycopy(freeBlocks, freeBlocksCount, blocks, 0, blocksCount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        // The blocks are only visible to the caller until it publishes the region
+        for (int i = 0; i < blocksCount; i++) {
+            int offset = i * BLOCK_SIZE;
+            slab.put(blocks[i] * BLOCK_SIZE, value, offset, Math.min(BLOCK_SIZE, value.length - offset));
+        }
+        return new Region(blocks, value.length);
+    }
+
+    /**
+     * @return a copy of the value on the heap, or null if the region was freed
+     */
+    byte[] load(Region region) {
+        byte[] value = new byte[region.size];
+        long stamp = lock.tryOptimisticRead();
+        if (region.freed) {
+            return null;
+        }
+        copy(region, value);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+        // The blocks may have been freed and reused during the copy
+        stamp = lock.readLock();
+        try {
+            if (region.freed) {
+                return null;
+            }
+            copy(region, value);
+            return value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Give the blocks of the region back. Freeing a region twice has no effect.
+     */
+    void free(Region region) {
+        long stamp = lock.writeLock();
+        try {
+            if (region.freed) {
+                return;
+            }
+            region.freed = true;
+            System.arraycopy(region.blocks, 0, freeBlocks, freeBlocksCount, region.blocks.length);
+            freeBlocksCount += region.blocks.length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void copy(Region region, byte[] value) {
+        for (int i = 0; i < region.blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            slab.get(region.blocks[i] * BLOCK_SIZE, value, offset, Math.min(BLOCK_SIZE, value.length - offset));
+        }
+    }
+
+    /**
+     * The blocks of a stored value.
+     */
+    static final class Region {
+        private final int[] blocks;
+        private final int size;
+        private volatile boolean freed;
+
+        private Region(int[] blocks, int size) {
+            this.blocks = blocks;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.maxime.router;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Counter alone on its cache line: the padding keeps other hot fields from false sharing with it.
+ * <p>
+ * The value is a field of the padded object itself (not an {@code AtomicLong}, which would be allocated elsewhere),
+ * and the padding fields are declared in super and sub classes, because the JVM may reorder the fields of a class.
+ */
+final class PaddedCounter extends PaddedCounterValue {
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    /**
+     * @return the value before the increment. It is a single fetch-and-add, without compare-and-set retries.
+     */
+    long getAndIncrement() {
+        return (long) VALUE.getAndAdd(this, 1L);
+    }
+}
+
+abstract class PaddedCounterValue extends PaddedCounterLeftPadding {
+    static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedCounterValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private volatile long value;
+}
+
+abstract class PaddedCounterLeftPadding {
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+}
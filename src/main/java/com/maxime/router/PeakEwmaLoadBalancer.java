@@ -0,0 +1,75 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency-aware load balancer: "power of two choices" on the peak-EWMA cost of the instances.
+ * <p>
+ * Two distinct instances are picked at random, and the request goes to the one with the lowest
+ * {@link InstanceLoad#getCost() cost} (latency average weighted by in-flight requests), preferring instances whose
+ * circuit permits calls. Comparing only two random instances avoids sending all requests to the same "best" instance,
+ * while steering traffic away from slow ones.
+ * <p>
+ * Selection is lock-free and allocation-free.
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeakEwmaLoadBalancer.class);
+
+    private final ApplicationApiInstance[] applicationApiInstances;
+
+    public PeakEwmaLoadBalancer(List<ApplicationApiInstance> applicationApiInstances) {
+        if (applicationApiInstances == null || applicationApiInstances.isEmpty()) {
+            throw new IllegalArgumentException("Cannot start a router with a null or empty Application API instances list.");
+        }
+        this.applicationApiInstances = applicationApiInstances.toArray(new ApplicationApiInstance[0]);
+        logger.info("Starting Peak EWMA Router with following Urls: {}", ApplicationApiInstance.urls(applicationApiInstances));
+    }
+
+    @Override
+    public int getNextInstanceIndex() {
+        int instancesCount = applicationApiInstances.length;
+        if (instancesCount == 1) {
+            return 0;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(instancesCount);
+        int second = random.nextInt(instancesCount - 1);
+        if (second >= first) {
+            second++;
+        }
+        return choose(first, second);
+    }
+
+    private int choose(int firstIndex, int secondIndex) {
+        ApplicationApiInstance first = applicationApiInstances[firstIndex];
+        ApplicationApiInstance second = applicationApiInstances[secondIndex];
+        boolean firstPermitted = first.isCallPermitted();
+        if (firstPermitted != second.isCallPermitted()) {
+            return firstPermitted ? firstIndex : secondIndex;
+        }
+        return first.getLoad().getCost() <= second.getLoad().getCost() ? firstIndex : secondIndex;
+    }
+
+    @Override
+    public ApplicationApiInstance getInstance(int index) {
+        return applicationApiInstances[index];
+    }
+
+    @Override
+    public List<ApplicationApiInstance> getInstances() {
+        return Collections.unmodifiableList(Arrays.asList(applicationApiInstances));
+    }
+
+    @Override
+    public int getInstancesCount() {
+        return applicationApiInstances.length;
+    }
+}
@@ -0,0 +1,204 @@
+package com.maxime.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Renders the router and instance metrics in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * The metrics are only read when scraped: recording them costs nothing more than the counter increments.
+ * Latencies are exposed as summaries (p50, p99, p999 since the router started), computed from the
+ * {@link LatencyHistogram} of each instance.
+ * <p>
+ * The router metrics are the ones of the {@code default} pool; the other pools have their requests counted by pool.
+ * The instance metrics of all the pools are labelled with their pool and instance url, the {@code upstream} label: the
+ * {@code instance} label is the one Prometheus gives to the scraped router.
+ */
+public class PrometheusMetrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final RoutingTable routingTable;
+
+    /**
+     * Dispatcher of the {@code default} pool.
+     */
+    private final RequestDispatcher requestDispatcher;
+
+    public PrometheusMetrics(RequestDispatcher requestDispatcher) {
+        this(new RoutingTable(requestDispatcher));
+    }
+
+    public PrometheusMetrics(RoutingTable routingTable) {
+        this.routingTable = routingTable;
+        this.requestDispatcher = routingTable.getDefaultDispatcher();
+    }
+
+    public String scrape() {
+        StringBuilder output = new StringBuilder(4096);
+        RouterMetrics routerMetrics = requestDispatcher.getMetrics();
+        counter(output, "router_requests_total", "Requests received by the router.", routerMetrics.getRequests());
+        counter(output, "router_unavailable_total", "Requests rejected because no instance could be tried.",
+                routerMetrics.getUnavailable());
+        counter(output, "router_expired_deadlines_total", "Requests rejected because their deadline had already expired.",
+                routerMetrics.getExpiredDeadlines());
+        counter(output, "router_failovers_total", "Requests sent to another instance because they could not be sent.",
+                routerMetrics.getFailovers());
+        counter(output, "router_hedged_requests_total", "Hedged requests sent to another instance.",
+                routerMetrics.getHedgedRequests());
+        header(output, "router_shed_requests_total", "Requests rejected because of the concurrency limits.", "counter");
+        output.append("router_shed_requests_total{reason=\"max_in_flight_requests\"} ").append(routerMetrics.getShedRequests()).append('\n');
+        output.append("router_shed_requests_total{reason=\"instance_limits\"} ").append(routerMetrics.getLimitedRequests()).append('\n');
+        header(output, "router_in_flight_requests", "Requests received by the router and not answered yet.", "gauge");
+        output.append("router_in_flight_requests ").append(requestDispatcher.getInFlightRequests()).append('\n');
+        header(output, "router_max_in_flight_requests", "Maximum number of requests handled at the same time (0: unlimited).", "gauge");
+        output.append("router_max_in_flight_requests ").append(requestDispatcher.getMaxInFlightRequests()).append('\n');
+        header(output, "router_retry_budget_available", "Retries currently available in the retry budget.", "gauge");
+        output.append("router_retry_budget_available ").append(requestDispatcher.getRetryBudget().getAvailableRetries()).append('\n');
+
+        IdempotencyCache idempotencyCache = requestDispatcher.getIdempotencyCache();
+        header(output, "router_idempotency_cache_requests_total", "Requests with an idempotency key, by cache result.", "counter");
+        output.append("router_idempotency_cache_requests_total{result=\"hit\"} ").append(idempotencyCache.getHits()).append('\n');
+        output.append("router_idempotency_cache_requests_total{result=\"miss\"} ").append(idempotencyCache.getMisses()).append('\n');
+        output.append("router_idempotency_cache_requests_total{result=\"coalesced\"} ").append(idempotencyCache.getCoalesced()).append('\n');
+        output.append("router_idempotency_cache_requests_total{result=\"conflict\"} ").append(idempotencyCache.getConflicts()).append('\n');
+        counter(output, "router_idempotency_cache_evictions_total", "Responses evicted from the idempotency cache.",
+                idempotencyCache.getEvictions());
+        header(output, "router_idempotency_cache_entries", "Responses in the idempotency cache.", "gauge");
+        output.append("router_idempotency_cache_entries ").append(idempotencyCache.getEntries()).append('\n');
+        header(output, "router_idempotency_cache_bytes", "Size of the response bodies in the idempotency cache.", "gauge");
+        output.append("router_idempotency_cache_bytes ").append(idempotencyCache.getSize()).append('\n');
+
+        header(output, "router_pool_requests_total", "Requests received by each pool.", "counter");
+        for (Map.Entry<String, RequestDispatcher> pool : routingTable.getPools().entrySet()) {
+            output.append("router_pool_requests_total{pool=\"");
+            escape(output, pool.getKey());
+            output.append("\"} ").append(pool.getValue().getMetrics().getRequests()).append('\n');
+        }
+        header(output, "router_pool_in_flight_requests", "Requests received by each pool and not answered yet.", "gauge");
+        for (Map.Entry<String, RequestDispatcher> pool : routingTable.getPools().entrySet()) {
+            output.append("router_pool_in_flight_requests{pool=\"");
+            escape(output, pool.getKey());
+            output.append("\"} ").append(pool.getValue().getInFlightRequests()).append('\n');
+        }
+
+        // Instances of all the pools: an instance can be in several pools, with different metrics in each one
+        List<Map.Entry<String, ApplicationApiInstance>> applicationApiInstances = new ArrayList<>();
+        for (Map.Entry<String, RequestDispatcher> pool : routingTable.getPools().entrySet()) {
+            for (ApplicationApiInstance applicationApiInstance : pool.getValue().getInstanceRegistry().getApplicationApiInstances()) {
+                applicationApiInstances.add(Map.entry(pool.getKey(), applicationApiInstance));
+            }
+        }
+        instanceCounter(output, applicationApiInstances, "router_instance_requests_total",
+                "Requests sent to the instance.", InstanceMetrics::getRequests);
+        instanceCounter(output, applicationApiInstances, "router_instance_successes_total",
+                "Calls reported as successful to the Circuit Breaker.", InstanceMetrics::getSuccesses);
+        instanceCounter(output, applicationApiInstances, "router_instance_failures_total",
+                "Calls reported as failed to the Circuit Breaker.", InstanceMetrics::getFailures);
+        instanceCounter(output, applicationApiInstances, "router_instance_slow_calls_total",
+                "Calls which exceeded the slow call duration threshold.", InstanceMetrics::getSlowCalls);
+        instanceCounter(output, applicationApiInstances, "router_instance_rejections_total",
+                "Times the instance was skipped because its circuit was open.", InstanceMetrics::getRejections);
+        instanceCounter(output, applicationApiInstances, "router_instance_limited_total",
+                "Times the instance was skipped because it was at its concurrency limit.", InstanceMetrics::getLimited);
+
+        header(output, "router_instance_circuit_breaker_transitions_total", "Transitions of the circuit to each state.", "counter");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                sample(output, "router_instance_circuit_breaker_transitions_total", instance, "state", state.name(),
+                        instance.getValue().getMetrics().getCircuitBreakerTransitions(state));
+            }
+        }
+        header(output, "router_instance_circuit_breaker_state", "Current state of the circuit (1 for the current state).", "gauge");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            CircuitBreaker.State currentState = instance.getValue().getCircuitBreakerState();
+            for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                sample(output, "router_instance_circuit_breaker_state", instance, "state", state.name(),
+                        state == currentState ? 1 : 0);
+            }
+        }
+        header(output, "router_instance_in_flight_requests", "Requests sent to the instance and not answered yet.", "gauge");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            sample(output, "router_instance_in_flight_requests", instance, null, null,
+                    instance.getValue().getLoad().getInFlightRequests());
+        }
+
+        header(output, "router_instance_concurrency_limit", "Adaptive concurrency limit of the instance (0: unlimited).", "gauge");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            sample(output, "router_instance_concurrency_limit", instance, null, null,
+                    instance.getValue().getConcurrencyLimiter().getLimit());
+        }
+
+        header(output, "router_instance_latency_seconds", "Response latency of the instance.", "summary");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            LatencyHistogram latency = instance.getValue().getMetrics().getLatency();
+            for (double quantile : QUANTILES) {
+                labels(output, "router_instance_latency_seconds", instance);
+                output.append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(latency.getValueAtPercentile(quantile * 100) / 1e6).append('\n');
+            }
+            labels(output, "router_instance_latency_seconds_sum", instance);
+            output.append("} ").append(latency.getTotalMicros() / 1e6).append('\n');
+            sample(output, "router_instance_latency_seconds_count", instance, null, null, latency.getTotalCount());
+        }
+        return output.toString();
+    }
+
+    private static void counter(StringBuilder output, String name, String help, long value) {
+        header(output, name, help, "counter");
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void instanceCounter(StringBuilder output, List<Map.Entry<String, ApplicationApiInstance>> applicationApiInstances,
+                                        String name, String help, ToLongFunction<InstanceMetrics> value) {
+        header(output, name, help, "counter");
+        for (Map.Entry<String, ApplicationApiInstance> instance : applicationApiInstances) {
+            sample(output, name, instance, null, null, value.applyAsLong(instance.getValue().getMetrics()));
+        }
+    }
+
+    private static void header(StringBuilder output, String name, String help, String type) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * @param instance the pool name and the instance
+     */
+    private static void sample(StringBuilder output, String name, Map.Entry<String, ApplicationApiInstance> instance,
+                               String label, String labelValue, long value) {
+        labels(output, name, instance);
+        if (label != null) {
+            output.append(',').append(label).append("=\"").append(labelValue).append('"');
+        }
+        output.append("} ").append(value).append('\n');
+    }
+
+    /**
+     * Append the name and the pool and upstream labels of a sample, leaving the label set open.
+     */
+    private static void labels(StringBuilder output, String name, Map.Entry<String, ApplicationApiInstance> instance) {
+        output.append(name).append("{pool=\"");
+        escape(output, instance.getKey());
+        output.append("\",upstream=\"");
+        escape(output, instance.getValue().getApplicationApiUrl());
+        output.append('"');
+    }
+
+    private static void escape(StringBuilder output, String labelValue) {
+        for (int i = 0; i < labelValue.length(); i++) {
+            char c = labelValue.charAt(i);
+            if (c == '\\' || c == '"') {
+                output.append('\\').append(c);
+            } else if (c == '\n') {
+                output.append("\\n");
+            } else {
+                output.append(c);
+            }
+        }
+    }
+}
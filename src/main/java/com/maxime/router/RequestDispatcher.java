@@ -0,0 +1,460 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dispatches the router requests to the Application API instances, independently of the web layer.
+ * <p>
+ * Each request is sent to an instance chosen by the {@link LoadBalancer} of the current {@link InstanceRegistry.Snapshot},
+ * as an {@link UpstreamCall} under a deadline.
+ * It can then be sent to other instances, up to {@code maxAttempts} instances in total:
+ * <ul>
+ *     <li>failover: when the request could not be sent (connection refused, no connection available), it is retried
+ *     on an instance which was not tried yet.</li>
+ *     <li>hedging (optional): when the first instance did not answer by the {@link HedgeDelay}, the request is also sent
+ *     to another instance, and the first response wins.</li>
+ * </ul>
+ * Both are paid from a global {@link RetryBudget}, so that they cannot amplify an outage.
+ * <p>
+ * Overload is shed right away with a 503 and a {@code Retry-After}, instead of queuing requests without bound: when the
+ * router handles {@code maxInFlightRequests} already, or when every instance with a closed circuit is at the limit of
+ * its {@link ConcurrencyLimiter}. An instance at its limit is skipped like an instance with an open circuit.
+ * <p>
+ * Requests with an idempotency key go through the {@link IdempotencyCache} first: only the first one is dispatched.
+ */
+public class RequestDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDispatcher.class);
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final InstanceRegistry instanceRegistry;
+
+    private final ForwardingEngine forwardingEngine;
+
+    private final TimerWheel timerWheel;
+
+    private final RouterProperties.Deadline deadlineConfig;
+
+    private final int maxAttempts;
+
+    private final RetryBudget retryBudget;
+
+    private final RouterMetrics metrics = new RouterMetrics();
+
+    /**
+     * 0 if the number of requests handled at the same time is not limited.
+     */
+    private final int maxInFlightRequests;
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final String retryAfterSeconds;
+
+    /**
+     * Null if hedging is disabled.
+     */
+    private final HedgeDelay hedgeDelay;
+
+    private final IdempotencyCache idempotencyCache;
+
+    /**
+     * Name of the pool in the idempotency keys, the cache being shared by the pools.
+     */
+    private final String pool;
+
+    public RequestDispatcher(LoadBalancer loadBalancer, ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, RouterProperties.Retry retryConfig) {
+        this(InstanceRegistry.of(loadBalancer, timerWheel), forwardingEngine, timerWheel, deadlineConfig, retryConfig);
+    }
+
+    public RequestDispatcher(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, RouterProperties.Retry retryConfig) {
+        this(instanceRegistry, forwardingEngine, timerWheel, deadlineConfig, retryConfig, new RouterProperties.ConcurrencyLimit());
+    }
+
+    public RequestDispatcher(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, RouterProperties.Retry retryConfig,
+                             RouterProperties.ConcurrencyLimit concurrencyLimitConfig) {
+        this(instanceRegistry, forwardingEngine, timerWheel, deadlineConfig, retryConfig, concurrencyLimitConfig,
+                new RouterProperties.Idempotency());
+    }
+
+    public RequestDispatcher(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, RouterProperties.Retry retryConfig,
+                             RouterProperties.ConcurrencyLimit concurrencyLimitConfig,
+                             RouterProperties.Idempotency idempotencyConfig) {
+        this(instanceRegistry, forwardingEngine, timerWheel, deadlineConfig, retryConfig, concurrencyLimitConfig,
+                new IdempotencyCache(idempotencyConfig), RoutingTable.DEFAULT_POOL);
+    }
+
+    /**
+     * @param idempotencyCache the cache of the router, shared by all the pools
+     * @param pool             name of the pool
+     */
+    public RequestDispatcher(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, RouterProperties.Retry retryConfig,
+                             RouterProperties.ConcurrencyLimit concurrencyLimitConfig,
+                             IdempotencyCache idempotencyCache, String pool) {
+        this.instanceRegistry = instanceRegistry;
+        this.forwardingEngine = forwardingEngine;
+        this.timerWheel = timerWheel;
+        this.deadlineConfig = deadlineConfig;
+        this.maxAttempts = Math.max(1, retryConfig.getMaxAttempts());
+        this.retryBudget = new RetryBudget(retryConfig.getBudgetRatio(), retryConfig.getBudgetCapacity());
+        RouterProperties.Hedging hedging = retryConfig.getHedging();
+        this.hedgeDelay = hedging.isEnabled() && maxAttempts > 1
+                ? new HedgeDelay(hedging.getPercentile(), hedging.getWindow().toNanos(), hedging.getMinimumSamples())
+                : null;
+        this.maxInFlightRequests = Math.max(0, concurrencyLimitConfig.getMaxInFlightRequests());
+        long retryAfterMillis = concurrencyLimitConfig.getRetryAfter().toMillis();
+        this.retryAfterSeconds = String.valueOf(Math.max(1, (retryAfterMillis + 999) / 1000));
+        this.idempotencyCache = idempotencyCache;
+        this.pool = pool;
+    }
+
+    /**
+     * @param requestHeaders headers of the client request, hop-by-hop headers included
+     * @param requestBody    raw request body, can be null
+     * @return the response to send back to the client
+     */
+    public CompletableFuture<ResponseEntity<byte[]>> dispatch(HttpHeaders requestHeaders, byte[] requestBody) {
+        long startTime = System.nanoTime();
+        metrics.onRequest();
+        byte[] body = requestBody == null ? EMPTY_BODY : requestBody;
+        if (idempotencyCache.isEnabled()) {
+            String idempotencyKey = idempotencyCache.key(pool, requestHeaders, body);
+            if (idempotencyKey != null) {
+                // Replayed and coalesced requests are answered without using the router or instances capacity
+                return idempotencyCache.dispatch(idempotencyKey, body,
+                        () -> dispatchToInstances(requestHeaders, body, startTime));
+            }
+        }
+        return dispatchToInstances(requestHeaders, body, startTime);
+    }
+
+    private CompletableFuture<ResponseEntity<byte[]>> dispatchToInstances(HttpHeaders requestHeaders, byte[] body,
+                                                                          long startTime) {
+        if (inFlightRequests.incrementAndGet() > maxInFlightRequests && maxInFlightRequests > 0) {
+            inFlightRequests.decrementAndGet();
+            metrics.onShedRequest();
+            logger.debug("{} requests in flight: the request is rejected.", maxInFlightRequests);
+            return CompletableFuture.completedFuture(overloadedResponse(
+                    "The router is overloaded. The request was not processed. You can retry again later."));
+        }
+        long deadlineNanos = deadlineNanos(requestHeaders, startTime);
+        if (deadlineNanos <= startTime) {
+            inFlightRequests.decrementAndGet();
+            metrics.onExpiredDeadline();
+            return CompletableFuture.completedFuture(Responses.errorResponse(HttpStatus.GATEWAY_TIMEOUT,
+                    "The request deadline has expired. The request was not processed."));
+        }
+        retryBudget.deposit();
+
+        // The body is passed through as raw bytes: it is never parsed into a JSON tree
+        HttpHeaders forwardedHeaders = ForwardedHeaders.endToEndHeaders(requestHeaders);
+
+        Exchange exchange = new Exchange(forwardedHeaders, body, deadlineNanos);
+        if (!exchange.tryStartAttempt()) {
+            inFlightRequests.decrementAndGet();
+            if (exchange.limited) {
+                metrics.onLimitedRequest();
+                logger.debug("All the available Application API instances are at their concurrency limit: the request is rejected.");
+                return CompletableFuture.completedFuture(overloadedResponse(
+                        "All the Application API instances are busy. The request was not processed. You can retry again later."));
+            }
+            // Handle the case when no healthy instance is available
+            metrics.onUnavailable();
+            logger.warn("No healthy Application API instances available. The request was not processed.");
+            return CompletableFuture.completedFuture(Responses.errorResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                    "No healthy Application API instances available. The request was not processed. You can retry again later."));
+        }
+        exchange.scheduleHedge();
+        return exchange.result;
+    }
+
+    /**
+     * @return the upstream connection pool stats, per Application API url
+     */
+    public Map<String, UpstreamPoolStats> getPoolStats() {
+        Map<String, UpstreamPoolStats> poolStats = new LinkedHashMap<>();
+        for (ApplicationApiInstance applicationApiInstance : instanceRegistry.getApplicationApiInstances()) {
+            poolStats.put(applicationApiInstance.getApplicationApiUrl(), forwardingEngine.getPoolStats(applicationApiInstance));
+        }
+        return poolStats;
+    }
+
+    public InstanceRegistry getInstanceRegistry() {
+        return instanceRegistry;
+    }
+
+    public RouterMetrics getMetrics() {
+        return metrics;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    /**
+     * @return the number of requests received and not answered yet
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return the maximum number of requests handled at the same time, 0 if not limited
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} deadline of the request: the configured timeout, shortened by the client budget
+     */
+    private long deadlineNanos(HttpHeaders requestHeaders, long startTime) {
+        long budgetNanos = deadlineConfig.getTimeout().toNanos();
+        String clientBudget = requestHeaders.getFirst(deadlineConfig.getHeader());
+        if (clientBudget != null) {
+            try {
+                budgetNanos = Math.min(budgetNanos, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(clientBudget.trim())));
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring invalid {} header: {}", deadlineConfig.getHeader(), clientBudget);
+            }
+        }
+        return startTime + budgetNanos;
+    }
+
+    private ResponseEntity<byte[]> overloadedResponse(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The attempts of a single request.
+     */
+    private final class Exchange {
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final long deadlineNanos;
+        private final CompletableFuture<ResponseEntity<byte[]>> result = new CompletableFuture<>();
+        private final AtomicReferenceArray<UpstreamCall> attempts = new AtomicReferenceArray<>(maxAttempts);
+        private final AtomicInteger attemptsCount = new AtomicInteger();
+        private final AtomicInteger inFlightAttempts = new AtomicInteger();
+        private final AtomicBoolean answered = new AtomicBoolean();
+        /**
+         * All the attempts use the instances of the snapshot current when the request arrived.
+         */
+        private final InstanceRegistry.Snapshot snapshot = instanceRegistry.getSnapshot();
+        /**
+         * Not null if the request has an affinity key: the instances are walked along the hash ring.
+         */
+        private final ConsistentHashRing ring;
+        private final int ringPosition;
+        /**
+         * Created on the first instance after the owner of the affinity key: requests sent to the owner do not walk the ring.
+         */
+        private ConsistentHashRing.Walk ringWalk;
+        private final int firstInstanceIndex;
+        private final AtomicInteger nextInstanceOffset = new AtomicInteger();
+        /**
+         * Set when an instance was skipped because it was at its concurrency limit.
+         */
+        private volatile boolean limited;
+
+        private Exchange(HttpHeaders headers, byte[] body, long deadlineNanos) {
+            this.headers = headers;
+            this.body = body;
+            this.deadlineNanos = deadlineNanos;
+            LoadBalancer loadBalancer = snapshot.getLoadBalancer();
+            int position = loadBalancer instanceof ConsistentHashRing hashRing ? hashRing.getPosition(headers, body) : -1;
+            this.ring = position >= 0 ? (ConsistentHashRing) loadBalancer : null;
+            this.ringPosition = position;
+            this.firstInstanceIndex = loadBalancer == null || ring != null ? 0 : loadBalancer.getNextInstanceIndex();
+        }
+
+        /**
+         * @return false if no instance is left to try
+         */
+        private boolean tryStartAttempt() {
+            AcquiredInstance acquired = acquireUntriedInstance();
+            if (acquired == null) {
+                return false;
+            }
+            int attempt = attemptsCount.getAndIncrement();
+            if (attempt >= maxAttempts) {
+                acquired.applicationApiInstance.releasePermission(acquired.permission);
+                acquired.applicationApiInstance.getConcurrencyLimiter().release();
+                return false;
+            }
+            inFlightAttempts.incrementAndGet();
+            UpstreamCall upstreamCall = UpstreamCall.send(forwardingEngine, timerWheel, deadlineConfig,
+                    acquired.applicationApiInstance, acquired.permission, headers, body, deadlineNanos);
+            attempts.set(attempt, upstreamCall);
+            upstreamCall.getResponse().whenComplete((response, throwable) -> onAttemptCompleted(upstreamCall, response, throwable));
+            return true;
+        }
+
+        /**
+         * @param hedged true for a hedged request, false for a failover
+         */
+        private boolean tryStartExtraAttempt(boolean hedged) {
+            if (answered.get() || attemptsCount.get() >= maxAttempts || System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+            String reason = hedged ? "hedged request" : "failover";
+            if (!retryBudget.tryWithdraw()) {
+                logger.debug("Retry budget exhausted: no {}.", reason);
+                return false;
+            }
+            if (!tryStartAttempt()) {
+                return false;
+            }
+            if (hedged) {
+                metrics.onHedgedRequest();
+            } else {
+                metrics.onFailover();
+            }
+            logger.debug("Request sent to another instance: {}.", reason);
+            return true;
+        }
+
+        private void onAttemptCompleted(UpstreamCall upstreamCall, ResponseEntity<byte[]> response, Throwable throwable) {
+            int remainingAttempts = inFlightAttempts.decrementAndGet();
+            if (answered.get()) {
+                return;
+            }
+            if (throwable == null && upstreamCall.isRetryable()) {
+                if (remainingAttempts > 0 || tryStartExtraAttempt(false)) {
+                    // Another instance will answer
+                    return;
+                }
+            }
+            if (throwable == null && hedgeDelay != null && !Responses.isServerError(response)) {
+                hedgeDelay.record(System.nanoTime() - upstreamCall.getStartTime());
+            }
+            answer(response, throwable);
+        }
+
+        private void answer(ResponseEntity<byte[]> response, Throwable throwable) {
+            if (!answered.compareAndSet(false, true)) {
+                return;
+            }
+            inFlightRequests.decrementAndGet();
+            for (int i = 0; i < attempts.length(); i++) {
+                UpstreamCall attempt = attempts.get(i);
+                if (attempt != null && !attempt.getResponse().isDone()) {
+                    attempt.abandon();
+                }
+            }
+            if (throwable == null) {
+                result.complete(response);
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        }
+
+        private void scheduleHedge() {
+            if (hedgeDelay == null) {
+                return;
+            }
+            long delayNanos = hedgeDelay.getDelayNanos();
+            if (delayNanos < 0 || System.nanoTime() + delayNanos >= deadlineNanos) {
+                return;
+            }
+            // Sending a request can block (connection lease, DNS resolution): not on the wheel thread
+            TimerWheel.Timeout hedgeTimeout = timerWheel.scheduleOffWheel(() -> {
+                if (inFlightAttempts.get() > 0) {
+                    tryStartExtraAttempt(true);
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+            result.whenComplete((response, throwable) -> hedgeTimeout.cancel());
+        }
+
+        /**
+         * Each request walks the instances in order from the one chosen by the load balancer (or along the hash ring, from
+         * the owner of its affinity key), and covers each of them at most once, even if concurrent requests move the load
+         * balancer forward in the meantime.
+         * Instances with an open circuit are skipped with the {@link HealthyInstances} bitmap, and instances at their
+         * concurrency limit are skipped as well.
+         *
+         * @return an instance this request was not sent to yet, with its circuit permission and a concurrency slot
+         * acquired, or null if none
+         */
+        private AcquiredInstance acquireUntriedInstance() {
+            int instancesCount = snapshot.getInstancesCount();
+            int offset;
+            while ((offset = nextInstanceOffset.getAndIncrement()) < instancesCount) {
+                int index = ring == null ? (firstInstanceIndex + offset) % instancesCount
+                        : offset == 0 ? ring.getInstanceIndex(ringPosition, 0) : ringWalk().getInstanceIndex(offset);
+                ApplicationApiInstance applicationApiInstance = snapshot.getLoadBalancer().getInstance(index);
+                if (!snapshot.getHealthyInstances().isCandidate(index)) {
+                    onCircuitOpen(applicationApiInstance);
+                    continue;
+                }
+                ConcurrencyLimiter concurrencyLimiter = applicationApiInstance.getConcurrencyLimiter();
+                if (!concurrencyLimiter.tryAcquire()) {
+                    limited = true;
+                    applicationApiInstance.getMetrics().onLimited();
+                    logger.debug("Downstream server {} is skipped because it is at its concurrency limit: {}.",
+                            applicationApiInstance.getApplicationApiUrl(), concurrencyLimiter.getLimit());
+                    continue;
+                }
+                CircuitBreaker.Permission permission = applicationApiInstance.tryAcquirePermission();
+                if (permission != null) {
+                    return new AcquiredInstance(applicationApiInstance, permission);
+                }
+                concurrencyLimiter.release();
+                onCircuitOpen(applicationApiInstance);
+            }
+            return null;
+        }
+
+        private synchronized ConsistentHashRing.Walk ringWalk() {
+            if (ringWalk == null) {
+                ringWalk = ring.walk(ringPosition);
+            }
+            return ringWalk;
+        }
+
+        private void onCircuitOpen(ApplicationApiInstance applicationApiInstance) {
+            applicationApiInstance.getMetrics().onRejection();
+            logger.debug("Downstream server {} is skipped because it has its circuit open.",
+                    applicationApiInstance.getApplicationApiUrl());
+        }
+    }
+
+    /**
+     * An instance with its circuit permission and a concurrency slot acquired.
+     */
+    private static final class AcquiredInstance {
+        private final ApplicationApiInstance applicationApiInstance;
+        private final CircuitBreaker.Permission permission;
+
+        private AcquiredInstance(ApplicationApiInstance applicationApiInstance, CircuitBreaker.Permission permission) {
+            this.applicationApiInstance = applicationApiInstance;
+            this.permission = permission;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.maxime.router;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Responses of the router, and classification of the responses of the Application API instances.
+ */
+final class Responses {
+
+    private Responses() {
+    }
+
+    static ResponseEntity<byte[]> errorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Server errors, timeouts (408) and rejections (429) of an instance: they are reported as failures to its Circuit
+     * Breaker, are not latency samples for hedging, and are not cached by the {@link IdempotencyCache}.
+     */
+    static boolean isServerError(ResponseEntity<byte[]> response) {
+        HttpStatusCode status = response.getStatusCode();
+        return status.is5xxServerError() || status == HttpStatus.REQUEST_TIMEOUT || status == HttpStatus.TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,122 @@
+package com.maxime.router;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.io.CloseMode;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Blocking forwarding engine.
+ * <p>
+ * The call is done on the caller thread, and the returned future is already completed: it cannot be cancelled.
+ */
+public class RestTemplateForwardingEngine implements ForwardingEngine, AutoCloseable {
+
+    private final RestTemplate restTemplate;
+
+    /**
+     * Null when the RestTemplate is provided by the caller.
+     */
+    private final CloseableHttpClient httpClient;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * Forwards requests with a RestTemplate backed by pooled keep-alive connections.
+     */
+    public RestTemplateForwardingEngine(RouterProperties.ConnectionPool config) {
+        this.connectionManager = UpstreamConnectionPools.classicConnectionManager(config);
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(UpstreamConnectionPools.requestConfig(config))
+                .evictIdleConnections(UpstreamConnectionPools.idleTimeout(config))
+                .disableRedirectHandling()
+                .disableCookieManagement()
+                .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    public RestTemplateForwardingEngine(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+        this.httpClient = null;
+        this.connectionManager = null;
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<byte[]>> forward(ApplicationApiInstance applicationApiInstance,
+                                                             HttpHeaders headers, byte[] body) {
+        try {
+            ResponseEntity<byte[]> response = restTemplate.exchange(
+                    applicationApiInstance.getApplicationApiUrl(),
+                    HttpMethod.POST,
+                    new HttpEntity<>(body, headers),
+                    byte[].class
+            );
+            return CompletableFuture.completedFuture(response == null ? null : passThrough(response));
+        } catch (HttpStatusCodeException httpStatusCodeException) {
+            // The default RestTemplate error handler throws on 4xx and 5xx: pass them through as any other response
+            return CompletableFuture.completedFuture(ResponseEntity.status(httpStatusCodeException.getStatusCode())
+                    .headers(httpStatusCodeException.getResponseHeaders() == null ? new HttpHeaders()
+                            : ForwardedHeaders.endToEndHeaders(httpStatusCodeException.getResponseHeaders()))
+                    .body(httpStatusCodeException.getResponseBodyAsByteArray()));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * The health check is done on the caller thread, like the forwarded requests. The timeout only applies with the
+     * pooled connections: a RestTemplate provided by the caller uses its own timeouts.
+     */
+    @Override
+    public CompletableFuture<HttpStatusCode> probe(String probeUrl, Duration timeout) {
+        try {
+            if (httpClient != null) {
+                HttpGet request = new HttpGet(probeUrl);
+                request.setConfig(UpstreamConnectionPools.probeRequestConfig(timeout));
+                return CompletableFuture.completedFuture(HttpStatusCode.valueOf(
+                        httpClient.execute(request, response -> response.getCode())));
+            }
+            return CompletableFuture.completedFuture(restTemplate.execute(probeUrl, HttpMethod.GET, null,
+                    response -> response.getStatusCode()));
+        } catch (HttpStatusCodeException httpStatusCodeException) {
+            return CompletableFuture.completedFuture(httpStatusCodeException.getStatusCode());
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public UpstreamPoolStats getPoolStats(ApplicationApiInstance applicationApiInstance) {
+        if (connectionManager == null) {
+            return null;
+        }
+        return UpstreamPoolStats.of(connectionManager.getStats(UpstreamConnectionPools.route(applicationApiInstance)));
+    }
+
+    @Override
+    public void close() {
+        if (httpClient != null) {
+            httpClient.close(CloseMode.GRACEFUL);
+        }
+    }
+
+    private static ResponseEntity<byte[]> passThrough(ResponseEntity<byte[]> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(ForwardedHeaders.endToEndHeaders(response.getHeaders()))
+                .body(response.getBody());
+    }
+}
@@ -0,0 +1,66 @@
+package com.maxime.router;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global budget of the retries (and hedged requests), as a ratio of the live traffic.
+ * <p>
+ * Each request deposits {@code ratio} token, and each retry withdraws a whole token: with a ratio of 0.2, there is at
+ * most one retry for 5 requests, so that retries cannot amplify an outage. The balance is capped, and starts full,
+ * so that a few retries are also possible with little traffic.
+ * <p>
+ * Tokens are counted in thousandths, in a single {@link AtomicLong}.
+ */
+public class RetryBudget {
+
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio    retries allowed per request
+     * @param capacity maximum number of retries that can be saved up
+     */
+    public RetryBudget(double ratio, int capacity) {
+        if (ratio < 0 || capacity < 0) {
+            throw new IllegalArgumentException("The retry budget ratio and capacity cannot be negative.");
+        }
+        this.deposit = Math.round(ratio * TOKEN);
+        this.capacity = capacity * TOKEN;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Record a request.
+     */
+    public void deposit() {
+        if (deposit > 0 && balance.get() < capacity) {
+            balance.addAndGet(deposit);
+        }
+    }
+
+    /**
+     * @return if a retry is allowed. The token is then consumed.
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, Math.min(current, capacity) - TOKEN));
+        return true;
+    }
+
+    /**
+     * @return the number of retries currently allowed
+     */
+    public long getAvailableRetries() {
+        return Math.min(balance.get(), capacity) / TOKEN;
+    }
+}
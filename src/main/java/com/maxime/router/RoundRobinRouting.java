@@ -3,38 +3,171 @@ package com.maxime.router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
-public class RoundRobinRouting {
+/**
+ * Round robin over the Application API instances.
+ * <p>
+ * In weighted mode, each instance gets a share of the traffic proportional to its {@link InstanceWeight effective
+ * weight}, with the nginx "smooth weighted round robin": for weights {5, 1, 1}, the order is {a, a, b, a, c, a, a}
+ * instead of {a, a, a, a, a, b, c}. A whole cycle of the rotation is computed at once in a {@link WeightedSchedule},
+ * which is then walked with a single atomic counter. At the end of the cycle, a single thread rebuilds the schedule, and
+ * only if the effective weights changed in the meantime; the other threads keep walking the previous cycle until the
+ * new one is published. The rebuild is paid once per cycle of {@code total weight} requests, so selection is lock-free
+ * and O(1) amortized for a given number of instances.
+ * <p>
+ * Otherwise, the rotation is a single fetch-and-add on a {@link PaddedCounter}.
+ */
+public class RoundRobinRouting implements LoadBalancer {
 
     private static final Logger logger = LoggerFactory.getLogger(RoundRobinRouting.class);
-    private final AtomicInteger currentInstanceIndex = new AtomicInteger(0);
+    private final PaddedCounter requestsCounter = new PaddedCounter();
 
     private final List<ApplicationApiInstance> applicationApiInstances;
 
-    public RoundRobinRouting(List<String> applicationApiUrls){
-        logger.info("Starting Round Robin Router with following Urls: " + applicationApiUrls);
+    /**
+     * Null if not weighted.
+     */
+    private final AtomicReference<WeightedSchedule> weightedSchedule;
 
-        if (applicationApiUrls == null || applicationApiUrls.size() == 0) {
-            throw new IllegalArgumentException("Cannot start a router with a null or empty Application API Urls list.");
-        }
+    public RoundRobinRouting(List<String> applicationApiUrls) {
+        this(applicationApiUrls, applicationApiUrl -> new CircuitBreakerConfig());
+    }
+
+    /**
+     * @param circuitBreakerConfigs Circuit Breaker configuration of each Application API url
+     */
+    public RoundRobinRouting(List<String> applicationApiUrls, Function<String, CircuitBreakerConfig> circuitBreakerConfigs) {
+        this(ApplicationApiInstance.fromUrls(applicationApiUrls, circuitBreakerConfigs).toArray(new ApplicationApiInstance[0]), false);
+    }
+
+    public static RoundRobinRouting ofInstances(List<ApplicationApiInstance> applicationApiInstances) {
+        return new RoundRobinRouting(applicationApiInstances.toArray(new ApplicationApiInstance[0]), false);
+    }
+
+    /**
+     * Smooth weighted round robin, using the weight of each instance.
+     */
+    public static RoundRobinRouting weighted(List<ApplicationApiInstance> applicationApiInstances) {
+        return new RoundRobinRouting(applicationApiInstances.toArray(new ApplicationApiInstance[0]), true);
+    }
 
-        applicationApiInstances = new ArrayList<>(applicationApiUrls.size());
-        for (String applicationApiUrl : applicationApiUrls) {
-            applicationApiInstances.add(new ApplicationApiInstance(applicationApiUrl));
+    private RoundRobinRouting(ApplicationApiInstance[] applicationApiInstances, boolean weighted) {
+        if (applicationApiInstances.length == 0) {
+            throw new IllegalArgumentException("Cannot start a router with an empty Application API instances list.");
         }
+        this.applicationApiInstances = List.of(applicationApiInstances);
+        this.weightedSchedule = weighted ? new AtomicReference<>(WeightedSchedule.build(applicationApiInstances)) : null;
+        logger.info("Starting {}Round Robin Router with following Urls: {}", weighted ? "Weighted " : "",
+                ApplicationApiInstance.urls(this.applicationApiInstances));
     }
 
     public ApplicationApiInstance getNextInstanceUrl() {
-        int nextIndex = currentInstanceIndex.getAndUpdate(
-                (x) -> (x >= applicationApiInstances.size() - 1) ? 0 : x + 1
-        );
-        return applicationApiInstances.get(nextIndex);
+        return getNextInstance();
+    }
+
+    @Override
+    public int getNextInstanceIndex() {
+        if (weightedSchedule != null) {
+            return getNextWeightedInstanceIndex();
+        }
+        return (int) (requestsCounter.getAndIncrement() % applicationApiInstances.size());
     }
 
+    @Override
+    public ApplicationApiInstance getInstance(int index) {
+        return applicationApiInstances.get(index);
+    }
+
+    private int getNextWeightedInstanceIndex() {
+        while (true) {
+            WeightedSchedule schedule = weightedSchedule.get();
+            int position = schedule.position.getAndIncrement();
+            if (position < schedule.sequence.length) {
+                return schedule.sequence[position];
+            }
+            if (!schedule.rebuilding.compareAndSet(false, true)) {
+                // Another thread builds the next cycle: this one does not wait for it
+                return schedule.sequence[position % schedule.sequence.length];
+            }
+            weightedSchedule.set(schedule.nextCycle());
+        }
+    }
+
+    @Override
+    public List<ApplicationApiInstance> getInstances() {
+        return Collections.unmodifiableList(applicationApiInstances);
+    }
+
+    @Override
     public int getInstancesCount(){
         return applicationApiInstances.size();
     }
+
+    /**
+     * One cycle of the smooth weighted round robin, for a given set of effective weights.
+     */
+    private static final class WeightedSchedule {
+        private final ApplicationApiInstance[] instances;
+        private final int[] weights;
+        /**
+         * Instance indexes.
+         */
+        private final int[] sequence;
+        private final AtomicInteger position = new AtomicInteger();
+        /**
+         * Set by the thread which builds the next cycle, at the end of this one.
+         */
+        private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+        private WeightedSchedule(ApplicationApiInstance[] instances, int[] weights, int[] sequence) {
+            this.instances = instances;
+            this.weights = weights;
+            this.sequence = sequence;
+        }
+
+        private static WeightedSchedule build(ApplicationApiInstance[] instances) {
+            int[] weights = new int[instances.length];
+            int totalWeight = 0;
+            for (int i = 0; i < instances.length; i++) {
+                weights[i] = instances[i].getWeight().getEffectiveWeight();
+                totalWeight += weights[i];
+            }
+
+            // nginx algorithm: on each step, every instance gains its weight, and the richest one pays the total weight.
+            // After a whole cycle, all current weights are back to 0.
+            int[] currentWeights = new int[instances.length];
+            int[] sequence = new int[totalWeight];
+            for (int step = 0; step < totalWeight; step++) {
+                int best = 0;
+                for (int i = 0; i < instances.length; i++) {
+                    currentWeights[i] += weights[i];
+                    if (currentWeights[i] > currentWeights[best]) {
+                        best = i;
+                    }
+                }
+                currentWeights[best] -= totalWeight;
+                sequence[step] = best;
+            }
+            return new WeightedSchedule(instances, weights, sequence);
+        }
+
+        /**
+         * @return a schedule reusing the same sequence if the weights did not change, otherwise a new one, built in
+         * O(total weight × instances)
+         */
+        private WeightedSchedule nextCycle() {
+            for (int i = 0; i < instances.length; i++) {
+                if (instances[i].getWeight().getEffectiveWeight() != weights[i]) {
+                    return build(instances);
+                }
+            }
+            return new WeightedSchedule(instances, weights, sequence);
+        }
+    }
 }
@@ -3,10 +3,22 @@ package com.maxime.router;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 @SpringBootApplication
 public class RouterApplication {
 
-    public static void main(String[] args) {
+    static final String STANDALONE_ARGUMENT = "--standalone";
+
+    /**
+     * {@code --standalone} starts the {@link StandaloneRouter} instead, without the Spring context.
+     */
+    public static void main(String[] args) throws IOException {
+        if (Arrays.asList(args).contains(STANDALONE_ARGUMENT)) {
+            StandaloneRouter.main(args);
+            return;
+        }
         SpringApplication.run(RouterApplication.class, args);
     }
 
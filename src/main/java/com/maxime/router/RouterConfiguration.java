@@ -0,0 +1,148 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+@Configuration
+@EnableConfigurationProperties(RouterProperties.class)
+public class RouterConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouterConfiguration.class);
+
+    @Bean
+    public InstanceRegistry instanceRegistry(RouterProperties routerProperties, TimerWheel timerWheel) throws IOException {
+        RouterProperties.Instances instancesConfig = routerProperties.getInstances();
+        List<String> applicationApiUrls = instancesConfig.getFile() != null
+                ? InstanceListFile.read(Path.of(instancesConfig.getFile()))
+                : instancesConfig.getUrls();
+        return instanceRegistry(applicationApiUrls, routerProperties::getCircuitBreakerConfig, routerProperties.getLoadBalancer(),
+                routerProperties.getConcurrencyLimit(), timerWheel, instancesConfig.getDrainTimeout());
+    }
+
+    @Bean
+    @ConditionalOnProperty("router.instances.file")
+    public InstanceListFile instanceListFile(RouterProperties routerProperties, InstanceRegistry instanceRegistry) throws IOException {
+        return new InstanceListFile(Path.of(routerProperties.getInstances().getFile()), instanceRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "router.health-check.enabled", havingValue = "true")
+    public HealthChecker healthChecker(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine,
+                                       RouterProperties routerProperties) {
+        HealthChecker healthChecker = new HealthChecker(instanceRegistry, forwardingEngine, routerProperties.getHealthCheck());
+        healthChecker.start();
+        return healthChecker;
+    }
+
+    /**
+     * Shared by all the pools, so that {@code max-size} bounds the memory of the whole router.
+     */
+    @Bean
+    public IdempotencyCache idempotencyCache(RouterProperties routerProperties) {
+        return new IdempotencyCache(routerProperties.getIdempotency());
+    }
+
+    @Bean
+    public RequestDispatcher requestDispatcher(InstanceRegistry instanceRegistry, ForwardingEngine forwardingEngine,
+                                               TimerWheel timerWheel, IdempotencyCache idempotencyCache,
+                                               RouterProperties routerProperties) {
+        return new RequestDispatcher(instanceRegistry, forwardingEngine, timerWheel, routerProperties.getDeadline(),
+                routerProperties.getRetry(), routerProperties.getConcurrencyLimit(), idempotencyCache,
+                RoutingTable.DEFAULT_POOL);
+    }
+
+    @Bean
+    public RoutingTable routingTable(RequestDispatcher requestDispatcher, ForwardingEngine forwardingEngine,
+                                     TimerWheel timerWheel, RouterProperties routerProperties) {
+        Map<String, RequestDispatcher> pools = new LinkedHashMap<>();
+        for (Map.Entry<String, RouterProperties.Pool> pool : routerProperties.getPools().entrySet()) {
+            RouterProperties.Pool poolConfig = pool.getValue();
+            logger.info("Starting the {} pool.", pool.getKey());
+            InstanceRegistry instanceRegistry = instanceRegistry(poolConfig.getUrls(),
+                    applicationApiUrl -> poolConfig.getCircuitBreaker(), poolConfig.getLoadBalancer(),
+                    routerProperties.getConcurrencyLimit(), timerWheel, routerProperties.getInstances().getDrainTimeout());
+            pools.put(pool.getKey(), new RequestDispatcher(instanceRegistry, forwardingEngine, timerWheel,
+                    poolConfig.getDeadline(), routerProperties.getRetry(), routerProperties.getConcurrencyLimit(),
+                    requestDispatcher.getIdempotencyCache(), pool.getKey()));
+        }
+        return new RoutingTable(requestDispatcher, pools, routerProperties.getRoutes());
+    }
+
+    @Bean
+    public BatchDispatcher batchDispatcher(RequestDispatcher requestDispatcher, RouterProperties routerProperties) {
+        return new BatchDispatcher(requestDispatcher, routerProperties.getBatch());
+    }
+
+    @Bean
+    public TimerWheel timerWheel(RouterProperties routerProperties) {
+        return new TimerWheel(routerProperties.getDeadline().getTickDuration());
+    }
+
+    private static InstanceRegistry instanceRegistry(List<String> applicationApiUrls,
+                                                     Function<String, CircuitBreakerConfig> circuitBreakerConfigs,
+                                                     RouterProperties.LoadBalancing loadBalancing,
+                                                     RouterProperties.ConcurrencyLimit concurrencyLimit,
+                                                     TimerWheel timerWheel, Duration drainTimeout) {
+        Function<List<ApplicationApiInstance>, LoadBalancer> loadBalancerFactory = loadBalancerFactory(loadBalancing);
+        LoadBalancer loadBalancer = loadBalancerFactory.apply(ApplicationApiInstance.fromUrls(
+                applicationApiUrls, circuitBreakerConfigs, loadBalancing::getWeight, concurrencyLimit));
+        return new InstanceRegistry(loadBalancer, loadBalancerFactory,
+                applicationApiUrl -> new ApplicationApiInstance(applicationApiUrl,
+                        circuitBreakerConfigs.apply(applicationApiUrl), loadBalancing.getWeight(applicationApiUrl),
+                        concurrencyLimit),
+                timerWheel, drainTimeout);
+    }
+
+    private static Function<List<ApplicationApiInstance>, LoadBalancer> loadBalancerFactory(
+            RouterProperties.LoadBalancing loadBalancing) {
+        RouterProperties.LoadBalancerType loadBalancerType = loadBalancing.getType();
+        switch (loadBalancerType) {
+            case ROUND_ROBIN:
+                return RoundRobinRouting::ofInstances;
+            case WEIGHTED_ROUND_ROBIN:
+                return RoundRobinRouting::weighted;
+            case PEAK_EWMA:
+                return PeakEwmaLoadBalancer::new;
+            case CONSISTENT_HASH:
+                return applicationApiInstances -> new ConsistentHashRing(applicationApiInstances, loadBalancing.getAffinity());
+            default:
+                throw new IllegalArgumentException("Unknown load balancer: " + loadBalancerType);
+        }
+    }
+
+    @Bean
+    public ForwardingEngine forwardingEngine(RouterProperties routerProperties) {
+        RouterProperties.ForwardingEngineType engineType = routerProperties.getForwarding().getEngine();
+        logger.info("Using {} forwarding engine.", engineType);
+        switch (engineType) {
+            case BLOCKING:
+                if (routerProperties.getRetry().getHedging().isEnabled()) {
+                    // The first attempt only returns with its response: the hedged request would never be sent
+                    throw new IllegalArgumentException("Hedging (router.retry.hedging.enabled) is only supported by the "
+                            + RouterProperties.ForwardingEngineType.ASYNC + " forwarding engine.");
+                }
+                if (routerProperties.getConnectionPool().isHttp2()) {
+                    // The blocking client only speaks HTTP/1.1: the requests would silently not be multiplexed
+                    throw new IllegalArgumentException("HTTP/2 (router.connection-pool.http2) is only supported by the "
+                            + RouterProperties.ForwardingEngineType.ASYNC + " forwarding engine.");
+                }
+                return new RestTemplateForwardingEngine(routerProperties.getConnectionPool());
+            case ASYNC:
+                return new AsyncHttpForwardingEngine(routerProperties.getConnectionPool());
+            default:
+                throw new IllegalArgumentException("Unknown forwarding engine: " + engineType);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.maxime.router;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the requests received by the router, since it started. Lock-free and allocation-free, like
+ * {@link InstanceMetrics}.
+ */
+public class RouterMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+    private final LongAdder expiredDeadlines = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder shedRequests = new LongAdder();
+    private final LongAdder limitedRequests = new LongAdder();
+
+    public void onRequest() {
+        requests.increment();
+    }
+
+    /**
+     * No instance could be tried: the request was rejected.
+     */
+    public void onUnavailable() {
+        unavailable.increment();
+    }
+
+    /**
+     * The deadline of the client had already expired: the request was rejected.
+     */
+    public void onExpiredDeadline() {
+        expiredDeadlines.increment();
+    }
+
+    public void onFailover() {
+        failovers.increment();
+    }
+
+    public void onHedgedRequest() {
+        hedgedRequests.increment();
+    }
+
+    /**
+     * The router was handling its maximum number of requests: the request was rejected.
+     */
+    public void onShedRequest() {
+        shedRequests.increment();
+    }
+
+    /**
+     * Every instance was either at its concurrency limit or with its circuit open: the request was rejected.
+     */
+    public void onLimitedRequest() {
+        limitedRequests.increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getUnavailable() {
+        return unavailable.sum();
+    }
+
+    public long getExpiredDeadlines() {
+        return expiredDeadlines.sum();
+    }
+
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    public long getShedRequests() {
+        return shedRequests.sum();
+    }
+
+    public long getLimitedRequests() {
+        return limitedRequests.sum();
+    }
+}
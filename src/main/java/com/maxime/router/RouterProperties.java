@@ -0,0 +1,1010 @@
+package com.maxime.router;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Router configuration, bound from the {@code router.*} properties (see {@code application.properties}).
+ */
+@ConfigurationProperties(prefix = "router")
+public class RouterProperties {
+
+    private final Instances instances = new Instances();
+
+    private final Forwarding forwarding = new Forwarding();
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+
+    private final LoadBalancing loadBalancer = new LoadBalancing();
+
+    private final Deadline deadline = new Deadline();
+
+    private final Retry retry = new Retry();
+
+    private final HealthCheck healthCheck = new HealthCheck();
+
+    private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+    private final Batch batch = new Batch();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    /**
+     * Other pools of Application API instances, by name. The top-level configuration is the {@code default} pool.
+     */
+    private final Map<String, Pool> pools = new LinkedHashMap<>();
+
+    /**
+     * Routes of the requests to the pools, by Host header and path prefix. Unmatched {@code /api/router} requests go
+     * to the {@code default} pool.
+     */
+    private final List<Route> routes = new ArrayList<>();
+
+    private final Standalone standalone = new Standalone();
+
+    /**
+     * Default Circuit Breaker configuration of the Application API instances.
+     */
+    private final CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
+    /**
+     * Circuit Breaker configuration of specific Application API instances, by url.
+     * These are complete configurations: unset values take the {@link CircuitBreakerConfig} defaults,
+     * not the ones of {@code router.circuit-breaker}.
+     */
+    private final Map<String, CircuitBreakerConfig> instanceCircuitBreakers = new HashMap<>();
+
+    public Instances getInstances() {
+        return instances;
+    }
+
+    public Forwarding getForwarding() {
+        return forwarding;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public LoadBalancing getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public HealthCheck getHealthCheck() {
+        return healthCheck;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Idempotency getIdempotency() {
+        return idempotency;
+    }
+
+    public Map<String, Pool> getPools() {
+        return pools;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public Standalone getStandalone() {
+        return standalone;
+    }
+
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Map<String, CircuitBreakerConfig> getInstanceCircuitBreakers() {
+        return instanceCircuitBreakers;
+    }
+
+    /**
+     * @return the Circuit Breaker configuration of the given Application API url
+     */
+    public CircuitBreakerConfig getCircuitBreakerConfig(String applicationApiUrl) {
+        return instanceCircuitBreakers.getOrDefault(applicationApiUrl, circuitBreaker);
+    }
+
+    /**
+     * The Application API instances. They can also be changed at runtime on {@code /api/router/instances}.
+     */
+    public static class Instances {
+        /**
+         * Application API urls, unless a {@code file} is set.
+         */
+        private List<String> urls = new ArrayList<>(Arrays.asList(
+                "http://localhost:5001/api/endpoint",
+                "http://localhost:5002/api/endpoint",
+                "http://localhost:5003/api/endpoint"));
+        /**
+         * File with the Application API urls, one per line. It is watched, and the instances are updated when it changes.
+         */
+        private String file;
+        /**
+         * Maximum time waiting for the in-flight requests of a removed instance.
+         */
+        private Duration drainTimeout = Duration.ofSeconds(30);
+
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public void setUrls(List<String> urls) {
+            this.urls = urls;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public Duration getDrainTimeout() {
+            return drainTimeout;
+        }
+
+        public void setDrainTimeout(Duration drainTimeout) {
+            this.drainTimeout = drainTimeout;
+        }
+    }
+
+    public enum ForwardingEngineType {
+        /**
+         * RestTemplate based: the Tomcat thread is held for the whole downstream round trip.
+         */
+        BLOCKING,
+        /**
+         * Apache HttpAsyncClient based: the Tomcat thread is released while waiting for the downstream server.
+         */
+        ASYNC
+    }
+
+    public static class Forwarding {
+        /**
+         * Forwarding engine used to send requests to the Application APIs.
+         */
+        private ForwardingEngineType engine = ForwardingEngineType.ASYNC;
+
+        public ForwardingEngineType getEngine() {
+            return engine;
+        }
+
+        public void setEngine(ForwardingEngineType engine) {
+            this.engine = engine;
+        }
+    }
+
+    public enum LoadBalancerType {
+        /**
+         * Instances are used in strict rotation.
+         */
+        ROUND_ROBIN,
+        /**
+         * Smooth weighted round robin, with the {@code weights} of the instances, lowered while they are slow or failing.
+         */
+        WEIGHTED_ROUND_ROBIN,
+        /**
+         * Best of two random instances, according to their peak-EWMA latency and in-flight requests.
+         */
+        PEAK_EWMA,
+        /**
+         * Consistent hashing of the {@code affinity} key: the requests with the same key go to the same instance.
+         */
+        CONSISTENT_HASH
+    }
+
+    public static class LoadBalancing {
+        /**
+         * Strategy choosing the Application API instance of each request.
+         */
+        private LoadBalancerType type = LoadBalancerType.ROUND_ROBIN;
+
+        /**
+         * Weight of specific Application API instances, by url, for the weighted round robin. Defaults to 1.
+         */
+        private final Map<String, Integer> weights = new HashMap<>();
+
+        private final Affinity affinity = new Affinity();
+
+        public LoadBalancerType getType() {
+            return type;
+        }
+
+        public void setType(LoadBalancerType type) {
+            this.type = type;
+        }
+
+        public Map<String, Integer> getWeights() {
+            return weights;
+        }
+
+        /**
+         * @return the weight of the given Application API url
+         */
+        public int getWeight(String applicationApiUrl) {
+            return weights.getOrDefault(applicationApiUrl, 1);
+        }
+
+        public Affinity getAffinity() {
+            return affinity;
+        }
+    }
+
+    /**
+     * Key of the {@code CONSISTENT_HASH} load balancer. Requests without a key are sent in round robin.
+     */
+    public static class Affinity {
+        /**
+         * Header holding the key. It takes precedence over the field.
+         */
+        private String header;
+        /**
+         * Field of the JSON request body holding the key, at the top level of the document (e.g. {@code gamerID}).
+         */
+        private String field;
+        /**
+         * Points of each instance on the hash ring: more points spread the keys more evenly.
+         */
+        private int virtualNodes = 160;
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+    }
+
+    public enum TimeoutAction {
+        /**
+         * The downstream call is aborted, and its connection closed.
+         */
+        CANCEL,
+        /**
+         * The downstream call completes in the background, so its connection can be reused. Its outcome is ignored.
+         */
+        DETACH
+    }
+
+    /**
+     * End-to-end deadline of the requests, enforced by a shared {@link TimerWheel}.
+     */
+    public static class Deadline {
+        /**
+         * Maximum time to answer a request, including the downstream call.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+        /**
+         * Request header with the remaining time budget of the client, in milliseconds. It can only shorten the timeout,
+         * and is forwarded downstream with the remaining budget.
+         */
+        private String header = "X-Request-Timeout-Ms";
+        /**
+         * Answer with a 504 as soon as the slow call duration threshold of the instance is reached,
+         * instead of waiting for the downstream server until the deadline.
+         */
+        private boolean failFastOnSlowCall = false;
+        /**
+         * What happens to the downstream call when the router stops waiting for it.
+         */
+        private TimeoutAction timeoutAction = TimeoutAction.CANCEL;
+        /**
+         * Resolution of the timer wheel.
+         */
+        private Duration tickDuration = Duration.ofMillis(10);
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public boolean isFailFastOnSlowCall() {
+            return failFastOnSlowCall;
+        }
+
+        public void setFailFastOnSlowCall(boolean failFastOnSlowCall) {
+            this.failFastOnSlowCall = failFastOnSlowCall;
+        }
+
+        public TimeoutAction getTimeoutAction() {
+            return timeoutAction;
+        }
+
+        public void setTimeoutAction(TimeoutAction timeoutAction) {
+            this.timeoutAction = timeoutAction;
+        }
+
+        public Duration getTickDuration() {
+            return tickDuration;
+        }
+
+        public void setTickDuration(Duration tickDuration) {
+            this.tickDuration = tickDuration;
+        }
+    }
+
+    /**
+     * Failover to another instance, when a request could not be sent, and hedged requests.
+     */
+    public static class Retry {
+        /**
+         * Maximum number of instances a request is sent to, including retries and hedged requests. 1 disables them.
+         */
+        private int maxAttempts = 2;
+        /**
+         * Retries allowed per request, over all the requests.
+         */
+        private double budgetRatio = 0.2;
+        /**
+         * Maximum number of retries that can be saved up by the budget.
+         */
+        private int budgetCapacity = 10;
+
+        private final Hedging hedging = new Hedging();
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getBudgetCapacity() {
+            return budgetCapacity;
+        }
+
+        public void setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+        }
+
+        public Hedging getHedging() {
+            return hedging;
+        }
+    }
+
+    /**
+     * Hedged requests: the request is also sent to another instance if the first one is slower than usual.
+     * Only for idempotent Application APIs: both instances may process the request.
+     * Only supported by the ASYNC forwarding engine.
+     */
+    public static class Hedging {
+        private boolean enabled = false;
+        /**
+         * Percentile of the recent latencies after which the hedged request is sent.
+         */
+        private double percentile = 95;
+        /**
+         * Period over which the latencies are recorded.
+         */
+        private Duration window = Duration.ofSeconds(10);
+        /**
+         * Minimum number of latencies recorded over a window to compute the hedging delay.
+         */
+        private int minimumSamples = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMinimumSamples() {
+            return minimumSamples;
+        }
+
+        public void setMinimumSamples(int minimumSamples) {
+            this.minimumSamples = minimumSamples;
+        }
+    }
+
+    /**
+     * Background health checks of the Application API instances, which open and close their circuits.
+     */
+    public static class HealthCheck {
+        private boolean enabled = false;
+        /**
+         * Path of the health check GET request, on the host and port of each instance. Defaults to the instance url.
+         */
+        private String path;
+        /**
+         * Period between two health checks of an instance.
+         */
+        private Duration interval = Duration.ofSeconds(5);
+        /**
+         * Maximum random delay added to each health check, so that they are spread over time.
+         */
+        private Duration jitter = Duration.ofSeconds(1);
+        /**
+         * Maximum time waiting for a health check response.
+         */
+        private Duration timeout = Duration.ofSeconds(2);
+        /**
+         * Consecutive successful health checks closing an open circuit.
+         */
+        private int healthyThreshold = 1;
+        /**
+         * Consecutive failed health checks opening the circuit.
+         */
+        private int unhealthyThreshold = 2;
+        /**
+         * Threads of the health check scheduler, shared by all the instances.
+         */
+        private int threads = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Duration getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(Duration jitter) {
+            this.jitter = jitter;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getHealthyThreshold() {
+            return healthyThreshold;
+        }
+
+        public void setHealthyThreshold(int healthyThreshold) {
+            this.healthyThreshold = healthyThreshold;
+        }
+
+        public int getUnhealthyThreshold() {
+            return unhealthyThreshold;
+        }
+
+        public void setUnhealthyThreshold(int unhealthyThreshold) {
+            this.unhealthyThreshold = unhealthyThreshold;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+    }
+
+    /**
+     * Load shedding: requests over the limits are rejected right away with a 503 and a {@code Retry-After}, instead of
+     * waiting for a thread or a connection.
+     */
+    public static class ConcurrencyLimit {
+        /**
+         * Maximum number of requests handled by the router at the same time. 0 disables the limit.
+         */
+        private int maxInFlightRequests = 0;
+        /**
+         * Adaptive limit of the concurrent requests of each instance, from their observed latency.
+         */
+        private boolean adaptive = false;
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+        /**
+         * Latency increase, relative to the long-term latency, tolerated before the limit is decreased.
+         */
+        private double tolerance = 1.5;
+        /**
+         * Weight of each latency sample in the limit: lower values change the limit more slowly.
+         */
+        private double smoothing = 0.2;
+        /**
+         * Factor applied to the limit when a request of the instance exceeds its deadline.
+         */
+        private double backoffRatio = 0.9;
+        /**
+         * Sent in the {@code Retry-After} header of the rejected requests, rounded up to seconds.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        public int getMaxInFlightRequests() {
+            return maxInFlightRequests;
+        }
+
+        public void setMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * Batches of records streamed as JSON Lines to {@code /api/router/batch}.
+     */
+    public static class Batch {
+        /**
+         * Maximum number of records of a batch dispatched at the same time.
+         */
+        private int maxParallelism = 16;
+        /**
+         * Larger records are not dispatched: they are answered with a 413.
+         */
+        private DataSize maxRecordSize = DataSize.ofMegabytes(1);
+
+        public int getMaxParallelism() {
+            return maxParallelism;
+        }
+
+        public void setMaxParallelism(int maxParallelism) {
+            this.maxParallelism = maxParallelism;
+        }
+
+        public DataSize getMaxRecordSize() {
+            return maxRecordSize;
+        }
+
+        public void setMaxRecordSize(DataSize maxRecordSize) {
+            this.maxRecordSize = maxRecordSize;
+        }
+    }
+
+    /**
+     * Cache of the responses by idempotency key: a retried request gets the response of the first one, instead of being
+     * processed again by the Application API.
+     */
+    public static class Idempotency {
+        private boolean enabled = false;
+        /**
+         * Header holding the idempotency key of the request.
+         */
+        private String header = "Idempotency-Key";
+        /**
+         * Use a hash of the request body as the key of the requests without the header: identical requests are then
+         * only processed once within the {@code ttl}.
+         */
+        private boolean keyFromBody = false;
+        /**
+         * Time a response is kept.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+        private int maxEntries = 10_000;
+        /**
+         * Maximum size of all the cached response bodies.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        /**
+         * Larger responses are not cached.
+         */
+        private DataSize maxResponseSize = DataSize.ofKilobytes(64);
+        /**
+         * Store the response bodies outside the Java heap, in a single direct buffer of {@code maxSize} allocated at
+         * startup.
+         */
+        private boolean offHeap = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public boolean isKeyFromBody() {
+            return keyFromBody;
+        }
+
+        public void setKeyFromBody(boolean keyFromBody) {
+            this.keyFromBody = keyFromBody;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public DataSize getMaxResponseSize() {
+            return maxResponseSize;
+        }
+
+        public void setMaxResponseSize(DataSize maxResponseSize) {
+            this.maxResponseSize = maxResponseSize;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+    }
+
+    /**
+     * A named pool of Application API instances, with its own load balancer, Circuit Breakers and deadline.
+     * These are complete configurations: unset values take their defaults, not the ones of the {@code default} pool.
+     */
+    public static class Pool {
+        private List<String> urls = new ArrayList<>();
+        private final LoadBalancing loadBalancer = new LoadBalancing();
+        private final CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+        private final Deadline deadline = new Deadline();
+
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public void setUrls(List<String> urls) {
+            this.urls = urls;
+        }
+
+        public LoadBalancing getLoadBalancer() {
+            return loadBalancer;
+        }
+
+        public CircuitBreakerConfig getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public Deadline getDeadline() {
+            return deadline;
+        }
+    }
+
+    /**
+     * Sends the requests matching a Host header and/or a path prefix to a pool.
+     */
+    public static class Route {
+        /**
+         * Host of the requests, without the port. Matched case-insensitively. Any host if not set.
+         */
+        private String host;
+        /**
+         * Path prefix of the requests, matched on whole segments: {@code /scores} matches {@code /scores/top}, not
+         * {@code /scoresheet}. Any path if not set.
+         */
+        private String pathPrefix;
+        /**
+         * Name of the pool, {@code default} for the top-level instances.
+         */
+        private String pool;
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public String getPathPrefix() {
+            return pathPrefix;
+        }
+
+        public void setPathPrefix(String pathPrefix) {
+            this.pathPrefix = pathPrefix;
+        }
+
+        public String getPool() {
+            return pool;
+        }
+
+        public void setPool(String pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * HTTP server of the standalone mode ({@link StandaloneRouter}). The port is {@code server.port}, as in the Spring mode.
+     */
+    public static class Standalone {
+        /**
+         * Threads reading the requests and writing the responses. 0 for twice the number of processors.
+         */
+        private int threads = 0;
+        /**
+         * Maximum number of connections waiting to be accepted. 0 for the system default.
+         */
+        private int backlog = 1024;
+        /**
+         * Threads running the batches, each one for a whole batch: further batches are rejected with a 503 until one
+         * ends, so that batches cannot take the threads of the other requests.
+         */
+        private int batchThreads = 4;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getBacklog() {
+            return backlog;
+        }
+
+        public void setBacklog(int backlog) {
+            this.backlog = backlog;
+        }
+
+        public int getBatchThreads() {
+            return batchThreads;
+        }
+
+        public void setBatchThreads(int batchThreads) {
+            this.batchThreads = batchThreads;
+        }
+    }
+
+    /**
+     * Upstream connections, kept alive and pooled per Application API instance.
+     */
+    public static class ConnectionPool {
+        /**
+         * Maximum number of connections per Application API instance.
+         */
+        private int maxConnections = 64;
+        /**
+         * Timeout to establish a connection to an Application API instance.
+         */
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        /**
+         * Timeout waiting for the Application API response (socket inactivity).
+         */
+        private Duration readTimeout = Duration.ofSeconds(30);
+        /**
+         * Timeout waiting for a connection from the pool, when all connections are in use.
+         */
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+        /**
+         * Connections idle for longer than this are evicted from the pool.
+         */
+        private Duration idleTimeout = Duration.ofSeconds(30);
+        /**
+         * Use HTTP/2 (prior knowledge for http, ALPN for https), multiplexing all requests to an instance on a single
+         * connection. Only supported by the ASYNC forwarding engine.
+         */
+        private boolean http2 = false;
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public Duration getAcquireTimeout() {
+            return acquireTimeout;
+        }
+
+        public void setAcquireTimeout(Duration acquireTimeout) {
+            this.acquireTimeout = acquireTimeout;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public boolean isHttp2() {
+            return http2;
+        }
+
+        public void setHttp2(boolean http2) {
+            this.http2 = http2;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.maxime.router;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Requests to any other path, sent to the pool of their route in the {@link RoutingTable}. The more specific mappings
+ * of the other controllers take precedence.
+ */
+@RestController
+public class RoutesController {
+
+    private final RoutingTable routingTable;
+
+    public RoutesController(RoutingTable routingTable) {
+        this.routingTable = routingTable;
+    }
+
+    @PostMapping("/**")
+    public CompletableFuture<ResponseEntity<byte[]>> routeRequest(@RequestHeader HttpHeaders requestHeaders,
+                                                                  @RequestBody(required = false) byte[] requestBody,
+                                                                  HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        RequestDispatcher requestDispatcher = routingTable.route(requestHeaders.getFirst(HttpHeaders.HOST), path);
+        if (requestDispatcher == null) {
+            return CompletableFuture.completedFuture(Responses.errorResponse(HttpStatus.NOT_FOUND,
+                    "No route matches the request. The request was not processed."));
+        }
+        return requestDispatcher.dispatch(requestHeaders, requestBody);
+    }
+}
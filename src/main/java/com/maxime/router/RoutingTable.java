@@ -0,0 +1,272 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Routes the requests to the pools of Application API instances, each with its own {@link RequestDispatcher}, by Host
+ * header and path prefix.
+ * <p>
+ * The routes are compiled once into character tries: the host trie leads to a path trie per host, and another path
+ * trie holds the routes for any host. Finding the route of a request walks its host and path once, with a binary search
+ * among the children of each node: the cost depends on the length of the request path, not on the number of routes,
+ * and nothing is allocated.
+ * <p>
+ * The routes of the request host take precedence over the routes for any host. Hosts are compared without their case
+ * and port, IPv6 addresses in brackets as in a Host header. Among the matching routes, the longest path prefix wins.
+ * Prefixes only match whole path segments.
+ */
+public class RoutingTable {
+
+    public static final String DEFAULT_POOL = "default";
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingTable.class);
+
+    private final Map<String, RequestDispatcher> pools;
+
+    /**
+     * Path tries, by host.
+     */
+    private final Node<Node<RequestDispatcher>> hosts;
+
+    /**
+     * Null if there is no route for any host.
+     */
+    private final Node<RequestDispatcher> anyHostPaths;
+
+    /**
+     * A table without routes: the requests only go to the {@code default} pool.
+     */
+    public RoutingTable(RequestDispatcher defaultDispatcher) {
+        this(defaultDispatcher, Map.of(), List.of());
+    }
+
+    /**
+     * @param pools dispatchers of the other pools, by name
+     */
+    public RoutingTable(RequestDispatcher defaultDispatcher, Map<String, RequestDispatcher> pools,
+                        List<RouterProperties.Route> routes) {
+        Map<String, RequestDispatcher> allPools = new LinkedHashMap<>();
+        allPools.put(DEFAULT_POOL, defaultDispatcher);
+        for (Map.Entry<String, RequestDispatcher> pool : pools.entrySet()) {
+            if (allPools.put(pool.getKey(), pool.getValue()) != null) {
+                throw new IllegalArgumentException("The " + DEFAULT_POOL + " pool is the top-level configuration of the router.");
+            }
+        }
+        this.pools = Collections.unmodifiableMap(allPools);
+
+        TreeMap<String, NodeBuilder<RequestDispatcher>> hostPaths = new TreeMap<>();
+        NodeBuilder<RequestDispatcher> anyHost = null;
+        for (RouterProperties.Route route : routes) {
+            RequestDispatcher dispatcher = allPools.get(route.getPool());
+            if (dispatcher == null) {
+                throw new IllegalArgumentException("Unknown pool " + route.getPool() + " in the route to "
+                        + describe(route) + ". Pools: " + allPools.keySet());
+            }
+            if (route.getHost() == null && route.getPathPrefix() == null) {
+                throw new IllegalArgumentException("The route to the pool " + route.getPool() + " needs a host or a path prefix.");
+            }
+            String pathPrefix = normalizePathPrefix(route.getPathPrefix());
+            NodeBuilder<RequestDispatcher> paths;
+            if (route.getHost() != null) {
+                paths = hostPaths.computeIfAbsent(normalizeHost(route.getHost()), host -> new NodeBuilder<>());
+            } else {
+                if (anyHost == null) {
+                    anyHost = new NodeBuilder<>();
+                }
+                paths = anyHost;
+            }
+            if (!paths.put(pathPrefix, dispatcher)) {
+                throw new IllegalArgumentException("Duplicate route to " + describe(route) + ".");
+            }
+            logger.info("Routing {} to the {} pool.", describe(route), route.getPool());
+        }
+        NodeBuilder<Node<RequestDispatcher>> hostsBuilder = new NodeBuilder<>();
+        for (Map.Entry<String, NodeBuilder<RequestDispatcher>> host : hostPaths.entrySet()) {
+            hostsBuilder.put(host.getKey(), host.getValue().compile());
+        }
+        this.hosts = hostsBuilder.compile();
+        this.anyHostPaths = anyHost == null ? null : anyHost.compile();
+    }
+
+    /**
+     * @param host Host header of the request, with or without a port. Can be null.
+     * @param path path of the request, without its query string
+     * @return the dispatcher of the pool of the request, or null if no route matches
+     */
+    public RequestDispatcher route(String host, String path) {
+        if (host != null) {
+            Node<RequestDispatcher> hostPaths = findHost(host);
+            if (hostPaths != null) {
+                RequestDispatcher dispatcher = findPathPrefix(hostPaths, path);
+                if (dispatcher != null) {
+                    return dispatcher;
+                }
+            }
+        }
+        return anyHostPaths == null ? null : findPathPrefix(anyHostPaths, path);
+    }
+
+    public RequestDispatcher getDefaultDispatcher() {
+        return pools.get(DEFAULT_POOL);
+    }
+
+    /**
+     * @return the dispatchers of the pools by name, the {@code default} one first
+     */
+    public Map<String, RequestDispatcher> getPools() {
+        return pools;
+    }
+
+    /**
+     * Exact match of the host, ignoring its case and port.
+     */
+    private Node<RequestDispatcher> findHost(String host) {
+        Node<Node<RequestDispatcher>> node = hosts;
+        int end = hostEnd(host);
+        for (int i = 0; i < end; i++) {
+            node = node.child(Character.toLowerCase(host.charAt(i)));
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Longest prefix of the path ending on a segment boundary.
+     */
+    private static RequestDispatcher findPathPrefix(Node<RequestDispatcher> root, String path) {
+        Node<RequestDispatcher> node = root;
+        RequestDispatcher match = null;
+        int length = path.length();
+        for (int i = 0; ; i++) {
+            if (node.value != null && (i == length || path.charAt(i) == '/' || (i > 0 && path.charAt(i - 1) == '/'))) {
+                match = node.value;
+            }
+            if (i == length) {
+                return match;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return match;
+            }
+        }
+    }
+
+    /**
+     * @return the end of the host name, before its port if it has one
+     */
+    private static int hostEnd(String host) {
+        if (host.startsWith("[")) {
+            // IPv6 address: the port can only follow the closing bracket
+            int closingBracket = host.indexOf(']');
+            return closingBracket < 0 ? host.length() : closingBracket + 1;
+        }
+        int colon = host.indexOf(':');
+        if (colon < 0 || host.indexOf(':', colon + 1) >= 0) {
+            // No port, or an IPv6 address without brackets
+            return host.length();
+        }
+        return colon;
+    }
+
+    /**
+     * @return the host of a route as it is found in the Host headers: in lower case, without its port, and an IPv6
+     * address in brackets
+     */
+    private static String normalizeHost(String host) {
+        String normalized = host.substring(0, hostEnd(host)).toLowerCase(Locale.ROOT);
+        return normalized.indexOf(':') >= 0 && !normalized.startsWith("[") ? "[" + normalized + "]" : normalized;
+    }
+
+    /**
+     * @return the prefix with a leading slash and without a trailing one, {@code /} for any path
+     */
+    private static String normalizePathPrefix(String pathPrefix) {
+        if (pathPrefix == null || pathPrefix.isEmpty()) {
+            return "/";
+        }
+        String normalized = pathPrefix.startsWith("/") ? pathPrefix : "/" + pathPrefix;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static String describe(RouterProperties.Route route) {
+        return (route.getHost() != null ? route.getHost() : "*") + normalizePathPrefix(route.getPathPrefix());
+    }
+
+    /**
+     * Compiled trie node: the labels of its children are sorted, for a binary search.
+     */
+    private static final class Node<T> {
+        private final char[] labels;
+        private final Node<T>[] children;
+        private final T value;
+
+        private Node(char[] labels, Node<T>[] children, T value) {
+            this.labels = labels;
+            this.children = children;
+            this.value = value;
+        }
+
+        private Node<T> child(char label) {
+            int low = 0;
+            int high = labels.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char middleLabel = labels[middle];
+                if (middleLabel < label) {
+                    low = middle + 1;
+                } else if (middleLabel > label) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class NodeBuilder<T> {
+        private final TreeMap<Character, NodeBuilder<T>> children = new TreeMap<>();
+        private T value;
+
+        /**
+         * @return false if the key already has a value
+         */
+        private boolean put(String key, T value) {
+            NodeBuilder<T> node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), label -> new NodeBuilder<>());
+            }
+            if (node.value != null) {
+                return false;
+            }
+            node.value = value;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> compile() {
+            char[] labels = new char[children.size()];
+            List<Node<T>> compiledChildren = new ArrayList<>(children.size());
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder<T>> child : children.entrySet()) {
+                labels[i++] = child.getKey();
+                compiledChildren.add(child.getValue().compile());
+            }
+            return new Node<>(labels, compiledChildren.toArray(new Node[0]), value);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.maxime.router;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Standalone data plane: the router without the Spring context and Tomcat, on the JDK HTTP server (one selector thread
+ * accepting and reading the connections, and a small pool of threads handling the exchanges). Batches, which hold a
+ * thread until their last result, run on a separate bounded pool.
+ * <p>
+ * The components are the ones of the Spring mode, built by the {@link RouterConfiguration} methods, and the
+ * configuration is the same: {@code application.properties}, system properties, environment variables and
+ * {@code --name=value} arguments, bound by the Spring Boot {@link Binder}. It serves:
+ * <ul>
+ *     <li>{@code POST /api/router}, {@code POST /api/router/batch} and the routes of the {@link RoutingTable}, like
+ *     the Spring mode.</li>
+ *     <li>{@code GET /metrics}.</li>
+ * </ul>
+ * The admin endpoints ({@code /api/router/instances}, {@code /api/router/pools}) are only available in the Spring mode:
+ * the instances can still be updated with {@code router.instances.file}.
+ * <p>
+ * Start it with {@code java -jar router.jar --standalone}.
+ */
+public class StandaloneRouter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandaloneRouter.class);
+
+    private static final String BATCH_PATH = "/api/router/batch";
+
+    private static final String METRICS_PATH = "/metrics";
+
+    static {
+        // Otherwise the response headers and body, written separately, are delayed by Nagle's algorithm
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Closed in reverse order.
+     */
+    private final Deque<AutoCloseable> resources = new ArrayDeque<>();
+
+    private final RoutingTable routingTable;
+
+    private final BatchDispatcher batchDispatcher;
+
+    private final PrometheusMetrics prometheusMetrics;
+
+    private final ExecutorService executor;
+
+    /**
+     * A batch holds its thread until its last result is written.
+     */
+    private final ThreadPoolExecutor batchExecutor;
+
+    private final HttpServer server;
+
+    public StandaloneRouter(RouterProperties routerProperties, int port) throws IOException {
+        try {
+            RouterConfiguration configuration = new RouterConfiguration();
+            TimerWheel timerWheel = register(configuration.timerWheel(routerProperties));
+            ForwardingEngine forwardingEngine = configuration.forwardingEngine(routerProperties);
+            if (forwardingEngine instanceof AutoCloseable) {
+                register((AutoCloseable) forwardingEngine);
+            }
+            InstanceRegistry instanceRegistry = register(configuration.instanceRegistry(routerProperties, timerWheel));
+            if (routerProperties.getInstances().getFile() != null) {
+                register(configuration.instanceListFile(routerProperties, instanceRegistry));
+            }
+            if (routerProperties.getHealthCheck().isEnabled()) {
+                register(configuration.healthChecker(instanceRegistry, forwardingEngine, routerProperties));
+            }
+            RequestDispatcher requestDispatcher = configuration.requestDispatcher(instanceRegistry, forwardingEngine,
+                    timerWheel, configuration.idempotencyCache(routerProperties), routerProperties);
+            this.routingTable = configuration.routingTable(requestDispatcher, forwardingEngine, timerWheel, routerProperties);
+            this.batchDispatcher = configuration.batchDispatcher(requestDispatcher, routerProperties);
+            this.prometheusMetrics = new PrometheusMetrics(routingTable);
+
+            RouterProperties.Standalone standaloneConfig = routerProperties.getStandalone();
+            int threads = standaloneConfig.getThreads() > 0
+                    ? standaloneConfig.getThreads()
+                    : 2 * Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "router-http-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            int batchThreads = Math.max(1, standaloneConfig.getBatchThreads());
+            AtomicInteger batchThreadCount = new AtomicInteger();
+            // No queue: when all the batch threads are busy, the batch is rejected
+            this.batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 0, TimeUnit.MILLISECONDS,
+                    new SynchronousQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "router-batch-" + batchThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.server = HttpServer.create(new InetSocketAddress(port), standaloneConfig.getBacklog());
+            this.server.createContext("/", this::handle);
+            this.server.setExecutor(executor);
+            this.server.start();
+        } catch (IOException | RuntimeException e) {
+            closeResources();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long startTime = System.nanoTime();
+        StandaloneRouter router = start(args);
+        Runtime.getRuntime().addShutdownHook(new Thread(router::close, "router-shutdown"));
+        logger.info("Started standalone router on port {} in {} ms", router.getPort(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * @param args {@code --name=value} configuration properties, taking precedence over the other sources
+     */
+    public static StandaloneRouter start(String... args) throws IOException {
+        ConfigurableEnvironment environment = environment(args);
+        initializeLogging(environment);
+        Binder binder = Binder.get(environment);
+        RouterProperties routerProperties = binder.bind("router", RouterProperties.class).orElseGet(RouterProperties::new);
+        int port = binder.bind("server.port", Integer.class).orElse(8080);
+        return new StandaloneRouter(routerProperties, port);
+    }
+
+    /**
+     * @return the port the router listens on, the actual one if {@code server.port} was 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        batchExecutor.shutdownNow();
+        closeResources();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        if ("GET".equals(method) && METRICS_PATH.equals(path)) {
+            byte[] metrics = prometheusMetrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, PrometheusMetrics.CONTENT_TYPE);
+            send(exchange, HttpStatus.OK.value(), metrics);
+            return;
+        }
+        if (!"POST".equals(method)) {
+            if (RouterController.ROUTER_PATH.equals(path) || BATCH_PATH.equals(path)) {
+                exchange.getResponseHeaders().set(HttpHeaders.ALLOW, "POST");
+                send(exchange, HttpStatus.METHOD_NOT_ALLOWED.value(), null);
+            } else {
+                send(exchange, HttpStatus.NOT_FOUND.value(), null);
+            }
+            return;
+        }
+        HttpHeaders requestHeaders = new HttpHeaders();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            requestHeaders.addAll(header.getKey(), header.getValue());
+        }
+        if (BATCH_PATH.equals(path)) {
+            try {
+                batchExecutor.execute(() -> routeBatch(exchange, requestHeaders));
+            } catch (RejectedExecutionException e) {
+                send(exchange, Responses.errorResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many batches in progress. You can retry again later."));
+            }
+            return;
+        }
+
+        RequestDispatcher requestDispatcher = routingTable.route(requestHeaders.getFirst(HttpHeaders.HOST), path);
+        if (requestDispatcher == null && RouterController.ROUTER_PATH.equals(path)) {
+            requestDispatcher = routingTable.getDefaultDispatcher();
+        }
+        if (requestDispatcher == null) {
+            send(exchange, Responses.errorResponse(HttpStatus.NOT_FOUND,
+                    "No route matches the request. The request was not processed."));
+            return;
+        }
+        byte[] requestBody = exchange.getRequestBody().readAllBytes();
+        // The response is written by a handler thread, not by the thread completing the downstream call
+        requestDispatcher.dispatch(requestHeaders, requestBody).whenCompleteAsync((response, throwable) -> {
+            if (throwable != null) {
+                logger.error("Unexpected error while routing the request.", throwable);
+                send(exchange, Responses.errorResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                        "Unexpected error. The request may not have been processed."));
+            } else {
+                send(exchange, response);
+            }
+        }, executor);
+    }
+
+    private void routeBatch(HttpExchange exchange, HttpHeaders requestHeaders) {
+        try (exchange) {
+            // The status is sent with the first results: failures of single records are reported in their result
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, BatchDispatcher.CONTENT_TYPE.toString());
+            exchange.sendResponseHeaders(HttpStatus.OK.value(), 0);
+            batchDispatcher.dispatch(requestHeaders, exchange.getRequestBody(), exchange.getResponseBody());
+        } catch (IOException e) {
+            logger.debug("Could not process the batch: {}", e.getMessage());
+        }
+    }
+
+    private static void send(HttpExchange exchange, ResponseEntity<byte[]> response) {
+        Headers responseHeaders = exchange.getResponseHeaders();
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            if (ForwardedHeaders.isForwarded(header.getKey())) {
+                responseHeaders.put(header.getKey(), header.getValue());
+            }
+        }
+        send(exchange, response.getStatusCode().value(), response.getBody());
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) {
+        try (exchange) {
+            int length = body == null ? 0 : body.length;
+            exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+            if (length > 0) {
+                try (OutputStream responseBody = exchange.getResponseBody()) {
+                    responseBody.write(body);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send the response to the client: {}", e.getMessage());
+        }
+    }
+
+    private <T extends AutoCloseable> T register(T resource) {
+        resources.push(resource);
+        return resource;
+    }
+
+    private void closeResources() {
+        while (!resources.isEmpty()) {
+            AutoCloseable resource = resources.pop();
+            try {
+                resource.close();
+            } catch (Exception e) {
+                logger.warn("Could not close {}: {}", resource.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Same sources as the Spring mode, by precedence: arguments, system properties, environment variables, and
+     * {@code application.properties}.
+     */
+    private static ConfigurableEnvironment environment(String[] args) throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        ClassPathResource applicationProperties = new ClassPathResource("application.properties");
+        if (applicationProperties.exists()) {
+            environment.getPropertySources().addLast(new ResourcePropertySource("application.properties", applicationProperties));
+        }
+        return environment;
+    }
+
+    /**
+     * Spring Boot default logging configuration, with the {@code logging.level.*} properties.
+     */
+    private static void initializeLogging(ConfigurableEnvironment environment) {
+        LoggingSystem loggingSystem = LoggingSystem.get(StandaloneRouter.class.getClassLoader());
+        loggingSystem.beforeInitialize();
+        loggingSystem.initialize(new LoggingInitializationContext(environment), null, null);
+        Binder.get(environment).bind("logging.level", Bindable.mapOf(String.class, LogLevel.class))
+                .ifBound(levels -> levels.forEach((name, level) ->
+                        loggingSystem.setLogLevel("root".equalsIgnoreCase(name) ? null : name, level)));
+    }
+}
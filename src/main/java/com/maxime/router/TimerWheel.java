@@ -0,0 +1,204 @@
+package com.maxime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel, shared by all the requests to enforce their deadlines.
+ * <p>
+ * A single thread advances the wheel every {@code tickDuration}, and runs the timeouts of the current bucket.
+ * Scheduling only appends the timeout to a lock-free queue, drained by the wheel thread on the next tick; cancelling
+ * only flips the state of the timeout, which is dropped from its bucket when the wheel goes over it.
+ * Both are O(1), whatever the number of pending timeouts, and no thread or scheduled task is created per request.
+ * <p>
+ * Timeouts fire up to one tick late, and their task runs on the wheel thread: it must be short and must not block.
+ * Tasks which may take longer or block (e.g. sending a request, taking a lock) are {@link #scheduleOffWheel scheduled
+ * off the wheel}: they are handed to a small executor when their timeout fires.
+ */
+public class TimerWheel implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+
+    private final List<Timeout>[] buckets;
+
+    private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final long startNanos = System.nanoTime();
+
+    private final Thread workerThread;
+
+    /**
+     * Runs the tasks scheduled off the wheel. Its threads are only started when needed, and stopped when idle.
+     */
+    private final ThreadPoolExecutor taskExecutor;
+
+    private volatile boolean closed;
+
+    public TimerWheel() {
+        this(Duration.ofMillis(10));
+    }
+
+    public TimerWheel(Duration tickDuration) {
+        this(tickDuration, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Duration tickDuration, int wheelSize) {
+        if (tickDuration.toNanos() <= 0 || wheelSize < 1) {
+            throw new IllegalArgumentException("The tick duration and the wheel size of the timer wheel must be positive.");
+        }
+        this.tickNanos = tickDuration.toNanos();
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.workerThread = new Thread(this::run, "router-timer-wheel");
+        this.workerThread.setDaemon(true);
+        AtomicInteger taskThreadsCount = new AtomicInteger();
+        int taskThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.taskExecutor = new ThreadPoolExecutor(taskThreads, taskThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "router-timer-task-" + taskThreadsCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.taskExecutor.allowCoreThreadTimeOut(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * Schedule a task to run once, after the given delay.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("The timer wheel is closed.");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Schedule a task which may take longer or block: when the timeout fires, the task runs on a separate executor,
+     * so that it does not delay the other timeouts.
+     */
+    public Timeout scheduleOffWheel(Runnable task, long delay, TimeUnit unit) {
+        return schedule(() -> {
+            try {
+                taskExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The timer wheel is closed
+            }
+        }, delay, unit);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(workerThread);
+        taskExecutor.shutdownNow();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!closed) {
+            long tickDeadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos;
+            while ((sleepNanos = tickDeadline - System.nanoTime()) > 0 && !closed) {
+                LockSupport.parkNanos(this, sleepNanos);
+            }
+            transferScheduledTimeouts(tick);
+            expireTimeouts(buckets[(int) (tick & (buckets.length - 1))]);
+            tick++;
+        }
+    }
+
+    private void transferScheduledTimeouts(long currentTick) {
+        Timeout timeout;
+        while ((timeout = scheduledTimeouts.poll()) != null) {
+            if (timeout.state.get() == Timeout.CANCELLED) {
+                continue;
+            }
+            long deadlineTick = Math.max(currentTick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+            buckets[(int) (deadlineTick & (buckets.length - 1))].add(timeout);
+        }
+    }
+
+    private static void expireTimeouts(List<Timeout> bucket) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.remainingRounds > 0 && timeout.state.get() == Timeout.PENDING) {
+                timeout.remainingRounds--;
+                i++;
+                continue;
+            }
+            // Swap-remove: the order of the timeouts in a bucket does not matter
+            bucket.set(i, bucket.get(bucket.size() - 1));
+            bucket.remove(bucket.size() - 1);
+            timeout.expire();
+        }
+    }
+
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        /**
+         * Only accessed by the wheel thread.
+         */
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * @return false if the task already ran, or the timeout was already cancelled
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Timeout task failed.", e);
+            }
+        }
+    }
+}
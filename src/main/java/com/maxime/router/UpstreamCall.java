@@ -0,0 +1,299 @@
+package com.maxime.router;
+
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.util.DeadlineTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A request forwarded to an Application API instance, under a deadline.
+ * <p>
+ * Two timeouts are scheduled on the shared {@link TimerWheel}:
+ * <ul>
+ *     <li>at the slow call duration threshold of the instance, a failure is reported to its Circuit Breaker right away,
+ *     without waiting for the response. If {@code failFastOnSlowCall}, the client is answered with a 504.</li>
+ *     <li>at the deadline, the client is answered with a 504.</li>
+ * </ul>
+ * When the router stops waiting, the downstream call is cancelled or detached, according to the {@code timeoutAction}.
+ * <p>
+ * The outcome of the call is reported to the Circuit Breaker exactly once: by the first of the timeouts or the response.
+ * <p>
+ * A failed call is {@link #isRetryable() retryable} when the request was never sent to the instance (connection refused,
+ * no connection available): it can then be sent to another instance, even if the Application API is not idempotent.
+ */
+final class UpstreamCall {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCall.class);
+
+    private final ApplicationApiInstance applicationApiInstance;
+
+    private final CircuitBreaker.Permission permission;
+
+    private final RouterProperties.Deadline deadlineConfig;
+
+    private final long startTime = System.nanoTime();
+
+    private final CompletableFuture<ResponseEntity<byte[]>> result = new CompletableFuture<>();
+
+    private final AtomicBoolean outcomeReported = new AtomicBoolean();
+
+    /**
+     * Set by the first of the deadline or the response: the other one is ignored.
+     */
+    private final AtomicBoolean answered = new AtomicBoolean();
+
+    private volatile CompletableFuture<ResponseEntity<byte[]>> downstreamCall;
+
+    private volatile boolean retryable;
+
+    /**
+     * Set when the router stopped waiting at the deadline: a late response is not a latency sample of the instance.
+     */
+    private volatile boolean expired;
+
+    private UpstreamCall(ApplicationApiInstance applicationApiInstance, CircuitBreaker.Permission permission,
+                         RouterProperties.Deadline deadlineConfig) {
+        this.applicationApiInstance = applicationApiInstance;
+        this.permission = permission;
+        this.deadlineConfig = deadlineConfig;
+    }
+
+    /**
+     * Forward the request. The circuit permission of the instance, and a slot of its {@link ConcurrencyLimiter}, must
+     * already be acquired. The slot is released when the downstream call ends, even if it is detached.
+     *
+     * @param permission    circuit permission of the instance, released if the call ends without an outcome
+     * @param headers       end-to-end headers of the request, shared by its attempts: not modified
+     * @param deadlineNanos {@link System#nanoTime()} at which the router stops waiting for the response
+     */
+    static UpstreamCall send(ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                             RouterProperties.Deadline deadlineConfig, ApplicationApiInstance applicationApiInstance,
+                             CircuitBreaker.Permission permission, HttpHeaders headers, byte[] body, long deadlineNanos) {
+        UpstreamCall upstreamCall = new UpstreamCall(applicationApiInstance, permission, deadlineConfig);
+        upstreamCall.send(forwardingEngine, timerWheel, headers, body, deadlineNanos);
+        return upstreamCall;
+    }
+
+    ApplicationApiInstance getApplicationApiInstance() {
+        return applicationApiInstance;
+    }
+
+    /**
+     * @return the response to send back to the client. It is never completed if the call is {@link #abandon() abandoned}.
+     */
+    CompletableFuture<ResponseEntity<byte[]>> getResponse() {
+        return result;
+    }
+
+    /**
+     * @return if the call failed before the request was sent to the instance. Only meaningful once the response is completed.
+     */
+    boolean isRetryable() {
+        return retryable;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Stop waiting for the call, because the client was answered by another call: the call is cancelled or detached,
+     * and its outcome is not reported.
+     */
+    void abandon() {
+        if (!answered.compareAndSet(false, true)) {
+            return;
+        }
+        releasePermission();
+        CompletableFuture<ResponseEntity<byte[]>> call = downstreamCall;
+        if (call != null && deadlineConfig.getTimeoutAction() == RouterProperties.TimeoutAction.CANCEL) {
+            call.cancel(true);
+        }
+    }
+
+    private void send(ForwardingEngine forwardingEngine, TimerWheel timerWheel,
+                      HttpHeaders headers, byte[] body, long deadlineNanos) {
+        long budgetNanos = deadlineNanos - startTime;
+        // The attempts of a request run concurrently, on different threads: each one gets its own headers
+        HttpHeaders attemptHeaders = new HttpHeaders();
+        attemptHeaders.addAll(headers);
+        attemptHeaders.set(deadlineConfig.getHeader(), String.valueOf(TimeUnit.NANOSECONDS.toMillis(budgetNanos)));
+
+        // Scheduled before forwarding: with the blocking engine, forward only returns once the response is received
+        long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(applicationApiInstance.getSlowCallDurationThresholdMs());
+        TimerWheel.Timeout slowCallTimeout = slowCallNanos < budgetNanos
+                ? timerWheel.schedule(this::onSlowCallThreshold, slowCallNanos, TimeUnit.NANOSECONDS) : null;
+        TimerWheel.Timeout deadlineTimeout = timerWheel.schedule(this::onDeadline, budgetNanos, TimeUnit.NANOSECONDS);
+
+        applicationApiInstance.getLoad().onRequestStart();
+        applicationApiInstance.getMetrics().onRequest();
+        downstreamCall = forwardingEngine.forward(applicationApiInstance, attemptHeaders, body);
+        downstreamCall.whenComplete((response, throwable) -> {
+            if (slowCallTimeout != null) {
+                slowCallTimeout.cancel();
+            }
+            deadlineTimeout.cancel();
+            onCompletion(response, throwable);
+        });
+    }
+
+    private void onSlowCallThreshold() {
+        long durationMs = elapsedMs();
+        applicationApiInstance.getMetrics().onSlowCall();
+        if (reportFailure(durationMs)) {
+            logger.warn("Downstream server {} did not answer within {} MS: reporting a failure.",
+                    applicationApiInstance.getApplicationApiUrl(), durationMs);
+        }
+        if (deadlineConfig.isFailFastOnSlowCall()) {
+            onDeadline();
+        }
+    }
+
+    private void onDeadline() {
+        if (!answered.compareAndSet(false, true)) {
+            return;
+        }
+        expired = true;
+        applicationApiInstance.getConcurrencyLimiter().onDropped();
+        reportFailure(elapsedMs());
+        logger.warn("Downstream server {} did not answer before the deadline: the call is {}.",
+                applicationApiInstance.getApplicationApiUrl(), deadlineConfig.getTimeoutAction());
+        // With the blocking engine, the deadline can expire before forward returns: there is nothing to cancel then
+        CompletableFuture<ResponseEntity<byte[]>> call = downstreamCall;
+        if (call != null && deadlineConfig.getTimeoutAction() == RouterProperties.TimeoutAction.CANCEL) {
+            call.cancel(true);
+        }
+        result.complete(Responses.errorResponse(HttpStatus.GATEWAY_TIMEOUT,
+                "The downstream server did not answer in time. You can retry again."));
+    }
+
+    private void onCompletion(ResponseEntity<byte[]> response, Throwable throwable) {
+        long durationNanos = System.nanoTime() - startTime;
+        applicationApiInstance.getLoad().onRequestEnd(durationNanos);
+        if (throwable == null) {
+            applicationApiInstance.getMetrics().onResponse(durationNanos);
+        }
+        if (throwable == null && !expired) {
+            applicationApiInstance.getConcurrencyLimiter().onResponse(durationNanos);
+        } else {
+            applicationApiInstance.getConcurrencyLimiter().release();
+        }
+        if (!answered.compareAndSet(false, true)) {
+            // The client was already answered by the deadline: the outcome of a detached call is ignored
+            return;
+        }
+
+        // If the slow call threshold was reached, the failure is already reported: the response is still returned
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        try {
+            if (throwable == null) {
+                onResponse(response, durationMs);
+                result.complete(response);
+            } else {
+                result.complete(onError(unwrap(throwable), durationMs));
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void onResponse(ResponseEntity<byte[]> response, long durationMs) {
+        if (Responses.isServerError(response)) {
+            logger.warn("Downstream server {} returned an HTTP error: {}",
+                    applicationApiInstance.getApplicationApiUrl(), response.getStatusCode());
+            reportFailure(durationMs);
+        } else {
+            if (applicationApiInstance.isSlowCall(durationMs)) {
+                logger.warn("Downstream server {} took too long to answer: {} MS.",
+                        applicationApiInstance.getApplicationApiUrl(), durationMs);
+            }
+            // Slow calls are recorded as such by the Circuit Breaker
+            reportSuccess(durationMs);
+        }
+    }
+
+    private ResponseEntity<byte[]> onError(Throwable error, long durationMs) {
+        if (hasCause(error, ConnectionRequestTimeoutException.class) || hasCause(error, DeadlineTimeoutException.class)) {
+            // All the connections to this instance are in use: the router is saturated, not the downstream server.
+            // Lease timeouts only (blocking and async pools): any other timeout may come after the request was sent
+            logger.warn("No connection available to downstream server: {}", applicationApiInstance.getApplicationApiUrl());
+            releasePermission();
+            retryable = true;
+            return Responses.errorResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many concurrent requests. You can retry again later.");
+        }
+        if (error instanceof ResourceAccessException || error instanceof IOException || error instanceof TimeoutException) {
+            if (hasCause(error, ConnectException.class)) {
+                logger.warn("Downstream server down: {}", applicationApiInstance.getApplicationApiUrl());
+                reportFailure(durationMs);
+                retryable = true;
+            } else if (hasCause(error, SocketTimeoutException.class) || hasCause(error, TimeoutException.class)) {
+                logger.warn("Downstream server {} timed out.", applicationApiInstance.getApplicationApiUrl());
+                reportFailure(durationMs);
+            } else {
+                releasePermission();
+            }
+            return Responses.errorResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                    "The downstream server is down. You can retry again.");
+        }
+        logger.error("Error processing the request for server: {}", applicationApiInstance.getApplicationApiUrl(), error);
+        reportFailure(durationMs);
+        throw new CompletionException(error);
+    }
+
+    /**
+     * @return true if this is the first outcome reported for this call
+     */
+    private boolean reportFailure(long durationMs) {
+        if (!outcomeReported.compareAndSet(false, true)) {
+            return false;
+        }
+        applicationApiInstance.reportFailure(permission, durationMs);
+        return true;
+    }
+
+    private void reportSuccess(long durationMs) {
+        if (outcomeReported.compareAndSet(false, true)) {
+            applicationApiInstance.reportSuccess(permission, durationMs);
+        }
+    }
+
+    private void releasePermission() {
+        if (outcomeReported.compareAndSet(false, true)) {
+            applicationApiInstance.releasePermission(permission);
+        }
+    }
+
+    private long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> causeType) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (causeType.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
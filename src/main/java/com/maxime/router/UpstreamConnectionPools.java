@@ -0,0 +1,94 @@
+package com.maxime.router;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Builds the upstream connection pools from the {@link RouterProperties.ConnectionPool} configuration.
+ * <p>
+ * Apache HttpClient pools connections per route: each Application API instance (i.e. each host and port)
+ * gets its own pool of kept-alive connections, limited to {@code maxConnections}.
+ */
+final class UpstreamConnectionPools {
+
+    private UpstreamConnectionPools() {
+    }
+
+    static PoolingAsyncClientConnectionManager asyncConnectionManager(RouterProperties.ConnectionPool config) {
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setMaxConnPerRoute(config.getMaxConnections())
+                // Only the per instance limit applies
+                .setMaxConnTotal(Integer.MAX_VALUE)
+                .setDefaultConnectionConfig(connectionConfig(config))
+                .build();
+    }
+
+    static PoolingHttpClientConnectionManager classicConnectionManager(RouterProperties.ConnectionPool config) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setMaxConnPerRoute(config.getMaxConnections())
+                .setMaxConnTotal(Integer.MAX_VALUE)
+                .setDefaultConnectionConfig(connectionConfig(config))
+                .build();
+    }
+
+    static ConnectionConfig connectionConfig(RouterProperties.ConnectionPool config) {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(timeout(config.getConnectTimeout()))
+                .setSocketTimeout(timeout(config.getReadTimeout()))
+                // Check that a kept-alive connection is still usable if it has been idle for a while
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+    }
+
+    static RequestConfig requestConfig(RouterProperties.ConnectionPool config) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout(config.getAcquireTimeout()))
+                .setResponseTimeout(timeout(config.getReadTimeout()))
+                .build();
+    }
+
+    /**
+     * Health checks wait for their own timeout, instead of the read timeout of the forwarded requests.
+     */
+    static RequestConfig probeRequestConfig(Duration probeTimeout) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout(probeTimeout))
+                .setResponseTimeout(timeout(probeTimeout))
+                .build();
+    }
+
+    static TimeValue idleTimeout(RouterProperties.ConnectionPool config) {
+        return TimeValue.ofMilliseconds(config.getIdleTimeout().toMillis());
+    }
+
+    /**
+     * @return the route used by Apache HttpClient to pool the connections of the given instance
+     */
+    static HttpRoute route(ApplicationApiInstance applicationApiInstance) {
+        HttpHost target = RoutingSupport.normalize(
+                HttpHost.create(URI.create(applicationApiInstance.getApplicationApiUrl())),
+                DefaultSchemePortResolver.INSTANCE);
+        return new HttpRoute(target, null, URIScheme.HTTPS.same(target.getSchemeName()));
+    }
+
+    private static Timeout timeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+}
@@ -0,0 +1,53 @@
+package com.maxime.router;
+
+import org.apache.hc.core5.pool.PoolStats;
+
+/**
+ * Snapshot of the upstream connection pool of an Application API instance.
+ */
+public class UpstreamPoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int pending;
+    private final int max;
+
+    public UpstreamPoolStats(int active, int idle, int pending, int max) {
+        this.active = active;
+        this.idle = idle;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    static UpstreamPoolStats of(PoolStats poolStats) {
+        return new UpstreamPoolStats(poolStats.getLeased(), poolStats.getAvailable(), poolStats.getPending(), poolStats.getMax());
+    }
+
+    /**
+     * @return number of connections currently used by a request
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return number of kept-alive connections, ready to be reused
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return number of requests waiting for a connection
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return maximum number of connections
+     */
+    public int getMax() {
+        return max;
+    }
+}
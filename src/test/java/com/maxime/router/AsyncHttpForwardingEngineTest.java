@@ -0,0 +1,120 @@
+package com.maxime.router;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncHttpForwardingEngineTest {
+
+    private HttpServer applicationApi;
+
+    private AsyncHttpForwardingEngine forwardingEngine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        applicationApi = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        applicationApi.createContext("/api/endpoint", exchange -> {
+            // Echo the request body and its Content-Type
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+            exchange.getResponseHeaders().add("X-Request-Id", exchange.getRequestHeaders().getFirst("X-Request-Id"));
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        applicationApi.start();
+        forwardingEngine = new AsyncHttpForwardingEngine();
+    }
+
+    @AfterEach
+    void tearDown() {
+        forwardingEngine.close();
+        applicationApi.stop(0);
+    }
+
+    @Test
+    void testForwardRequest() {
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance(
+                "http://localhost:" + applicationApi.getAddress().getPort() + "/api/endpoint");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-Request-Id", "42");
+        byte[] body = "{\"data\":\"request1\"}".getBytes(StandardCharsets.UTF_8);
+
+        ResponseEntity<byte[]> response = forwardingEngine
+                .forward(applicationApiInstance, headers, body)
+                .join();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(body, response.getBody());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals("42", response.getHeaders().getFirst("X-Request-Id"));
+    }
+
+    @Test
+    void testConnectionIsKeptAliveInPool() throws InterruptedException {
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance(
+                "http://localhost:" + applicationApi.getAddress().getPort() + "/api/endpoint");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-Request-Id", "42");
+        UpstreamPoolStats poolStats = null;
+        for (int i = 0; i < 3; i++) {
+            forwardingEngine.forward(applicationApiInstance, headers, "{}".getBytes(StandardCharsets.UTF_8)).join();
+            poolStats = awaitConnectionsReleased(applicationApiInstance);
+        }
+
+        // Sequential requests reuse the same connection, which is back in the pool
+        assertEquals(0, poolStats.getActive());
+        assertEquals(1, poolStats.getIdle());
+        assertEquals(0, poolStats.getPending());
+        assertEquals(new RouterProperties.ConnectionPool().getMaxConnections(), poolStats.getMax());
+    }
+
+    /**
+     * The connection is released to the pool just after the response is completed.
+     */
+    private UpstreamPoolStats awaitConnectionsReleased(ApplicationApiInstance applicationApiInstance) throws InterruptedException {
+        UpstreamPoolStats poolStats = forwardingEngine.getPoolStats(applicationApiInstance);
+        for (int i = 0; i < 100 && poolStats.getActive() > 0; i++) {
+            Thread.sleep(10);
+            poolStats = forwardingEngine.getPoolStats(applicationApiInstance);
+        }
+        return poolStats;
+    }
+
+    @Test
+    void testForwardRequestToServerDown() throws Exception {
+        int unusedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            unusedPort = serverSocket.getLocalPort();
+        }
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance(
+                "http://localhost:" + unusedPort + "/api/endpoint");
+
+        CompletionException exception = assertThrows(CompletionException.class, () -> forwardingEngine
+                .forward(applicationApiInstance, new HttpHeaders(), new byte[0])
+                .join());
+        assertInstanceOf(ConnectException.class, exception.getCause());
+    }
+}
@@ -0,0 +1,158 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class BatchDispatcherTest {
+
+    private final ApplicationApiInstance api1 = new ApplicationApiInstance("http://api1.example.com");
+    private final ApplicationApiInstance api2 = new ApplicationApiInstance("http://api2.example.com");
+
+    private final ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+    private final RouterProperties.Batch batchConfig = new RouterProperties.Batch();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        timerWheel.close();
+    }
+
+    @Test
+    void testResultsAreWrittenInTheOrderOfTheRecords() throws IOException {
+        // The first records are the slowest ones
+        AtomicInteger delayMs = new AtomicInteger(50);
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation ->
+                echo(invocation.getArgument(2), Math.max(0, delayMs.getAndAdd(-10))));
+
+        String results = dispatch("{\"points\":1}\n{\"points\":2}\n{\"points\":3}\n{\"points\":4}\n{\"points\":5}\n");
+
+        assertEquals("""
+                {"index":0,"status":200,"body":{"points":1}}
+                {"index":1,"status":200,"body":{"points":2}}
+                {"index":2,"status":200,"body":{"points":3}}
+                {"index":3,"status":200,"body":{"points":4}}
+                {"index":4,"status":200,"body":{"points":5}}
+                """, results);
+    }
+
+    @Test
+    void testParallelismIsBounded() throws IOException {
+        batchConfig.setMaxParallelism(4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return echo(invocation.getArgument(2), 2).whenComplete((response, throwable) -> inFlight.decrementAndGet());
+        });
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            records.append("{\"points\":").append(i).append("}\n");
+        }
+
+        String results = dispatch(records.toString());
+
+        assertEquals(200, results.lines().count());
+        assertTrue(results.endsWith("{\"index\":199,\"status\":200,\"body\":{\"points\":199}}\n"));
+        assertTrue(maxInFlight.get() <= 4, "Max in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    void testLinesAreSplitIncrementally() throws IOException {
+        batchConfig.setMaxRecordSize(DataSize.ofBytes(20));
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation -> echo(invocation.getArgument(2), 0));
+
+        // Blank lines are skipped, the last record has no new line
+        String results = dispatch("{\"points\":1}\r\n\n   \n{\"game\":\"this record is too large\"}\n{\"points\":2}");
+
+        assertEquals("""
+                {"index":0,"status":200,"body":{"points":1}}
+                {"index":1,"status":413,"body":"Record larger than 20 bytes"}
+                {"index":2,"status":200,"body":{"points":2}}
+                """, results);
+    }
+
+    @Test
+    void testErrorBodiesAreWrittenAsStrings() throws IOException {
+        when(forwardingEngine.forward(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_PLAIN)
+                        .body("Invalid \"points\"\n".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals("{\"index\":0,\"status\":400,\"body\":\"Invalid \\\"points\\\"\\n\"}\n", dispatch("{}\n"));
+    }
+
+    @Test
+    void testInvalidJsonBodiesAreWrittenAsStrings() throws IOException {
+        when(forwardingEngine.forward(any(), any(), any())).thenReturn(
+                json("{\"points\":"), json(""), json("<html>Bad gateway</html>"), json("{\"points\":1} {}"), json("[1,\n2]"));
+
+        assertEquals("""
+                {"index":0,"status":200,"body":"{\\"points\\":"}
+                {"index":1,"status":200}
+                {"index":2,"status":200,"body":"<html>Bad gateway</html>"}
+                {"index":3,"status":200,"body":"{\\"points\\":1} {}"}
+                {"index":4,"status":200,"body":[1, 2]}
+                """, dispatch("{}\n{}\n{}\n{}\n{}\n"));
+        assertTrue(BatchDispatcher.isJsonValue("\"text\"".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(BatchDispatcher.isJsonValue("".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static CompletableFuture<ResponseEntity<byte[]>> json(String body) {
+        return CompletableFuture.completedFuture(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String dispatch(String records) throws IOException {
+        RequestDispatcher requestDispatcher = new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(api1, api2)),
+                forwardingEngine, timerWheel, new RouterProperties.Deadline(), new RouterProperties.Retry());
+        BatchDispatcher batchDispatcher = new BatchDispatcher(requestDispatcher, batchConfig);
+        // Read in small chunks, as from a network stream
+        InputStream input = new ByteArrayInputStream(records.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batchDispatcher.dispatch(new HttpHeaders(), input, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a JSON response with the request body, after the delay
+     */
+    private CompletableFuture<ResponseEntity<byte[]>> echo(byte[] body, long delayMs) {
+        CompletableFuture<ResponseEntity<byte[]>> response = new CompletableFuture<>();
+        scheduler.schedule(() -> response.complete(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body)),
+                delayMs, TimeUnit.MILLISECONDS);
+        return response;
+    }
+}
@@ -3,104 +3,242 @@ package com.maxime.router;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CircuitBreakerTest {
 
+    private static final int WAIT_DURATION_IN_OPEN_STATE_MS = 200;
+
+    private CircuitBreakerConfig config;
+
     private CircuitBreaker circuitBreaker;
 
     @BeforeEach
     void setUp() {
-        circuitBreaker = new CircuitBreaker();
+        config = new CircuitBreakerConfig();
+        config.setSlidingWindowSize(4);
+        config.setMinimumNumberOfCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setSlowCallRateThreshold(75);
+        config.setSlowCallDurationThreshold(Duration.ofMillis(100));
+        config.setWaitDurationInOpenState(Duration.ofMillis(WAIT_DURATION_IN_OPEN_STATE_MS));
+        config.setPermittedNumberOfCallsInHalfOpenState(2);
+        circuitBreaker = new CircuitBreaker(config);
     }
 
     @Test
     void testCircuitStartsClosed() {
         assertTrue(circuitBreaker.acquirePermission());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
     }
 
     @Test
-    void testCircuitOpensAfterFailures() {
+    void testCircuitOpensWhenFailureRateIsReached() {
+        // Not evaluated before the minimum number of calls
+        circuitBreaker.reportFailure();
+        circuitBreaker.reportFailure();
+        circuitBreaker.reportFailure();
         assertTrue(circuitBreaker.acquirePermission());
 
-        // Simulate consecutive failures
-        for (int i = 0; i < CircuitBreaker.CONSECUTIVE_FAILURE_THRESHOLD - 1; i++) {
-            circuitBreaker.reportFailure();
-            assertTrue(circuitBreaker.acquirePermission());
-        }
-
-        // After reaching FAILURE_THRESHOLD, the circuit should be open
-        circuitBreaker.reportFailure();
+        // After reaching the minimum number of calls, the failure rate is 100%
+        circuitBreaker.reportSuccess();
         assertFalse(circuitBreaker.acquirePermission());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
     }
 
     @Test
-    void testCircuitResetsAfterTimeout() throws InterruptedException {
+    void testCircuitStaysClosedBelowFailureRate() {
+        circuitBreaker.reportFailure();
+        circuitBreaker.reportSuccess();
+        circuitBreaker.reportSuccess();
+        circuitBreaker.reportSuccess();
         assertTrue(circuitBreaker.acquirePermission());
 
-        // Simulate consecutive failures
-        for (int i = 0; i < CircuitBreaker.CONSECUTIVE_FAILURE_THRESHOLD - 1; i++) {
-            circuitBreaker.reportFailure();
-            assertTrue(circuitBreaker.acquirePermission());
-        }
+        // Oldest failure leaves the sliding window
+        circuitBreaker.reportFailure();
+        assertTrue(circuitBreaker.acquirePermission());
 
-        // After reaching FAILURE_THRESHOLD, the circuit should be open
+        // 2 failures out of the last 4 calls
         circuitBreaker.reportFailure();
         assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    void testCircuitOpensWhenSlowCallRateIsReached() {
+        long slowCallDurationMs = config.getSlowCallDurationThreshold().toMillis() + 1;
+        circuitBreaker.reportSuccess(slowCallDurationMs);
+        circuitBreaker.reportSuccess(slowCallDurationMs);
+        circuitBreaker.reportSuccess();
+        circuitBreaker.reportSuccess();
+        // Slow calls are not failures
+        assertTrue(circuitBreaker.acquirePermission());
+
+        // 3 slow calls out of the last 4 calls
+        circuitBreaker.reportSuccess(slowCallDurationMs);
+        circuitBreaker.reportSuccess(slowCallDurationMs);
+        assertTrue(circuitBreaker.acquirePermission());
+        circuitBreaker.reportSuccess(slowCallDurationMs);
+        assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    void testCircuitDoesNotMoveToHalfOpenBeforeTimeout() throws InterruptedException {
+        openCircuit();
 
-        // Wait for the circuit breaker to reset (RESET_TIMEOUT)
-        Thread.sleep(CircuitBreaker.RESET_TIMEOUT_MS + 100);
+        // Wait for a shorter time than the wait duration in OPEN state
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS / 2);
 
+        // The circuit should still be open
+        assertFalse(circuitBreaker.acquirePermission());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
 
-        // The circuit should be closed again
+    @Test
+    void testHalfOpenPermitsLimitedTrialCalls() throws InterruptedException {
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
+
+        // Only the permitted trial calls are allowed
+        CircuitBreaker.Permission permission = circuitBreaker.tryAcquirePermission();
+        assertNotNull(permission);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
         assertTrue(circuitBreaker.acquirePermission());
+        assertFalse(circuitBreaker.acquirePermission());
+
+        // A released permission can be used by another trial call
+        circuitBreaker.releasePermission(permission);
         assertTrue(circuitBreaker.acquirePermission());
+        assertFalse(circuitBreaker.acquirePermission());
     }
 
     @Test
-    void testCircuitDoesNotResetBeforeTimeout() throws InterruptedException {
+    void testPermissionAcquiredInAnotherStateDoesNotAddTrialCalls() throws InterruptedException {
+        CircuitBreaker.Permission closedPermission = circuitBreaker.tryAcquirePermission();
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
+        assertTrue(circuitBreaker.acquirePermission());
         assertTrue(circuitBreaker.acquirePermission());
 
-        // Simulate consecutive failures
-        for (int i = 0; i < CircuitBreaker.CONSECUTIVE_FAILURE_THRESHOLD - 1; i++) {
-            circuitBreaker.reportFailure();
-            assertTrue(circuitBreaker.acquirePermission());
-        }
-
-        // After reaching FAILURE_THRESHOLD, the circuit should be open
-        circuitBreaker.reportFailure();
+        // The permission was not a trial call of the HALF_OPEN state
+        circuitBreaker.releasePermission(closedPermission);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
         assertFalse(circuitBreaker.acquirePermission());
+    }
 
-        // Wait for a shorter time than RESET_TIMEOUT
-        Thread.sleep(CircuitBreaker.RESET_TIMEOUT_MS - 100);
+    @Test
+    void testCallPermittedWhileClosedIsNotATrialCallOfHalfOpen() throws InterruptedException {
+        CircuitBreaker.Permission closedPermission = circuitBreaker.tryAcquirePermission();
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
+        CircuitBreaker.Permission trialPermission = circuitBreaker.tryAcquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        // The slow call permitted while CLOSED completes now: the trial calls still decide
+        circuitBreaker.reportFailure(closedPermission, 500);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.reportSuccess(trialPermission, 10);
+        circuitBreaker.reportSuccess(circuitBreaker.tryAcquirePermission(), 10);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
 
-        // The circuit should still be open
-        assertFalse(circuitBreaker.acquirePermission());
+    @Test
+    void testFailuresPermittedBeforeTheCircuitIsClosedAreIgnored() {
+        CircuitBreaker.Permission[] permissions = new CircuitBreaker.Permission[config.getMinimumNumberOfCalls()];
+        for (int i = 0; i < permissions.length; i++) {
+            permissions[i] = circuitBreaker.tryAcquirePermission();
+        }
+        circuitBreaker.transitionToOpenState();
+        circuitBreaker.transitionToClosedState();
+
+        for (CircuitBreaker.Permission permission : permissions) {
+            circuitBreaker.reportFailure(permission, 10);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
     }
 
     @Test
-    void testCircuitIsResetAfterSuccessfulCall() {
+    void testCircuitClosesAfterSuccessfulTrialCalls() throws InterruptedException {
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
+
         assertTrue(circuitBreaker.acquirePermission());
+        assertTrue(circuitBreaker.acquirePermission());
+        circuitBreaker.reportSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.reportSuccess();
 
-        circuitBreaker.reportFailure();
+        // The circuit should be closed again, with a new sliding window
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
         assertTrue(circuitBreaker.acquirePermission());
         circuitBreaker.reportFailure();
         assertTrue(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    void testCircuitOpensAgainAfterFailedTrialCall() throws InterruptedException {
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
 
-        // Reset consecutiveFailuresCount when reportSuccess
-        circuitBreaker.reportSuccess();
         assertTrue(circuitBreaker.acquirePermission());
+        circuitBreaker.reportFailure();
 
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    void testCircuitOpensAgainAfterSlowTrialCall() throws InterruptedException {
+        openCircuit();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS + 50);
 
-        circuitBreaker.reportFailure();
         assertTrue(circuitBreaker.acquirePermission());
-        circuitBreaker.reportFailure();
+        circuitBreaker.reportSuccess(config.getSlowCallDurationThreshold().toMillis() + 1);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < config.getMinimumNumberOfCalls(); i++) {
+            circuitBreaker.reportFailure();
+        }
+        assertFalse(circuitBreaker.acquirePermission());
+    }
+
+    @Test
+    void testCircuitCanBeOpenedAndClosedByHealthChecks() {
+        circuitBreaker.transitionToOpenState();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.acquirePermission());
+
+        circuitBreaker.transitionToClosedState();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
         assertTrue(circuitBreaker.acquirePermission());
 
-        // After reaching FAILURE_THRESHOLD, the circuit should be open
+        // The sliding window starts empty: a single failure does not open the circuit again
         circuitBreaker.reportFailure();
-        assertFalse(circuitBreaker.acquirePermission());
+        assertTrue(circuitBreaker.acquirePermission());
     }
 
+    @Test
+    void testOpeningAnOpenCircuitExtendsItWithoutNotifyingTheListeners() throws InterruptedException {
+        List<CircuitBreaker.State> transitions = new ArrayList<>();
+        circuitBreaker.addStateListener((circuitBreaker, state) -> transitions.add(state));
+
+        circuitBreaker.transitionToOpenState();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS / 2);
+        circuitBreaker.transitionToOpenState();
+        Thread.sleep(WAIT_DURATION_IN_OPEN_STATE_MS / 2 + 50);
+
+        // Still open: the wait duration started again from the second failed health check
+        assertFalse(circuitBreaker.acquirePermission());
+        assertEquals(List.of(CircuitBreaker.State.OPEN), transitions);
+    }
 }
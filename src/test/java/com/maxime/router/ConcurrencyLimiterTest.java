@@ -0,0 +1,107 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final RouterProperties.ConcurrencyLimit config = new RouterProperties.ConcurrencyLimit();
+
+    @Test
+    void testRequestsOverTheLimitAreRejected() {
+        config.setAdaptive(true);
+        config.setInitialLimit(2);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+
+        assertTrue(concurrencyLimiter.tryAcquire());
+        assertTrue(concurrencyLimiter.tryAcquire());
+        assertFalse(concurrencyLimiter.tryAcquire());
+
+        concurrencyLimiter.release();
+        assertTrue(concurrencyLimiter.tryAcquire());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyIsStable() {
+        config.setAdaptive(true);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+
+        runAtLimit(concurrencyLimiter, 200, RTT_NANOS);
+
+        assertEquals(config.getMaxLimit(), concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyIncreases() {
+        config.setAdaptive(true);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+        runAtLimit(concurrencyLimiter, 200, RTT_NANOS);
+
+        // The instance is queuing the requests
+        runAtLimit(concurrencyLimiter, 2, 4 * RTT_NANOS);
+
+        assertTrue(concurrencyLimiter.getLimit() < config.getMaxLimit() / 4, "Limit: " + concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    void testLimitIsNotChangedByAnUnderusedInstance() {
+        config.setAdaptive(true);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire());
+            concurrencyLimiter.onResponse(RTT_NANOS * (1 + i % 5));
+        }
+
+        assertEquals(config.getInitialLimit(), concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    void testDroppedRequestsDecreaseTheLimit() {
+        config.setAdaptive(true);
+        config.setInitialLimit(100);
+        config.setBackoffRatio(0.5);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+
+        concurrencyLimiter.onDropped();
+        assertEquals(50, concurrencyLimiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            concurrencyLimiter.onDropped();
+        }
+        assertEquals(config.getMinLimit(), concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    void testDisabledLimiterAcceptsEverything() {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(config);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(concurrencyLimiter.tryAcquire());
+        }
+        assertEquals(0, concurrencyLimiter.getLimit());
+        assertEquals(0, concurrencyLimiter.getInFlightRequests());
+    }
+
+    /**
+     * Keep the instance at its limit for some rounds: all the slots are acquired, then answered with the given latency.
+     */
+    private static void runAtLimit(ConcurrencyLimiter concurrencyLimiter, int rounds, long rttNanos) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (concurrencyLimiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                concurrencyLimiter.onResponse(rttNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsistentHashRingTest {
+
+    private final RouterProperties.Affinity affinityConfig = new RouterProperties.Affinity();
+
+    @Test
+    void testKeysAreSpreadEvenly() {
+        affinityConfig.setField("gamerID");
+        ConsistentHashRing ring = new ConsistentHashRing(instances(4), affinityConfig);
+
+        int[] keysPerInstance = new int[4];
+        for (int i = 0; i < 10_000; i++) {
+            keysPerInstance[ownerOf(ring, "player-" + i)]++;
+        }
+
+        for (int keys : keysPerInstance) {
+            assertTrue(keys > 2000 && keys < 3000, "Keys per instance: " + keys);
+        }
+    }
+
+    @Test
+    void testRemovingAnInstanceOnlyMovesItsKeys() {
+        affinityConfig.setField("gamerID");
+        List<ApplicationApiInstance> instances = instances(5);
+        ConsistentHashRing ring = new ConsistentHashRing(instances, affinityConfig);
+        ConsistentHashRing smallerRing = new ConsistentHashRing(instances.subList(0, 4), affinityConfig);
+
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "player-" + i;
+            int owner = ownerOf(ring, key);
+            int newOwner = ownerOf(smallerRing, key);
+            if (owner != newOwner) {
+                moved++;
+                assertEquals(4, owner, "Only the keys of the removed instance move");
+                // They move to the next instance on the ring
+                assertEquals(ring.getInstanceIndex(position(ring, key), 1), newOwner);
+            }
+        }
+        assertTrue(moved > 1500 && moved < 2500, "Moved keys: " + moved);
+    }
+
+    @Test
+    void testWalkFindsEachInstanceOnceInRingOrder() {
+        affinityConfig.setField("gamerID");
+        ConsistentHashRing ring = new ConsistentHashRing(instances(5), affinityConfig);
+        int position = position(ring, "GYUTDTE");
+        ConsistentHashRing.Walk walk = ring.walk(position);
+
+        // Offsets looked up out of order, as concurrent attempts do
+        assertEquals(ring.getInstanceIndex(position, 3), walk.getInstanceIndex(3));
+        Set<Integer> found = new HashSet<>();
+        for (int offset = 0; offset < 5; offset++) {
+            assertEquals(ring.getInstanceIndex(position, offset), walk.getInstanceIndex(offset));
+            found.add(walk.getInstanceIndex(offset));
+        }
+        assertEquals(5, found.size());
+        assertEquals(-1, walk.getInstanceIndex(5));
+    }
+
+    @Test
+    void testKeyIsReadFromTheHeaderFirst() {
+        affinityConfig.setHeader("X-Gamer-ID");
+        affinityConfig.setField("gamerID");
+        ConsistentHashRing ring = new ConsistentHashRing(instances(3), affinityConfig);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Gamer-ID", "GYUTDTE");
+
+        assertEquals(position(ring, "GYUTDTE"), ring.getPosition(headers, json("{\"gamerID\":\"other\"}")));
+        assertEquals(position(ring, "other"), ring.getPosition(new HttpHeaders(), json("{\"gamerID\":\"other\"}")));
+        assertEquals(-1, ring.getPosition(new HttpHeaders(), json("{\"game\":\"Mobile Legends\"}")));
+    }
+
+    @Test
+    void testFieldIsFoundWithoutParsingTheBody() {
+        byte[] field = json("gamerID");
+
+        assertEquals("GYUTDTE", value("{\"game\": \"Mobile Legends\", \"gamerID\": \"GYUTDTE\", \"points\": 20}", field));
+        assertEquals("42", value("{\"gamerID\":42}", field));
+        // Fields of nested objects and strings looking like fields are skipped
+        assertEquals("top", value("{\"player\":{\"gamerID\":\"nested\",\"tags\":[\"}\",{\"a\":1}]},"
+                + "\"note\":\"\\\"gamerID\\\":\\\"fake\\\"\",\"gamerID\":\"top\"}", field));
+        assertEquals(-1, AffinityKey.findField(json("{\"player\":{\"gamerID\":\"nested\"}}"), field));
+        assertEquals(-1, AffinityKey.findField(json("[{\"gamerID\":\"in an array\"}]"), field));
+        assertEquals(-1, AffinityKey.findField(json("{\"gamerID\":\"unterminated"), field));
+    }
+
+    @Test
+    void testRequestsFallOverToTheNextInstanceOnTheRing() {
+        affinityConfig.setField("gamerID");
+        List<ApplicationApiInstance> instances = instances(3);
+        ConsistentHashRing ring = new ConsistentHashRing(instances, affinityConfig);
+        ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+        when(forwardingEngine.forward(any(), any(), any()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new ResponseEntity<>(new byte[0], HttpStatus.OK)));
+        RequestDispatcher requestDispatcher = new RequestDispatcher(ring, forwardingEngine, new TimerWheel(),
+                new RouterProperties.Deadline(), new RouterProperties.Retry());
+        byte[] body = json("{\"gamerID\":\"GYUTDTE\",\"points\":20}");
+        ApplicationApiInstance owner = instances.get(ownerOf(ring, "GYUTDTE"));
+        ApplicationApiInstance next = instances.get(ring.getInstanceIndex(position(ring, "GYUTDTE"), 1));
+        assertNotEquals(owner, next);
+
+        for (int i = 0; i < 3; i++) {
+            requestDispatcher.dispatch(new HttpHeaders(), body).join();
+        }
+        verify(forwardingEngine, times(3)).forward(same(owner), any(), any());
+
+        owner.getCircuitBreaker().transitionToOpenState();
+        for (int i = 0; i < 3; i++) {
+            requestDispatcher.dispatch(new HttpHeaders(), body).join();
+        }
+        verify(forwardingEngine, times(3)).forward(same(next), any(), any());
+        for (ApplicationApiInstance instance : instances) {
+            if (instance != owner && instance != next) {
+                verify(forwardingEngine, never()).forward(same(instance), any(), any());
+            }
+        }
+    }
+
+    private static List<ApplicationApiInstance> instances(int count) {
+        List<ApplicationApiInstance> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            instances.add(new ApplicationApiInstance("http://api" + i + ".example.com"));
+        }
+        return instances;
+    }
+
+    private static int position(ConsistentHashRing ring, String key) {
+        byte[] bytes = json(key);
+        return ring.getPosition(AffinityKey.hash(bytes, 0, bytes.length));
+    }
+
+    private static int ownerOf(ConsistentHashRing ring, String key) {
+        return ring.getInstanceIndex(position(ring, key), 0);
+    }
+
+    private static String value(String json, byte[] field) {
+        long range = AffinityKey.findField(json(json), field);
+        return json.substring((int) (range >>> 32), (int) range);
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package com.maxime.router;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HealthCheckerTest {
+
+    private final AtomicInteger healthStatus = new AtomicInteger(200);
+
+    private final AtomicInteger healthChecks = new AtomicInteger();
+
+    private final CountDownLatch hangingProbes = new CountDownLatch(1);
+
+    private final RouterProperties.HealthCheck config = new RouterProperties.HealthCheck();
+
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    private HttpServer applicationApi;
+
+    private AsyncHttpForwardingEngine forwardingEngine;
+
+    private HealthChecker healthChecker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        applicationApi = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        applicationApi.createContext("/health", exchange -> {
+            healthChecks.incrementAndGet();
+            exchange.sendResponseHeaders(healthStatus.get(), -1);
+            exchange.close();
+        });
+        applicationApi.createContext("/hanging", exchange -> {
+            try {
+                hangingProbes.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        applicationApi.setExecutor(Executors.newCachedThreadPool());
+        applicationApi.start();
+        forwardingEngine = new AsyncHttpForwardingEngine();
+        config.setPath("/health");
+        config.setInterval(Duration.ofMillis(50));
+        config.setJitter(Duration.ofMillis(10));
+        config.setTimeout(Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (healthChecker != null) {
+            healthChecker.close();
+        }
+        forwardingEngine.close();
+        hangingProbes.countDown();
+        applicationApi.stop(0);
+        timerWheel.close();
+    }
+
+    @Test
+    void testProbesOpenAndCloseTheCircuit() throws InterruptedException {
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance(
+                "http://localhost:" + applicationApi.getAddress().getPort() + "/api/endpoint");
+        InstanceRegistry instanceRegistry = InstanceRegistry.of(RoundRobinRouting.ofInstances(List.of(applicationApiInstance)), timerWheel);
+        healthChecker = new HealthChecker(instanceRegistry, forwardingEngine, config);
+        healthChecker.start();
+
+        await(() -> healthChecks.get() >= 2);
+        assertEquals(CircuitBreaker.State.CLOSED, applicationApiInstance.getCircuitBreakerState());
+
+        // Opened before any client request was sent to the instance
+        healthStatus.set(503);
+        await(() -> applicationApiInstance.getCircuitBreakerState() == CircuitBreaker.State.OPEN);
+        assertFalse(instanceRegistry.getSnapshot().getHealthyInstances().isCandidate(0));
+
+        // Closed on the next successful probe, without waiting for the open state to end
+        healthStatus.set(200);
+        await(() -> applicationApiInstance.getCircuitBreakerState() == CircuitBreaker.State.CLOSED);
+        assertTrue(instanceRegistry.getSnapshot().getHealthyInstances().isCandidate(0));
+    }
+
+    @Test
+    void testUnreachableInstanceIsOpened() throws Exception {
+        int closedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            closedPort = serverSocket.getLocalPort();
+        }
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance("http://localhost:" + closedPort + "/api/endpoint");
+        InstanceRegistry instanceRegistry = InstanceRegistry.of(RoundRobinRouting.ofInstances(List.of(applicationApiInstance)), timerWheel);
+        healthChecker = new HealthChecker(instanceRegistry, forwardingEngine, config);
+        healthChecker.start();
+
+        await(() -> applicationApiInstance.getCircuitBreakerState() == CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void testHangingInstanceIsOpenedWithinTheTimeoutWithTheBlockingEngine() throws InterruptedException {
+        config.setPath("/hanging");
+        config.setTimeout(Duration.ofMillis(200));
+        ApplicationApiInstance applicationApiInstance = new ApplicationApiInstance(
+                "http://localhost:" + applicationApi.getAddress().getPort() + "/api/endpoint");
+        InstanceRegistry instanceRegistry = InstanceRegistry.of(RoundRobinRouting.ofInstances(List.of(applicationApiInstance)), timerWheel);
+        // The read timeout of the forwarded requests is much longer than the health check timeout
+        try (RestTemplateForwardingEngine blockingEngine = new RestTemplateForwardingEngine(new RouterProperties.ConnectionPool())) {
+            healthChecker = new HealthChecker(instanceRegistry, blockingEngine, config);
+            healthChecker.start();
+
+            await(() -> applicationApiInstance.getCircuitBreakerState() == CircuitBreaker.State.OPEN);
+            healthChecker.close();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HealthyInstancesTest {
+
+    @Test
+    void testOpenCircuitIsSkippedUntilItCanBeTriedAgain() throws InterruptedException {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumNumberOfCalls(1);
+        config.setWaitDurationInOpenState(Duration.ofMillis(100));
+        // More than 64 instances: several words in the bitmap
+        List<ApplicationApiInstance> instances = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            instances.add(new ApplicationApiInstance("http://api" + i + ".example.com", config));
+        }
+        HealthyInstances healthyInstances = new HealthyInstances(instances);
+        ApplicationApiInstance api66 = instances.get(66);
+
+        api66.reportFailure();
+        assertFalse(healthyInstances.isCandidate(66));
+        assertTrue(healthyInstances.isCandidate(2));
+
+        // After the wait duration, the instance can be tried again to move its circuit to HALF_OPEN
+        Thread.sleep(150);
+        assertTrue(healthyInstances.isCandidate(66));
+        assertTrue(api66.acquirePermission());
+        api66.reportSuccess();
+        assertTrue(healthyInstances.isCandidate(66));
+
+        // Not following the Circuit Breakers anymore
+        healthyInstances.close();
+        instances.get(3).reportFailure();
+        assertTrue(healthyInstances.isCandidate(3));
+    }
+}
@@ -0,0 +1,219 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyCacheTest {
+
+    private static final byte[] BODY = "{\"points\":10}".getBytes(StandardCharsets.UTF_8);
+
+    private final RouterProperties.Idempotency config = new RouterProperties.Idempotency();
+
+    private final AtomicInteger dispatched = new AtomicInteger();
+
+    @Test
+    void testRetriedRequestGetsTheCachedResponse() {
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        ResponseEntity<byte[]> first = cache.dispatch("key", BODY, respond(HttpStatus.CREATED)).join();
+        ResponseEntity<byte[]> retried = cache.dispatch("key", BODY, respond(HttpStatus.CREATED)).join();
+
+        assertEquals(1, dispatched.get());
+        assertEquals(HttpStatus.CREATED, retried.getStatusCode());
+        assertArrayEquals(first.getBody(), retried.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals("true", retried.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getEntries());
+        assertEquals(BODY.length, cache.getSize());
+    }
+
+    @Test
+    void testConcurrentDuplicatesAreCoalesced() {
+        IdempotencyCache cache = new IdempotencyCache(config);
+        CompletableFuture<ResponseEntity<byte[]>> upstream = new CompletableFuture<>();
+
+        CompletableFuture<ResponseEntity<byte[]>> first = cache.dispatch("key", BODY, () -> {
+            dispatched.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<ResponseEntity<byte[]>> duplicate = cache.dispatch("key", BODY, respond(HttpStatus.OK));
+        assertFalse(duplicate.isDone());
+
+        upstream.complete(ResponseEntity.ok(BODY));
+
+        assertEquals(1, dispatched.get());
+        assertEquals(1, cache.getCoalesced());
+        assertArrayEquals(BODY, first.join().getBody());
+        assertArrayEquals(BODY, duplicate.join().getBody());
+        assertEquals("true", duplicate.join().getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+    }
+
+    @Test
+    void testFailedDispatchDoesNotBlockTheKey() {
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        assertThrows(IllegalStateException.class, () -> cache.dispatch("key", BODY, () -> {
+            throw new IllegalStateException("Dispatch failed");
+        }));
+        ResponseEntity<byte[]> retried = cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+
+        assertEquals(HttpStatus.OK, retried.getStatusCode());
+        assertEquals(1, dispatched.get());
+    }
+
+    @Test
+    void testKeyReusedWithAnotherBodyIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(config);
+        cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+
+        ResponseEntity<byte[]> response = cache.dispatch("key", "{\"points\":20}".getBytes(StandardCharsets.UTF_8),
+                respond(HttpStatus.OK)).join();
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals(1, dispatched.get());
+        assertEquals(1, cache.getConflicts());
+    }
+
+    @Test
+    void testRequestsKeyedByTheirBodyAreReplayed() {
+        config.setKeyFromBody(true);
+        IdempotencyCache cache = new IdempotencyCache(config);
+        String key = cache.key("default", new HttpHeaders(), BODY);
+
+        cache.dispatch(key, BODY, respond(HttpStatus.OK)).join();
+        ResponseEntity<byte[]> retried = cache.dispatch(key, BODY.clone(), respond(HttpStatus.OK)).join();
+
+        assertEquals("true", retried.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals(1, dispatched.get());
+        assertEquals(0, cache.getConflicts());
+    }
+
+    @Test
+    void testServerErrorsAreNotCached() {
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        cache.dispatch("key", BODY, respond(HttpStatus.SERVICE_UNAVAILABLE)).join();
+        ResponseEntity<byte[]> retried = cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+
+        assertEquals(HttpStatus.OK, retried.getStatusCode());
+        assertEquals(2, dispatched.get());
+        assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    void testExpiredResponsesAreDispatchedAgain() throws InterruptedException {
+        config.setTtl(Duration.ofMillis(20));
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+        Thread.sleep(40);
+        cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+
+        assertEquals(2, dispatched.get());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    void testOldestResponsesAreEvictedOverTheMaximumSize() {
+        config.setMaxEntries(3);
+        config.setMaxSize(DataSize.ofBytes(BODY.length * 2L));
+        config.setMaxResponseSize(DataSize.ofBytes(BODY.length));
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        for (int i = 0; i < 5; i++) {
+            cache.dispatch("key" + i, BODY, respond(HttpStatus.OK)).join();
+        }
+        byte[] large = "{\"points\":1000}".getBytes(StandardCharsets.UTF_8);
+        cache.dispatch("large", large, () -> {
+            dispatched.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseEntity.ok(large));
+        }).join();
+
+        assertEquals(2, cache.getEntries());
+        assertEquals(BODY.length * 2L, cache.getSize());
+        assertEquals(3, cache.getEvictions());
+        // The last ones are kept, the large response was not cached
+        cache.dispatch("key4", BODY, respond(HttpStatus.OK)).join();
+        cache.dispatch("key0", BODY, respond(HttpStatus.OK)).join();
+        assertEquals(1, cache.getHits());
+        assertEquals(7, dispatched.get());
+    }
+
+    @Test
+    void testOffHeapResponsesAreReplayed() {
+        config.setOffHeap(true);
+        IdempotencyCache cache = new IdempotencyCache(config);
+
+        cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+        ResponseEntity<byte[]> first = cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+        ResponseEntity<byte[]> second = cache.dispatch("key", BODY, respond(HttpStatus.OK)).join();
+
+        assertArrayEquals(BODY, first.getBody());
+        assertArrayEquals(BODY, second.getBody());
+        assertEquals(1, dispatched.get());
+    }
+
+    @Test
+    void testOffHeapSlabMakesRoomByEvictingTheOldestResponses() {
+        config.setOffHeap(true);
+        config.setMaxSize(DataSize.ofBytes(2L * OffHeapSlab.BLOCK_SIZE));
+        IdempotencyCache cache = new IdempotencyCache(config);
+        // Two blocks each: the slab only holds one of them
+        byte[] first = new byte[OffHeapSlab.BLOCK_SIZE + 1];
+        byte[] second = new byte[OffHeapSlab.BLOCK_SIZE + 2];
+        second[OffHeapSlab.BLOCK_SIZE + 1] = 42;
+
+        cache.dispatch("first", BODY, () -> CompletableFuture.completedFuture(ResponseEntity.ok(first))).join();
+        cache.dispatch("second", BODY, () -> CompletableFuture.completedFuture(ResponseEntity.ok(second))).join();
+        ResponseEntity<byte[]> replayed = cache.dispatch("second", BODY, respond(HttpStatus.OK)).join();
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getEntries());
+        assertArrayEquals(second, replayed.getBody());
+        assertEquals(0, dispatched.get());
+    }
+
+    @Test
+    void testKeys() {
+        HttpHeaders headers = new HttpHeaders();
+        assertNull(new IdempotencyCache(config).key("default", headers, BODY));
+
+        config.setKeyFromBody(true);
+        IdempotencyCache cache = new IdempotencyCache(config);
+        String bodyKey = cache.key("default", headers, BODY);
+        assertEquals(bodyKey, cache.key("default", headers, BODY.clone()));
+        assertFalse(bodyKey.equals(cache.key("default", headers, new byte[0])));
+        assertFalse(bodyKey.equals(cache.key("scores", headers, BODY)));
+
+        headers.set("Idempotency-Key", "7f1c");
+        assertEquals("header:default\n7f1c", cache.key("default", headers, BODY));
+        assertEquals("header:scores\n7f1c", cache.key("scores", headers, BODY));
+        assertTrue(bodyKey.startsWith("body:default\n"));
+    }
+
+    private Supplier<CompletableFuture<ResponseEntity<byte[]>>> respond(HttpStatus status) {
+        return () -> {
+            dispatched.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseEntity.status(status).body(BODY));
+        };
+    }
+}
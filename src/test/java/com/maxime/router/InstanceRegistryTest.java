@@ -0,0 +1,136 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstanceRegistryTest {
+
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    private final ApplicationApiInstance api1 = new ApplicationApiInstance("http://api1.example.com", failFastConfig());
+    private final ApplicationApiInstance api2 = new ApplicationApiInstance("http://api2.example.com", failFastConfig());
+
+    private final InstanceRegistry instanceRegistry = InstanceRegistry.of(RoundRobinRouting.ofInstances(List.of(api1, api2)), timerWheel);
+
+    @AfterEach
+    void close() {
+        instanceRegistry.close();
+        timerWheel.close();
+    }
+
+    @Test
+    void testSurvivingInstancesKeepTheirCircuitBreakerAcrossReloads() throws InterruptedException {
+        api1.reportFailure();
+        assertEquals(CircuitBreaker.State.OPEN, api1.getCircuitBreakerState());
+        InstanceRegistry.Snapshot previous = instanceRegistry.getSnapshot();
+
+        instanceRegistry.update(List.of("http://api1.example.com", "http://api3.example.com"));
+
+        InstanceRegistry.Snapshot snapshot = instanceRegistry.getSnapshot();
+        assertNotSame(previous, snapshot);
+        assertEquals(2, snapshot.getInstancesCount());
+        assertSame(api1, snapshot.getLoadBalancer().getInstance(0));
+        assertEquals(CircuitBreaker.State.OPEN, snapshot.getLoadBalancer().getInstance(0).getCircuitBreakerState());
+        assertEquals("http://api3.example.com", snapshot.getLoadBalancer().getInstance(1).getApplicationApiUrl());
+        // The bitmap of the new snapshot follows the Circuit Breaker state carried over
+        assertFalse(snapshot.getHealthyInstances().isCandidate(0));
+
+        // api2 had no request in flight: it is forgotten on the next drain check
+        await(() -> instanceRegistry.getStatuses().size() == 2);
+    }
+
+    @Test
+    void testRemovedInstanceDrainsItsInFlightRequests() throws InterruptedException {
+        api1.getLoad().onRequestStart();
+
+        InstanceStatus status = instanceRegistry.remove("http://api1.example.com");
+
+        assertEquals(InstanceRegistry.InstanceState.REMOVING, status.getState());
+        assertEquals(1, status.getInFlightRequests());
+        // No new request is routed to api1
+        InstanceRegistry.Snapshot snapshot = instanceRegistry.getSnapshot();
+        assertEquals(1, snapshot.getInstancesCount());
+        assertSame(api2, snapshot.getLoadBalancer().getNextInstance());
+
+        Thread.sleep(300);
+        assertEquals(2, instanceRegistry.getStatuses().size());
+
+        api1.getLoad().onRequestEnd(1_000_000);
+        await(() -> instanceRegistry.getStatuses().size() == 1);
+        assertEquals("http://api2.example.com", instanceRegistry.getStatuses().get(0).getUrl());
+    }
+
+    @Test
+    void testDrainChecksDoNotBlockTheTimerWheel() throws InterruptedException {
+        instanceRegistry.remove("http://api2.example.com");
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // A slow change holds the registry lock while the drain check is due
+        synchronized (instanceRegistry) {
+            timerWheel.schedule(latch::countDown, 300, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        }
+        await(() -> instanceRegistry.getStatuses().size() == 1);
+    }
+
+    @Test
+    void testDrainedInstanceCanBeActivatedAgain() {
+        assertEquals(InstanceRegistry.InstanceState.DRAINING, instanceRegistry.drain("http://api2.example.com").getState());
+        assertEquals(1, instanceRegistry.getSnapshot().getInstancesCount());
+        assertEquals(2, instanceRegistry.getStatuses().size());
+
+        assertEquals(InstanceRegistry.InstanceState.ACTIVE, instanceRegistry.add("http://api2.example.com").getState());
+        assertEquals(2, instanceRegistry.getSnapshot().getInstancesCount());
+        assertSame(api2, instanceRegistry.getSnapshot().getLoadBalancer().getInstance(1));
+
+        assertNull(instanceRegistry.drain("http://unknown.example.com"));
+        assertThrows(IllegalArgumentException.class, () -> instanceRegistry.add("not an url"));
+    }
+
+    @Test
+    void testInstancesAreReloadedWhenTheFileChanges(@TempDir Path directory) throws IOException, InterruptedException {
+        Path file = directory.resolve("instances.txt");
+        Files.writeString(file, "http://api1.example.com\nhttp://api2.example.com\n");
+
+        try (InstanceListFile instanceListFile = new InstanceListFile(file, instanceRegistry)) {
+            Files.writeString(file, "# Scaled out\nhttp://api1.example.com\nhttp://api2.example.com\nhttp://api3.example.com # new\n");
+            await(() -> instanceRegistry.getSnapshot().getInstancesCount() == 3);
+
+            // An empty file is ignored
+            Files.writeString(file, "# Nothing\n");
+            Thread.sleep(500);
+            assertEquals(3, instanceRegistry.getSnapshot().getInstancesCount());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(20);
+        }
+    }
+
+    private static CircuitBreakerConfig failFastConfig() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumNumberOfCalls(1);
+        return config;
+    }
+}
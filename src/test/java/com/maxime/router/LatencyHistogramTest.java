@@ -0,0 +1,52 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.recordMicros(i);
+        }
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(19, histogram.getValueAtPercentile(95));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1ms to 100ms
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordMicros(i * 1000L);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertWithinPrecision(50_000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(99_000, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(100_000, histogram.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    void testBucketsCoverAllValues() {
+        long[] values = {0, 31, 32, 33, 1000, 123_456_789};
+        for (long value : values) {
+            assertWithinPrecision(value, LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(value)));
+        }
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, "Expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,85 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PeakEwmaLoadBalancerTest {
+
+    private final ApplicationApiInstance api1 = new ApplicationApiInstance("http://localhost:5001/api/endpoint");
+    private final ApplicationApiInstance api2 = new ApplicationApiInstance("http://localhost:5002/api/endpoint");
+
+    @Test
+    void testEmptyInstancesThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PeakEwmaLoadBalancer(List.of()));
+    }
+
+    @Test
+    void testSingleInstanceIsAlwaysChosen() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(List.of(api1));
+        assertSame(api1, loadBalancer.getNextInstance());
+        assertEquals(1, loadBalancer.getInstancesCount());
+    }
+
+    @Test
+    void testFasterInstanceIsChosen() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(Arrays.asList(api1, api2));
+        recordLatency(api1, 10);
+        recordLatency(api2, 200);
+
+        for (int i = 0; i < 20; i++) {
+            assertSame(api1, loadBalancer.getNextInstance());
+        }
+    }
+
+    @Test
+    void testInFlightRequestsAreTakenIntoAccount() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(Arrays.asList(api1, api2));
+        recordLatency(api1, 10);
+        recordLatency(api2, 15);
+
+        // 10ms * 3 requests is more than 15ms * 1 request
+        api1.getLoad().onRequestStart();
+        api1.getLoad().onRequestStart();
+        assertSame(api2, loadBalancer.getNextInstance());
+    }
+
+    @Test
+    void testInstanceWithOpenCircuitIsAvoided() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(Arrays.asList(api1, api2));
+        recordLatency(api1, 10);
+        recordLatency(api2, 200);
+        for (int i = 0; i < new CircuitBreakerConfig().getSlidingWindowSize(); i++) {
+            api1.reportFailure();
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertSame(api2, loadBalancer.getNextInstance());
+        }
+    }
+
+    @Test
+    void testSlowInstanceRecoversAfterDecay() {
+        InstanceLoad load = new InstanceLoad();
+        load.observeLatency(TimeUnit.MILLISECONDS.toNanos(200));
+        double peak = load.getLatencyEwmaNanos();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), peak, 1);
+
+        // A faster response only lowers the average progressively
+        load.observeLatency(TimeUnit.MILLISECONDS.toNanos(10));
+        double decayed = load.getLatencyEwmaNanos();
+        assertTrue(decayed <= peak && decayed > TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    private static void recordLatency(ApplicationApiInstance applicationApiInstance, long latencyMs) {
+        applicationApiInstance.getLoad().onRequestStart();
+        applicationApiInstance.getLoad().onRequestEnd(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+    }
+}
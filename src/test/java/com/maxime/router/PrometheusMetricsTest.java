@@ -0,0 +1,105 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.when;
+
+public class PrometheusMetricsTest {
+
+    private final ApplicationApiInstance api1 = new ApplicationApiInstance("http://api1.example.com");
+    private final ApplicationApiInstance api2 = new ApplicationApiInstance("http://api2.example.com");
+
+    private final ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.close();
+    }
+
+    @Test
+    void testMetricsAreExposedInPrometheusFormat() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+        when(forwardingEngine.forward(same(api2), any(), any())).thenReturn(CompletableFuture.completedFuture(ResponseEntity.ok(new byte[0])));
+        RequestDispatcher requestDispatcher = new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(api1, api2)),
+                forwardingEngine, timerWheel, new RouterProperties.Deadline(), new RouterProperties.Retry());
+
+        requestDispatcher.dispatch(new HttpHeaders(), new byte[0]).join();
+
+        String metrics = new PrometheusMetrics(requestDispatcher).scrape();
+        assertTrue(metrics.contains("# TYPE router_requests_total counter\nrouter_requests_total 1\n"));
+        assertTrue(metrics.contains("router_failovers_total 1\n"));
+        assertTrue(metrics.contains("router_instance_requests_total{pool=\"default\",upstream=\"http://api1.example.com\"} 1\n"));
+        assertTrue(metrics.contains("router_instance_failures_total{pool=\"default\",upstream=\"http://api1.example.com\"} 1\n"));
+        assertTrue(metrics.contains("router_instance_successes_total{pool=\"default\",upstream=\"http://api2.example.com\"} 1\n"));
+        assertTrue(metrics.contains("router_instance_circuit_breaker_state{pool=\"default\",upstream=\"http://api1.example.com\",state=\"CLOSED\"} 1\n"));
+        assertTrue(metrics.contains("router_instance_latency_seconds{pool=\"default\",upstream=\"http://api2.example.com\",quantile=\"0.99\"} "));
+        assertTrue(metrics.contains("router_instance_latency_seconds_count{pool=\"default\",upstream=\"http://api2.example.com\"} 1\n"));
+        assertTrue(metrics.contains("router_instance_latency_seconds_count{pool=\"default\",upstream=\"http://api1.example.com\"} 0\n"));
+    }
+
+    @Test
+    void testInstancesOfEachPoolHaveTheirOwnSeries() {
+        ApplicationApiInstance scoresApi1 = new ApplicationApiInstance("http://api1.example.com");
+        RequestDispatcher defaultPool = new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(api1)),
+                forwardingEngine, timerWheel, new RouterProperties.Deadline(), new RouterProperties.Retry());
+        RequestDispatcher scoresPool = new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(scoresApi1)),
+                forwardingEngine, timerWheel, new RouterProperties.Deadline(), new RouterProperties.Retry());
+        scoresApi1.getMetrics().onRequest();
+
+        String metrics = new PrometheusMetrics(new RoutingTable(defaultPool, Map.of("scores", scoresPool), List.of())).scrape();
+        assertTrue(metrics.contains("router_instance_requests_total{pool=\"default\",upstream=\"http://api1.example.com\"} 0\n"));
+        assertTrue(metrics.contains("router_instance_requests_total{pool=\"scores\",upstream=\"http://api1.example.com\"} 1\n"));
+    }
+
+    @Test
+    void testCircuitBreakerTransitionsAreCounted() {
+        api1.getCircuitBreaker().transitionToOpenState();
+        api1.getCircuitBreaker().transitionToClosedState();
+
+        assertEquals(1, api1.getMetrics().getCircuitBreakerTransitions(CircuitBreaker.State.OPEN));
+        assertEquals(1, api1.getMetrics().getCircuitBreakerTransitions(CircuitBreaker.State.CLOSED));
+        assertEquals(0, api1.getMetrics().getCircuitBreakerTransitions(CircuitBreaker.State.HALF_OPEN));
+    }
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        InstanceMetrics metrics = api1.getMetrics();
+        for (int i = 0; i < 100_000; i++) {
+            record(metrics, i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            record(metrics, i);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Far less than a byte per recording: only the measurement itself may allocate
+        assertTrue(allocated < 10_000, "Allocated " + allocated + " bytes");
+    }
+
+    private static void record(InstanceMetrics metrics, int i) {
+        metrics.onRequest();
+        metrics.onSuccess();
+        metrics.onResponse(i * 1000L);
+    }
+}
@@ -0,0 +1,309 @@
+package com.maxime.router;
+
+import org.apache.hc.core5.util.Deadline;
+import org.apache.hc.core5.util.DeadlineTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestDispatcherTest {
+
+    private final ApplicationApiInstance api1 = new ApplicationApiInstance("http://api1.example.com");
+    private final ApplicationApiInstance api2 = new ApplicationApiInstance("http://api2.example.com");
+
+    private final ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+
+    private final RouterProperties.Retry retryConfig = new RouterProperties.Retry();
+
+    @Test
+    void testConnectionFailureFailsOverToAnotherInstance() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+        when(forwardingEngine.forward(same(api2), any(), any())).thenReturn(ok("api2"));
+
+        ResponseEntity<byte[]> response = requestDispatcher().dispatch(new HttpHeaders(), body()).join();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(bytes("api2"), response.getBody());
+        verify(forwardingEngine).forward(same(api1), any(), any());
+    }
+
+    @Test
+    void testEachAttemptGetsItsOwnHeaders() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+        when(forwardingEngine.forward(same(api2), any(), any())).thenReturn(ok("api2"));
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set("X-Gamer-ID", "42");
+
+        requestDispatcher().dispatch(requestHeaders, body()).join();
+
+        ArgumentCaptor<HttpHeaders> forwardedHeaders = ArgumentCaptor.forClass(HttpHeaders.class);
+        verify(forwardingEngine, times(2)).forward(any(), forwardedHeaders.capture(), any());
+        HttpHeaders firstAttempt = forwardedHeaders.getAllValues().get(0);
+        HttpHeaders failover = forwardedHeaders.getAllValues().get(1);
+        assertNotSame(firstAttempt, failover);
+        assertEquals("42", failover.getFirst("X-Gamer-ID"));
+        assertNotNull(failover.getFirst(new RouterProperties.Deadline().getHeader()));
+    }
+
+    @Test
+    void testHeadersNamedInTheConnectionHeaderAreNotForwarded() {
+        when(forwardingEngine.forward(same(api1), any(), any())).thenReturn(ok("api1"));
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.add(HttpHeaders.CONNECTION, "keep-alive, X-Trace-Hop");
+        requestHeaders.add(HttpHeaders.CONNECTION, "x-proxy-token");
+        requestHeaders.set("X-Trace-Hop", "1");
+        requestHeaders.set("X-Proxy-Token", "secret");
+        requestHeaders.set("X-Gamer-ID", "42");
+
+        requestDispatcher().dispatch(requestHeaders, body()).join();
+
+        ArgumentCaptor<HttpHeaders> forwardedHeaders = ArgumentCaptor.forClass(HttpHeaders.class);
+        verify(forwardingEngine).forward(any(), forwardedHeaders.capture(), any());
+        assertFalse(forwardedHeaders.getValue().containsKey(HttpHeaders.CONNECTION));
+        assertFalse(forwardedHeaders.getValue().containsKey("X-Trace-Hop"));
+        assertFalse(forwardedHeaders.getValue().containsKey("X-Proxy-Token"));
+        assertEquals("42", forwardedHeaders.getValue().getFirst("X-Gamer-ID"));
+    }
+
+    @Test
+    void testRequestWhichMayHaveBeenProcessedIsNotRetried() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new SocketTimeoutException("Read timed out")));
+
+        ResponseEntity<byte[]> response = requestDispatcher().dispatch(new HttpHeaders(), body()).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verify(forwardingEngine, never()).forward(same(api2), any(), any());
+    }
+
+    @Test
+    void testConnectionLeaseTimeoutFailsOverToAnotherInstance() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(DeadlineTimeoutException.from(Deadline.fromUnixMilliseconds(0))));
+        when(forwardingEngine.forward(same(api2), any(), any())).thenReturn(ok("api2"));
+
+        ResponseEntity<byte[]> response = requestDispatcher().dispatch(new HttpHeaders(), body()).join();
+
+        assertArrayEquals(bytes("api2"), response.getBody());
+    }
+
+    @Test
+    void testOtherTimeoutsAreNotRetried() {
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("Response timed out")));
+
+        ResponseEntity<byte[]> response = requestDispatcher().dispatch(new HttpHeaders(), body()).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verify(forwardingEngine, never()).forward(same(api2), any(), any());
+    }
+
+    @Test
+    void testRetryBudgetLimitsFailovers() {
+        retryConfig.setBudgetRatio(0);
+        retryConfig.setBudgetCapacity(1);
+        when(forwardingEngine.forward(same(api1), any(), any()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+        when(forwardingEngine.forward(same(api2), any(), any())).thenAnswer(invocation -> ok("api2"));
+        RequestDispatcher requestDispatcher = requestDispatcher();
+
+        // The only retry of the budget
+        assertEquals(HttpStatus.OK, requestDispatcher.dispatch(new HttpHeaders(), body()).join().getStatusCode());
+        assertEquals(0, requestDispatcher.getRetryBudget().getAvailableRetries());
+
+        // The retry did not move the round robin forward: the next request goes to api2
+        assertEquals(HttpStatus.OK, requestDispatcher.dispatch(new HttpHeaders(), body()).join().getStatusCode());
+
+        // Round robin is back to api1, and there is no retry left
+        ResponseEntity<byte[]> response = requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("The downstream server is down. You can retry again.",
+                new String(response.getBody(), StandardCharsets.UTF_8));
+        verify(forwardingEngine, times(2)).forward(same(api2), any(), any());
+    }
+
+    @Test
+    void testHedgedRequestIsSentWhenFirstInstanceIsSlow() throws InterruptedException {
+        RouterProperties.Hedging hedging = retryConfig.getHedging();
+        hedging.setEnabled(true);
+        hedging.setMinimumSamples(1);
+        hedging.setWindow(Duration.ofMillis(50));
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation -> ok("fast"));
+        RequestDispatcher requestDispatcher = requestDispatcher();
+
+        // Record fast latencies, until the end of the window
+        for (int i = 0; i < 4; i++) {
+            requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+        }
+        Thread.sleep(100);
+
+        // api1 hangs, api2 answers the hedged request
+        CompletableFuture<ResponseEntity<byte[]>> hangingCall = new CompletableFuture<>();
+        when(forwardingEngine.forward(same(api1), any(), any())).thenReturn(hangingCall);
+        when(forwardingEngine.forward(same(api2), any(), any())).thenReturn(ok("hedged"));
+        ResponseEntity<byte[]> response = requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+
+        assertArrayEquals(bytes("hedged"), response.getBody());
+        // The slow call is abandoned
+        assertTrue(hangingCall.isCancelled());
+    }
+
+    @Test
+    void testEachInstanceIsTriedOnceWhenOthersMoveTheRoundRobinForward() {
+        ApplicationApiInstance api3 = new ApplicationApiInstance("http://api3.example.com");
+        retryConfig.setMaxAttempts(3);
+        RoundRobinRouting roundRobinRouting = RoundRobinRouting.ofInstances(List.of(api1, api2, api3));
+        // Concurrent requests move the round robin forward while api1 and api2 refuse the connections
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation -> {
+            roundRobinRouting.getNextInstanceIndex();
+            return CompletableFuture.failedFuture(new ConnectException("Connection refused"));
+        });
+        doReturn(ok("api3")).when(forwardingEngine).forward(same(api3), any(), any());
+        RequestDispatcher requestDispatcher = new RequestDispatcher(roundRobinRouting, forwardingEngine,
+                new TimerWheel(), new RouterProperties.Deadline(), retryConfig);
+
+        ResponseEntity<byte[]> response = requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+
+        assertArrayEquals(bytes("api3"), response.getBody());
+        verify(forwardingEngine).forward(same(api1), any(), any());
+        verify(forwardingEngine).forward(same(api2), any(), any());
+    }
+
+    @Test
+    void testInstancesWithOpenCircuitAreSkipped() {
+        for (int i = 0; i < new CircuitBreakerConfig().getMinimumNumberOfCalls(); i++) {
+            api1.reportFailure();
+        }
+        when(forwardingEngine.forward(same(api2), any(), any())).thenAnswer(invocation -> ok("api2"));
+        RequestDispatcher requestDispatcher = requestDispatcher();
+
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(bytes("api2"), requestDispatcher.dispatch(new HttpHeaders(), body()).join().getBody());
+        }
+        verify(forwardingEngine, never()).forward(same(api1), any(), any());
+    }
+
+    @Test
+    void testRequestsOverTheRouterLimitAreShed() {
+        RouterProperties.ConcurrencyLimit concurrencyLimit = new RouterProperties.ConcurrencyLimit();
+        concurrencyLimit.setMaxInFlightRequests(1);
+        concurrencyLimit.setRetryAfter(Duration.ofMillis(1500));
+        CompletableFuture<ResponseEntity<byte[]>> pending = new CompletableFuture<>();
+        when(forwardingEngine.forward(same(api1), any(), any())).thenReturn(pending);
+        when(forwardingEngine.forward(same(api2), any(), any())).thenAnswer(invocation -> ok("api2"));
+        RequestDispatcher requestDispatcher = new RequestDispatcher(InstanceRegistry.of(
+                RoundRobinRouting.ofInstances(List.of(api1, api2)), new TimerWheel()), forwardingEngine, new TimerWheel(),
+                new RouterProperties.Deadline(), retryConfig, concurrencyLimit);
+
+        CompletableFuture<ResponseEntity<byte[]>> first = requestDispatcher.dispatch(new HttpHeaders(), body());
+        ResponseEntity<byte[]> shed = requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, shed.getStatusCode());
+        assertEquals("2", shed.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, requestDispatcher.getMetrics().getShedRequests());
+        verify(forwardingEngine, never()).forward(same(api2), any(), any());
+
+        pending.complete(new ResponseEntity<>(bytes("api1"), HttpStatus.OK));
+        assertEquals(HttpStatus.OK, first.join().getStatusCode());
+        assertEquals(0, requestDispatcher.getInFlightRequests());
+        assertArrayEquals(bytes("api2"), requestDispatcher.dispatch(new HttpHeaders(), body()).join().getBody());
+    }
+
+    @Test
+    void testInstancesAtTheirConcurrencyLimitAreSkipped() {
+        RouterProperties.ConcurrencyLimit concurrencyLimit = new RouterProperties.ConcurrencyLimit();
+        concurrencyLimit.setAdaptive(true);
+        concurrencyLimit.setInitialLimit(1);
+        concurrencyLimit.setMinLimit(1);
+        ApplicationApiInstance limited1 = new ApplicationApiInstance("http://api1.example.com", new CircuitBreakerConfig(), 1, concurrencyLimit);
+        ApplicationApiInstance limited2 = new ApplicationApiInstance("http://api2.example.com", new CircuitBreakerConfig(), 1, concurrencyLimit);
+        CompletableFuture<ResponseEntity<byte[]>> pending1 = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<byte[]>> pending2 = new CompletableFuture<>();
+        doReturn(pending1).when(forwardingEngine).forward(same(limited1), any(), any());
+        doReturn(pending2).when(forwardingEngine).forward(same(limited2), any(), any());
+        RequestDispatcher requestDispatcher = new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(limited1, limited2)),
+                forwardingEngine, new TimerWheel(), new RouterProperties.Deadline(), retryConfig);
+
+        CompletableFuture<ResponseEntity<byte[]>> first = requestDispatcher.dispatch(new HttpHeaders(), body());
+        // The round robin is back to the first instance, which is at its limit: the second one is used instead
+        requestDispatcher.dispatch(new HttpHeaders(), body());
+        requestDispatcher.dispatch(new HttpHeaders(), body());
+        verify(forwardingEngine, times(1)).forward(same(limited1), any(), any());
+        verify(forwardingEngine, times(1)).forward(same(limited2), any(), any());
+
+        ResponseEntity<byte[]> shed = requestDispatcher.dispatch(new HttpHeaders(), body()).join();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, shed.getStatusCode());
+        assertEquals("1", shed.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertTrue(limited1.getMetrics().getLimited() > 0);
+        assertTrue(requestDispatcher.getMetrics().getLimitedRequests() > 0);
+
+        pending1.complete(new ResponseEntity<>(bytes("api1"), HttpStatus.OK));
+        assertEquals(HttpStatus.OK, first.join().getStatusCode());
+        assertEquals(0, limited1.getConcurrencyLimiter().getInFlightRequests());
+    }
+
+    @Test
+    void testRequestsWithTheSameIdempotencyKeyAreOnlySentOnce() {
+        RouterProperties.Idempotency idempotency = new RouterProperties.Idempotency();
+        idempotency.setEnabled(true);
+        when(forwardingEngine.forward(any(), any(), any())).thenAnswer(invocation -> ok("processed"));
+        RequestDispatcher requestDispatcher = new RequestDispatcher(InstanceRegistry.of(
+                RoundRobinRouting.ofInstances(List.of(api1, api2)), new TimerWheel()), forwardingEngine, new TimerWheel(),
+                new RouterProperties.Deadline(), retryConfig, new RouterProperties.ConcurrencyLimit(), idempotency);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "0b5e");
+
+        requestDispatcher.dispatch(headers, body()).join();
+        ResponseEntity<byte[]> replayed = requestDispatcher.dispatch(headers, body()).join();
+
+        assertArrayEquals(bytes("processed"), replayed.getBody());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER));
+        assertEquals(2, requestDispatcher.getMetrics().getRequests());
+        assertEquals(0, requestDispatcher.getInFlightRequests());
+        verify(forwardingEngine, times(1)).forward(any(), any(), any());
+    }
+
+    private RequestDispatcher requestDispatcher() {
+        return new RequestDispatcher(RoundRobinRouting.ofInstances(List.of(api1, api2)), forwardingEngine,
+                new TimerWheel(), new RouterProperties.Deadline(), retryConfig);
+    }
+
+    private static CompletableFuture<ResponseEntity<byte[]>> ok(String data) {
+        return CompletableFuture.completedFuture(new ResponseEntity<>(bytes(data), HttpStatus.OK));
+    }
+
+    private static byte[] body() {
+        return bytes("request");
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+}
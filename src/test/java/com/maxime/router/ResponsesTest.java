@@ -0,0 +1,26 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponsesTest {
+
+    @Test
+    void testTimeoutsAndRejectionsAreServerErrors() {
+        assertTrue(Responses.isServerError(response(HttpStatus.INTERNAL_SERVER_ERROR)));
+        assertTrue(Responses.isServerError(response(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertTrue(Responses.isServerError(response(HttpStatus.REQUEST_TIMEOUT)));
+        assertTrue(Responses.isServerError(response(HttpStatus.TOO_MANY_REQUESTS)));
+        assertFalse(Responses.isServerError(response(HttpStatus.OK)));
+        assertFalse(Responses.isServerError(response(HttpStatus.BAD_REQUEST)));
+        assertFalse(Responses.isServerError(response(HttpStatus.UNPROCESSABLE_ENTITY)));
+    }
+
+    private static ResponseEntity<byte[]> response(HttpStatus status) {
+        return ResponseEntity.status(status).body(new byte[0]);
+    }
+}
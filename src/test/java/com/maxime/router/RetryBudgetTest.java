@@ -0,0 +1,43 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryBudgetTest {
+
+    @Test
+    void testBudgetStartsFull() {
+        RetryBudget retryBudget = new RetryBudget(0.2, 2);
+        assertTrue(retryBudget.tryWithdraw());
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    void testRetriesAreARatioOfRequests() {
+        RetryBudget retryBudget = new RetryBudget(0.2, 0);
+        assertFalse(retryBudget.tryWithdraw());
+
+        // Capacity 0: deposits are capped right away
+        for (int i = 0; i < 5; i++) {
+            retryBudget.deposit();
+        }
+        assertFalse(retryBudget.tryWithdraw());
+
+        retryBudget = new RetryBudget(0.2, 10);
+        while (retryBudget.tryWithdraw()) {
+            // Empty the budget
+        }
+        for (int i = 0; i < 10; i++) {
+            retryBudget.deposit();
+        }
+        // 10 requests * 0.2
+        assertEquals(2, retryBudget.getAvailableRetries());
+        assertTrue(retryBudget.tryWithdraw());
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+    }
+}
@@ -2,8 +2,12 @@ package com.maxime.router;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,4 +36,112 @@ class RoundRobinRoutingTest {
         assertEquals("http://api1.example.com", instance4);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testWeightedRoundRobinIsSmooth() {
+        RoundRobinRouting roundRobinRouting = RoundRobinRouting.weighted(weightedInstances(5, 1, 1));
+
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            order.append(roundRobinRouting.getNextInstance().getApplicationApiUrl().charAt(10));
+        }
+
+        // Interleaved instead of 5 consecutive calls to api1
+        assertEquals("1121311", order.toString());
+    }
+
+    @Test
+    void testWeightedRoundRobinFollowsWeights() {
+        List<ApplicationApiInstance> instances = weightedInstances(5, 1, 1);
+        RoundRobinRouting roundRobinRouting = RoundRobinRouting.weighted(instances);
+
+        Map<ApplicationApiInstance, Integer> counts = countCalls(roundRobinRouting, 7 * InstanceWeight.SCALE);
+
+        assertEquals(5 * InstanceWeight.SCALE, counts.get(instances.get(0)));
+        assertEquals(InstanceWeight.SCALE, counts.get(instances.get(1)));
+        assertEquals(InstanceWeight.SCALE, counts.get(instances.get(2)));
+    }
+
+    @Test
+    void testWeightIsLoweredOnFailureAndRaisedOnRecovery() {
+        List<ApplicationApiInstance> instances = weightedInstances(1, 1);
+        ApplicationApiInstance api1 = instances.get(0);
+        RoundRobinRouting roundRobinRouting = RoundRobinRouting.weighted(instances);
+        countCalls(roundRobinRouting, 2 * InstanceWeight.SCALE);
+
+        // Each failure halves the weight of api1: 10 -> 5 -> 2
+        api1.reportFailure();
+        api1.reportFailure();
+        assertEquals(2, api1.getWeight().getEffectiveWeight());
+        Map<ApplicationApiInstance, Integer> counts = countCalls(roundRobinRouting, 12);
+        assertEquals(2, counts.get(api1));
+        assertEquals(10, counts.get(instances.get(1)));
+
+        // Each fast success raises it by its configured weight, up to the maximum
+        for (int i = 0; i < 10; i++) {
+            api1.reportSuccess();
+        }
+        assertEquals(InstanceWeight.SCALE, api1.getWeight().getEffectiveWeight());
+        counts = countCalls(roundRobinRouting, 2 * InstanceWeight.SCALE);
+        assertEquals(InstanceWeight.SCALE, counts.get(api1));
+    }
+
+    @Test
+    void testConcurrentSelectionWhileWeightsChange() throws InterruptedException {
+        List<ApplicationApiInstance> instances = weightedInstances(5, 1, 1);
+        RoundRobinRouting roundRobinRouting = RoundRobinRouting.weighted(instances);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        assertNotNull(roundRobinRouting.getNextInstance());
+                        if (i % 100 == 0) {
+                            // The weights move on every cycle, as during an outage
+                            instances.get(0).reportFailure();
+                            instances.get(0).reportSuccess();
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+
+        // Once the weights are stable again, a whole cycle follows them
+        for (int i = 0; i < 100; i++) {
+            instances.get(0).reportSuccess();
+        }
+        countCalls(roundRobinRouting, 1000);
+        Map<ApplicationApiInstance, Integer> counts = countCalls(roundRobinRouting, 7 * InstanceWeight.SCALE);
+        assertEquals(5 * InstanceWeight.SCALE, counts.get(instances.get(0)));
+    }
+
+    @Test
+    void testInvalidWeightThrowsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ApplicationApiInstance("http://api1.example.com", new CircuitBreakerConfig(), 0));
+    }
+
+    private List<ApplicationApiInstance> weightedInstances(int... weights) {
+        List<ApplicationApiInstance> instances = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            instances.add(new ApplicationApiInstance(mockUrls.get(i), new CircuitBreakerConfig(), weights[i]));
+        }
+        return instances;
+    }
+
+    private static Map<ApplicationApiInstance, Integer> countCalls(RoundRobinRouting roundRobinRouting, int calls) {
+        Map<ApplicationApiInstance, Integer> counts = new HashMap<>();
+        for (int i = 0; i < calls; i++) {
+            counts.merge(roundRobinRouting.getNextInstance(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
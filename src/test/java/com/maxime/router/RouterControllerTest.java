@@ -1,25 +1,44 @@
 package com.maxime.router;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.internal.stubbing.answers.AnswersWithDelay;
 import org.mockito.internal.stubbing.answers.Returns;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
 class RouterControllerTest {
+
+    private static final long SLOW_CALL_THRESHOLD_MS = 100;
+
     @Test
     void testRouteRequestWithCircuitBreaker() {
         RestTemplate mockedRestTemplate = Mockito.mock(RestTemplate.class);
@@ -27,66 +46,213 @@ class RouterControllerTest {
                 "http://api1.example.com",
                 "http://api2.example.com"
         );
-        RouterController routerController = new RouterController(mockUrl2, mockedRestTemplate);
-        ResponseEntity<Object> response;
+        CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+        circuitBreakerConfig.setSlidingWindowSize(5);
+        circuitBreakerConfig.setMinimumNumberOfCalls(3);
+        circuitBreakerConfig.setFailureRateThreshold(50);
+        circuitBreakerConfig.setSlowCallRateThreshold(50);
+        circuitBreakerConfig.setSlowCallDurationThreshold(Duration.ofMillis(100));
+        // Without failover (see RequestDispatcherTest), so that each request goes to the next instance
+        RouterProperties.Retry noRetry = new RouterProperties.Retry();
+        noRetry.setMaxAttempts(1);
+        RouterController routerController = new RouterController(new RequestDispatcher(
+                new RoundRobinRouting(mockUrl2, applicationApiUrl -> circuitBreakerConfig),
+                new RestTemplateForwardingEngine(mockedRestTemplate), new TimerWheel(), new RouterProperties.Deadline(), noRetry));
+        ResponseEntity<byte[]> response;
 
         ResourceAccessException resourceAccessExceptionWithConnectException = new ResourceAccessException("", new ConnectException());
 
         // request1 send to api1: SERVER DOWN
-        when(mockedRestTemplate.postForEntity("http://api1.example.com", Collections.singletonMap("data", "request1"), Object.class))
+        when(mockedRestTemplate.exchange(eq("http://api1.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
                 .thenThrow(resourceAccessExceptionWithConnectException);
-        response = routerController.routeRequest(Collections.singletonMap("data", "request1"));
+        response = routerController.routeRequest(jsonHeaders(), body("request1")).join();
         assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
 
         // request2 send to api2: SUCCESS
-        when(mockedRestTemplate.postForEntity("http://api2.example.com", Collections.singletonMap("data", "request2"), Object.class))
-                .thenReturn(new ResponseEntity<Object>(Collections.singletonMap("data", "request2"), HttpStatus.OK));
-        response = routerController.routeRequest(Collections.singletonMap("data", "request2"));
+        when(mockedRestTemplate.exchange(eq("http://api2.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                .thenReturn(new ResponseEntity<>(body("request2"), HttpStatus.OK));
+        response = routerController.routeRequest(jsonHeaders(), body("request2")).join();
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(body("request2"), response.getBody());
 
         // request3 send to api1: 500
-        when(mockedRestTemplate.postForEntity("http://api1.example.com", Collections.singletonMap("data", "request3"), Object.class))
-                .thenReturn(new ResponseEntity<Object>(Collections.singletonMap("data", "request3"), HttpStatus.INTERNAL_SERVER_ERROR));
-        response = routerController.routeRequest(Collections.singletonMap("data", "request3"));
+        when(mockedRestTemplate.exchange(eq("http://api1.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                .thenReturn(new ResponseEntity<>(body("request3"), HttpStatus.INTERNAL_SERVER_ERROR));
+        response = routerController.routeRequest(jsonHeaders(), body("request3")).join();
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
 
         // request4 send to api2: SUCCESS
-        when(mockedRestTemplate.postForEntity("http://api2.example.com", Collections.singletonMap("data", "request4"), Object.class))
-                .thenReturn(new ResponseEntity<Object>(Collections.singletonMap("data", "request4"), HttpStatus.OK));
-        response = routerController.routeRequest(Collections.singletonMap("data", "request4"));
+        when(mockedRestTemplate.exchange(eq("http://api2.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                .thenReturn(new ResponseEntity<>(body("request4"), HttpStatus.OK));
+        response = routerController.routeRequest(jsonHeaders(), body("request4")).join();
         assertEquals(HttpStatus.OK, response.getStatusCode());
 
         // request5 send to api1: RESPONSE_TOO_SLOW
-        when(mockedRestTemplate.postForEntity("http://api1.example.com", Collections.singletonMap("data", "request5"), Object.class))
+        when(mockedRestTemplate.exchange(eq("http://api1.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
                 .thenAnswer(
                         new AnswersWithDelay(
-                                RouterController.SLOW_CALL_DURATION_THRESHOLD_MS + 100,
-                                new Returns(new ResponseEntity<Object>(Collections.singletonMap("data", "request5"), HttpStatus.OK))
+                                circuitBreakerConfig.getSlowCallDurationThreshold().toMillis() + 100,
+                                new Returns(new ResponseEntity<>(body("request5"), HttpStatus.OK))
                         )
                 );
-        response = routerController.routeRequest(Collections.singletonMap("data", "request5"));
+        response = routerController.routeRequest(jsonHeaders(), body("request5")).join();
         assertEquals(HttpStatus.OK, response.getStatusCode());
 
-        // Circuit Breaker should be opened now for api1, because of 3 consecutive errors
+        // Circuit Breaker should be opened now for api1: 2 failures out of 3 calls (and 1 slow call)
 
         // request send to api2: 500
         // All requests should go to api2, because api1 is open
-        for (int i = 0; i < CircuitBreaker.CONSECUTIVE_FAILURE_THRESHOLD; i++) {
-            //System.out.println(i);
-            when(mockedRestTemplate.postForEntity("http://api2.example.com", Collections.singletonMap("data", "request"), Object.class))
-                    .thenReturn(new ResponseEntity<Object>(Collections.singletonMap("data", "request"), HttpStatus.INTERNAL_SERVER_ERROR));
-            response = routerController.routeRequest(Collections.singletonMap("data", "request"));
+        // api2 circuit opens after 2 failures: 2 failures out of 4 calls
+        for (int i = 0; i < 2; i++) {
+            when(mockedRestTemplate.exchange(eq("http://api2.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                    .thenReturn(new ResponseEntity<>(body("request"), HttpStatus.INTERNAL_SERVER_ERROR));
+            response = routerController.routeRequest(jsonHeaders(), body("request")).join();
             assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         }
 
         // Both api1 and api2 circuit breaker should be open
-        when(mockedRestTemplate.postForEntity("http://api2.example.com", Collections.singletonMap("data", "request"), Object.class))
-                .thenReturn(new ResponseEntity<Object>(Collections.singletonMap("data", "request"), HttpStatus.INTERNAL_SERVER_ERROR));
-        response = routerController.routeRequest(Collections.singletonMap("data", "request"));
+        when(mockedRestTemplate.exchange(eq("http://api2.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                .thenReturn(new ResponseEntity<>(body("request"), HttpStatus.INTERNAL_SERVER_ERROR));
+        response = routerController.routeRequest(jsonHeaders(), body("request")).join();
         assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
         assertEquals(
                 "No healthy Application API instances available. The request was not processed. You can retry again later.",
-                response.getBody()
+                new String(response.getBody(), StandardCharsets.UTF_8)
         );
     }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void testRouteRequestPassesBodyAndHeadersThrough() {
+        RestTemplate mockedRestTemplate = Mockito.mock(RestTemplate.class);
+        RouterController routerController = new RouterController(List.of("http://api1.example.com"), mockedRestTemplate);
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+        responseHeaders.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+        when(mockedRestTemplate.exchange(eq("http://api1.example.com"), eq(HttpMethod.POST), any(HttpEntity.class), eq(byte[].class)))
+                .thenReturn(new ResponseEntity<>(body("response"), responseHeaders, HttpStatus.CREATED));
+
+        HttpHeaders requestHeaders = jsonHeaders();
+        requestHeaders.set(HttpHeaders.CONNECTION, "keep-alive");
+        requestHeaders.set("X-Request-Id", "42");
+        ResponseEntity<byte[]> response = routerController.routeRequest(requestHeaders, body("request")).join();
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertArrayEquals(body("response"), response.getBody());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertNull(response.getHeaders().get(HttpHeaders.TRANSFER_ENCODING));
+
+        // The raw body is forwarded as is, without hop-by-hop headers
+        ArgumentCaptor<HttpEntity> forwardedEntity = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(mockedRestTemplate).exchange(eq("http://api1.example.com"), eq(HttpMethod.POST), forwardedEntity.capture(), eq(byte[].class));
+        HttpEntity<byte[]> forwardedRequest = forwardedEntity.getValue();
+        assertArrayEquals(body("request"), forwardedRequest.getBody());
+        assertEquals("42", forwardedRequest.getHeaders().getFirst("X-Request-Id"));
+        assertEquals(MediaType.APPLICATION_JSON, forwardedRequest.getHeaders().getContentType());
+        assertNull(forwardedRequest.getHeaders().get(HttpHeaders.CONNECTION));
+    }
+
+    @Test
+    void testSlowCallIsReportedBeforeTheResponse() throws InterruptedException {
+        CompletableFuture<ResponseEntity<byte[]>> downstreamCall = new CompletableFuture<>();
+        RouterProperties.Deadline deadlineConfig = new RouterProperties.Deadline();
+        deadlineConfig.setTimeout(Duration.ofSeconds(2));
+        ApplicationApiInstance applicationApiInstance = hangingInstance();
+        RouterController routerController = hangingRouterController(applicationApiInstance, downstreamCall, deadlineConfig);
+
+        CompletableFuture<ResponseEntity<byte[]>> response = routerController.routeRequest(jsonHeaders(), body("request"));
+
+        // The circuit opens at the slow call threshold, while the client still waits for the response
+        Thread.sleep(SLOW_CALL_THRESHOLD_MS + 150);
+        assertFalse(response.isDone());
+        assertEquals(CircuitBreaker.State.OPEN, applicationApiInstance.getCircuitBreakerState());
+
+        // The late response is still returned
+        downstreamCall.complete(new ResponseEntity<>(body("response"), HttpStatus.OK));
+        assertEquals(HttpStatus.OK, response.join().getStatusCode());
+    }
+
+    @Test
+    void testDeadlineCancelsTheDownstreamCall() {
+        CompletableFuture<ResponseEntity<byte[]>> downstreamCall = new CompletableFuture<>();
+        RouterProperties.Deadline deadlineConfig = new RouterProperties.Deadline();
+        deadlineConfig.setTimeout(Duration.ofMillis(SLOW_CALL_THRESHOLD_MS * 2));
+        ApplicationApiInstance applicationApiInstance = hangingInstance();
+        RouterController routerController = hangingRouterController(applicationApiInstance, downstreamCall, deadlineConfig);
+
+        ResponseEntity<byte[]> response = routerController.routeRequest(jsonHeaders(), body("request")).join();
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertTrue(downstreamCall.isCancelled());
+    }
+
+    @Test
+    void testFailFastOnSlowCallDetachesTheDownstreamCall() {
+        CompletableFuture<ResponseEntity<byte[]>> downstreamCall = new CompletableFuture<>();
+        RouterProperties.Deadline deadlineConfig = new RouterProperties.Deadline();
+        deadlineConfig.setFailFastOnSlowCall(true);
+        deadlineConfig.setTimeoutAction(RouterProperties.TimeoutAction.DETACH);
+        ApplicationApiInstance applicationApiInstance = hangingInstance();
+        RouterController routerController = hangingRouterController(applicationApiInstance, downstreamCall, deadlineConfig);
+
+        long startTime = System.nanoTime();
+        ResponseEntity<byte[]> response = routerController.routeRequest(jsonHeaders(), body("request")).join();
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+        assertFalse(downstreamCall.isDone());
+        assertEquals(CircuitBreaker.State.OPEN, applicationApiInstance.getCircuitBreakerState());
+    }
+
+    @Test
+    void testClientDeadlineShortensTheBudget() {
+        CompletableFuture<ResponseEntity<byte[]>> downstreamCall = new CompletableFuture<>();
+        RouterProperties.Deadline deadlineConfig = new RouterProperties.Deadline();
+        ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+        when(forwardingEngine.forward(any(), any(), any())).thenReturn(downstreamCall);
+        RouterController routerController = new RouterController(new RoundRobinRouting(List.of("http://api1.example.com")),
+                forwardingEngine, new TimerWheel(), deadlineConfig);
+
+        HttpHeaders requestHeaders = jsonHeaders();
+        requestHeaders.set(deadlineConfig.getHeader(), "50");
+        ResponseEntity<byte[]> response = routerController.routeRequest(requestHeaders, body("request")).join();
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+
+        // The remaining budget is forwarded downstream
+        ArgumentCaptor<HttpHeaders> forwardedHeaders = ArgumentCaptor.forClass(HttpHeaders.class);
+        verify(forwardingEngine).forward(any(), forwardedHeaders.capture(), any());
+        assertTrue(Long.parseLong(forwardedHeaders.getValue().getFirst(deadlineConfig.getHeader())) <= 50);
+
+        // An expired deadline is not forwarded at all
+        requestHeaders.set(deadlineConfig.getHeader(), "0");
+        response = routerController.routeRequest(requestHeaders, body("request")).join();
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        verify(forwardingEngine, times(1)).forward(any(), any(), any());
+    }
+
+    private static ApplicationApiInstance hangingInstance() {
+        CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+        circuitBreakerConfig.setMinimumNumberOfCalls(1);
+        circuitBreakerConfig.setSlowCallDurationThreshold(Duration.ofMillis(SLOW_CALL_THRESHOLD_MS));
+        return new ApplicationApiInstance("http://api1.example.com", circuitBreakerConfig);
+    }
+
+    private static RouterController hangingRouterController(ApplicationApiInstance applicationApiInstance,
+                                                            CompletableFuture<ResponseEntity<byte[]>> downstreamCall,
+                                                            RouterProperties.Deadline deadlineConfig) {
+        ForwardingEngine forwardingEngine = Mockito.mock(ForwardingEngine.class);
+        when(forwardingEngine.forward(any(), any(), any())).thenReturn(downstreamCall);
+        return new RouterController(RoundRobinRouting.ofInstances(List.of(applicationApiInstance)), forwardingEngine,
+                new TimerWheel(), deadlineConfig);
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private static byte[] body(String data) {
+        return ("{\"data\":\"" + data + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
 }
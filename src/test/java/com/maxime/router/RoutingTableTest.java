@@ -0,0 +1,119 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RoutingTableTest {
+
+    private final RequestDispatcher defaultPool = Mockito.mock(RequestDispatcher.class);
+    private final RequestDispatcher scores = Mockito.mock(RequestDispatcher.class);
+    private final RequestDispatcher leaderboard = Mockito.mock(RequestDispatcher.class);
+    private final RequestDispatcher admin = Mockito.mock(RequestDispatcher.class);
+
+    private final Map<String, RequestDispatcher> pools = new LinkedHashMap<>(Map.of(
+            "scores", scores, "leaderboard", leaderboard, "admin", admin));
+
+    private final List<RouterProperties.Route> routes = new ArrayList<>();
+
+    @Test
+    void testLongestPathPrefixWins() {
+        routes.add(route(null, "/scores", "scores"));
+        routes.add(route(null, "/scores/leaderboard/", "leaderboard"));
+        RoutingTable routingTable = new RoutingTable(defaultPool, pools, routes);
+
+        assertSame(scores, routingTable.route(null, "/scores"));
+        assertSame(scores, routingTable.route(null, "/scores/"));
+        assertSame(scores, routingTable.route(null, "/scores/42"));
+        assertSame(scores, routingTable.route(null, "/scores/leader"));
+        assertSame(leaderboard, routingTable.route(null, "/scores/leaderboard"));
+        assertSame(leaderboard, routingTable.route(null, "/scores/leaderboard/top"));
+    }
+
+    @Test
+    void testPrefixesOnlyMatchWholeSegments() {
+        routes.add(route(null, "/scores", "scores"));
+        RoutingTable routingTable = new RoutingTable(defaultPool, pools, routes);
+
+        assertNull(routingTable.route(null, "/scoresheet"));
+        assertNull(routingTable.route(null, "/score"));
+        assertNull(routingTable.route(null, "/"));
+        assertNull(routingTable.route(null, ""));
+    }
+
+    @Test
+    void testHostRoutesTakePrecedence() {
+        routes.add(route(null, "/", "scores"));
+        routes.add(route("Admin.Example.com", null, "admin"));
+        routes.add(route("api.example.com", "/leaderboard", "leaderboard"));
+        routes.add(route("api.example.com", "/legacy", RoutingTable.DEFAULT_POOL));
+        RoutingTable routingTable = new RoutingTable(defaultPool, pools, routes);
+
+        assertSame(admin, routingTable.route("admin.example.com", "/leaderboard"));
+        assertSame(admin, routingTable.route("ADMIN.example.com:8080", "/api/router"));
+        assertSame(leaderboard, routingTable.route("api.example.com", "/leaderboard/top"));
+        assertSame(defaultPool, routingTable.route("api.example.com:443", "/legacy"));
+        // Other paths of the host fall back to the routes for any host
+        assertSame(scores, routingTable.route("api.example.com", "/api/router"));
+        assertSame(scores, routingTable.route("other.example.com", "/leaderboard"));
+        assertSame(scores, routingTable.route(null, "/api/router"));
+    }
+
+    @Test
+    void testHostsAreComparedWithoutTheirPort() {
+        routes.add(route("api.example.com:8080", null, "scores"));
+        routes.add(route("[2001:DB8::1]:8443", null, "leaderboard"));
+        routes.add(route("::1", null, "admin"));
+        RoutingTable routingTable = new RoutingTable(defaultPool, pools, routes);
+
+        assertSame(scores, routingTable.route("api.example.com", "/api/router"));
+        assertSame(scores, routingTable.route("api.example.com:443", "/api/router"));
+        assertSame(leaderboard, routingTable.route("[2001:db8::1]", "/api/router"));
+        assertSame(leaderboard, routingTable.route("[2001:db8::1]:8080", "/api/router"));
+        assertSame(admin, routingTable.route("[::1]:8080", "/api/router"));
+        assertNull(routingTable.route("[2001:db8::2]:8080", "/api/router"));
+        assertNull(routingTable.route("2001", "/api/router"));
+    }
+
+    @Test
+    void testTableWithoutRoutes() {
+        RoutingTable routingTable = new RoutingTable(defaultPool);
+
+        assertNull(routingTable.route("api.example.com", "/api/router"));
+        assertSame(defaultPool, routingTable.getDefaultDispatcher());
+    }
+
+    @Test
+    void testInvalidRoutesAreRejected() {
+        routes.add(route(null, "/scores", "unknown"));
+        assertThrows(IllegalArgumentException.class, () -> new RoutingTable(defaultPool, pools, routes));
+
+        routes.clear();
+        routes.add(route(null, null, "scores"));
+        assertThrows(IllegalArgumentException.class, () -> new RoutingTable(defaultPool, pools, routes));
+
+        routes.clear();
+        routes.add(route(null, "/scores", "scores"));
+        routes.add(route(null, "/scores/", "leaderboard"));
+        assertThrows(IllegalArgumentException.class, () -> new RoutingTable(defaultPool, pools, routes));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new RoutingTable(defaultPool, Map.of(RoutingTable.DEFAULT_POOL, scores), List.of()));
+    }
+
+    private static RouterProperties.Route route(String host, String pathPrefix, String pool) {
+        RouterProperties.Route route = new RouterProperties.Route();
+        route.setHost(host);
+        route.setPathPrefix(pathPrefix);
+        route.setPool(pool);
+        return route;
+    }
+}
@@ -0,0 +1,175 @@
+package com.maxime.router;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandaloneRouterTest {
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private HttpServer applicationApi;
+
+    private HttpServer scoresApi;
+
+    private StandaloneRouter router;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        applicationApi = echoServer("api");
+        scoresApi = echoServer("scores");
+        router = StandaloneRouter.start(
+                "--server.port=0",
+                "--router.instances.urls=" + url(applicationApi),
+                "--router.pools.scores.urls=" + url(scoresApi),
+                "--router.routes[0].path-prefix=/scores",
+                "--router.routes[0].pool=scores");
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+        applicationApi.stop(0);
+        scoresApi.stop(0);
+    }
+
+    @Test
+    void testRequestIsForwarded() throws Exception {
+        HttpResponse<String> response = post("/api/router", "{\"points\":10}");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("api:{\"points\":10}", response.body());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+    }
+
+    @Test
+    void testRoutedPathGoesToItsPool() throws Exception {
+        assertEquals("scores:{\"points\":10}", post("/scores/top", "{\"points\":10}").body());
+
+        HttpResponse<String> unrouted = post("/leaderboard", "{\"points\":10}");
+        assertEquals(404, unrouted.statusCode());
+    }
+
+    @Test
+    void testOnlyPostIsRouted() throws Exception {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/api/router")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(405, response.statusCode());
+        assertEquals("POST", response.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void testMetricsAreExposed() throws Exception {
+        post("/api/router", "{\"points\":10}");
+
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/metrics")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("router_requests_total 1\n"));
+        assertTrue(response.body().contains("router_pool_requests_total{pool=\"scores\"} 0\n"));
+    }
+
+    @Test
+    void testSlowBatchDoesNotHoldTheHandlerThreads() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService slowApiExecutor = Executors.newCachedThreadPool();
+        HttpServer slowApi = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        slowApi.setExecutor(slowApiExecutor);
+        slowApi.createContext("/api/endpoint", exchange -> {
+            received.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        slowApi.start();
+        router.close();
+        router = StandaloneRouter.start(
+                "--server.port=0",
+                "--router.instances.urls=" + url(slowApi),
+                "--router.pools.scores.urls=" + url(scoresApi),
+                "--router.routes[0].path-prefix=/scores",
+                "--router.routes[0].pool=scores",
+                "--router.standalone.threads=1",
+                "--router.standalone.batch-threads=1");
+        try {
+            CompletableFuture<HttpResponse<String>> batch = postAsync("/api/router/batch", "{\"points\":10}\n");
+            // The batch holds its thread while its record waits for the slow instance
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            HttpResponse<String> rejected = postAsync("/api/router/batch", "{\"points\":20}\n").get(5, TimeUnit.SECONDS);
+            assertEquals(503, rejected.statusCode());
+
+            HttpResponse<String> response = postAsync("/scores/top", "{\"points\":10}").get(5, TimeUnit.SECONDS);
+            assertEquals("scores:{\"points\":10}", response.body());
+
+            release.countDown();
+            assertEquals(200, batch.get(10, TimeUnit.SECONDS).statusCode());
+        } finally {
+            release.countDown();
+            slowApi.stop(0);
+            slowApiExecutor.shutdownNow();
+        }
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return postAsync(path, body).get();
+    }
+
+    private CompletableFuture<HttpResponse<String>> postAsync(String path, String body) {
+        return httpClient.sendAsync(HttpRequest.newBuilder(uri(path))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + router.getPort() + path);
+    }
+
+    private static String url(HttpServer server) {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/endpoint";
+    }
+
+    /**
+     * Answers with its name and the request body.
+     */
+    private static HttpServer echoServer(String name) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/endpoint", exchange -> {
+            byte[] body = (name + ":" + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,91 @@
+package com.maxime.router;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimerWheelTest {
+
+    // 8 buckets of 10ms: delays longer than 80ms need several rounds of the wheel
+    private final TimerWheel timerWheel = new TimerWheel(Duration.ofMillis(10), 8);
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.close();
+    }
+
+    @Test
+    void testTaskRunsAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long startTime = System.nanoTime();
+
+        TimerWheel.Timeout timeout = timerWheel.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void testCancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = timerWheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        Thread.sleep(150);
+
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void testTasksRunInDeadlineOrder() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        AtomicInteger order = new AtomicInteger();
+        AtomicInteger secondTaskOrder = new AtomicInteger();
+        AtomicInteger firstTaskOrder = new AtomicInteger();
+
+        timerWheel.schedule(() -> {
+            secondTaskOrder.set(order.incrementAndGet());
+            latch.countDown();
+        }, 150, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(() -> {
+            firstTaskOrder.set(order.incrementAndGet());
+            latch.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(1, firstTaskOrder.get());
+        assertEquals(2, secondTaskOrder.get());
+    }
+
+    @Test
+    void testBlockingTaskOffTheWheelDoesNotDelayOtherTimeouts() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        timerWheel.scheduleOffWheel(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        try {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}